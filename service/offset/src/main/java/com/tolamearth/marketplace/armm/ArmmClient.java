@@ -19,10 +19,11 @@ package com.tolamearth.marketplace.armm;
 import io.micronaut.http.annotation.Body;
 import io.micronaut.http.annotation.Post;
 import io.micronaut.http.client.annotation.Client;
+import java.util.concurrent.CompletableFuture;
 
 @Client("armm")
 public interface ArmmClient {
 
   @Post("/price")
-  ArmmPriceResponse getPrices(@Body PriceRequest request);
+  CompletableFuture<ArmmPriceResponse> getPrices(@Body PriceRequest request);
 }
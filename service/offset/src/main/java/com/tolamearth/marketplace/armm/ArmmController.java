@@ -22,27 +22,34 @@ import io.micronaut.http.annotation.Controller;
 import io.micronaut.http.annotation.Post;
 import io.micronaut.http.annotation.RequestBean;
 import io.micronaut.scheduling.TaskExecutors;
-import io.micronaut.scheduling.annotation.ExecuteOn;
+import jakarta.inject.Named;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 @Controller("/hem/v1/price")
-@ExecuteOn(TaskExecutors.IO)
 public class ArmmController implements ParameterValidator {
 
-  private final ArmmClient client;
+  private final ArmmPriceCache priceCache;
   private final PriceRequestValidator validator;
   private final EsgLoadQueue esgLoadQueue;
+  private final ExecutorService executor;
 
-  public ArmmController(ArmmClient client, PriceRequestValidator validator,
-      EsgLoadQueue esgLoadQueue) {
-    this.client = client;
+  public ArmmController(ArmmPriceCache priceCache, PriceRequestValidator validator,
+      EsgLoadQueue esgLoadQueue, @Named(TaskExecutors.IO) ExecutorService executor) {
+    this.priceCache = priceCache;
     this.validator = validator;
     this.esgLoadQueue = esgLoadQueue;
+    this.executor = executor;
   }
 
   @Post
-  PriceResponse getPrices(@RequestBean PriceRequest request) {
+  CompletableFuture<PriceResponse> getPrices(@RequestBean PriceRequest request) {
     validator.validate(request);
-    request.actualNfts().forEach(esgLoadQueue::add);
-    return client.getPrices(request).toPriceResponse();
+    // the queue may be backed by the database, so it is filled on the IO executor while ARMM is
+    // asked for the prices
+    var queued = CompletableFuture.runAsync(
+        () -> request.actualNfts().forEach(esgLoadQueue::add), executor);
+    return priceCache.getPrices(request.actualNfts())
+        .thenCombine(queued, (prices, ignored) -> new PriceResponse(request, prices));
   }
 }
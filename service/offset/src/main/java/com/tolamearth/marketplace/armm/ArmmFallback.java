@@ -18,6 +18,7 @@ package com.tolamearth.marketplace.armm;
 
 import io.micronaut.context.annotation.Requires;
 import io.micronaut.retry.annotation.Fallback;
+import java.util.concurrent.CompletableFuture;
 
 @Fallback
 @Requires(property = "hem.armm.fallback", value = "true")
@@ -31,9 +32,9 @@ public class ArmmFallback implements ArmmClient {
 
 
   @Override
-  public ArmmPriceResponse getPrices(PriceRequest request) {
+  public CompletableFuture<ArmmPriceResponse> getPrices(PriceRequest request) {
     var nftPrices = request.actualNfts().stream().map(priceGenerator::generateRandomNftPrice).toList();
-    return new ArmmPriceResponse(request.getNfts(), nftPrices);
+    return CompletableFuture.completedFuture(new ArmmPriceResponse(request.getNfts(), nftPrices));
   }
 
 
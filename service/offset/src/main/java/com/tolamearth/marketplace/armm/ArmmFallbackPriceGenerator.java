@@ -18,6 +18,7 @@ package com.tolamearth.marketplace.armm;
 
 import com.tolamearth.marketplace.armm.ArmmPriceResponse.ArmmNftPrice;
 import com.tolamearth.marketplace.offset.Nft;
+import com.tolamearth.marketplace.offset.NftIdCodec;
 import jakarta.inject.Singleton;
 import java.util.HashMap;
 import java.util.Map;
@@ -37,7 +38,7 @@ public class ArmmFallbackPriceGenerator {
 
     if (!generated.containsKey(nft)) {
       System.out.println("armm fallback cache miss with " + nft);
-      var price = new ArmmNftPrice(nft.tokenId()+"-"+nft.serialNumber(), base - generateRandomPrice(), base + generateRandomPrice(), null, null);
+      var price = new ArmmNftPrice(NftIdCodec.format(nft), base - generateRandomPrice(), base + generateRandomPrice(), null, null);
       generated.put(nft, price);
     }
     return generated.get(nft);
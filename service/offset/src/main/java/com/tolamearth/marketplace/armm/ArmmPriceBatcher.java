@@ -0,0 +1,150 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.armm;
+
+import com.tolamearth.marketplace.armm.PriceRequest.NftHolder;
+import com.tolamearth.marketplace.offset.Nft;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.scheduling.TaskExecutors;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Merges the price lookups of concurrent requests into shared ARMM calls. Nfts are collected for
+ * {@code hem.armm.batch.window-millis} after the first one arrives, or until
+ * {@code hem.armm.batch.max-size} are pending, and are then sent as one {@link PriceRequest}. Every
+ * caller's future is completed from that one response.
+ */
+@Singleton
+public class ArmmPriceBatcher {
+
+  private static final Logger log = LoggerFactory.getLogger(ArmmPriceBatcher.class);
+
+  private final ArmmClient client;
+  private final ScheduledExecutorService scheduler;
+  private final long windowMillis;
+  private final int maxSize;
+
+  private final Object lock = new Object();
+  private Map<Nft, CompletableFuture<NftPrice>> pending = new LinkedHashMap<>();
+  private boolean flushScheduled;
+
+  public ArmmPriceBatcher(ArmmClient client,
+      @Named(TaskExecutors.SCHEDULED) ScheduledExecutorService scheduler,
+      @Value("${hem.armm.batch.window-millis:5}") Long windowMillis,
+      @Value("${hem.armm.batch.max-size:600}") Integer maxSize) {
+    this.client = client;
+    this.scheduler = scheduler;
+    this.windowMillis = windowMillis;
+    this.maxSize = Math.max(1, maxSize);
+  }
+
+  /**
+   * Looks up the prices of the given nfts in the next ARMM call
+   *
+   * @param nfts nfts to price
+   * @return future of the prices ARMM answered with, nfts it did not answer for are left out
+   */
+  public CompletableFuture<Map<Nft, NftPrice>> getPrices(Iterable<? extends Nft> nfts) {
+    var futures = new LinkedHashMap<Nft, CompletableFuture<NftPrice>>();
+    var full = new ArrayList<Map<Nft, CompletableFuture<NftPrice>>>();
+    synchronized (lock) {
+      for (Nft nft : nfts) {
+        // an nft already waiting for the next call shares its future
+        futures.put(nft, pending.computeIfAbsent(nft, key -> new CompletableFuture<>()));
+        if (pending.size() >= maxSize) {
+          full.add(drain());
+        }
+      }
+      if (!pending.isEmpty() && !flushScheduled) {
+        if (windowMillis > 0) {
+          flushScheduled = true;
+          scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+        } else {
+          full.add(drain());
+        }
+      }
+    }
+    // batches that did not wait for the window are sent right away
+    full.forEach(this::send);
+
+    return CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new))
+        .thenApply(ignored -> {
+          var prices = new HashMap<Nft, NftPrice>();
+          futures.forEach((nft, future) -> {
+            var price = future.join();
+            if (price != null) {
+              prices.put(nft, price);
+            }
+          });
+          return prices;
+        });
+  }
+
+  private void flush() {
+    Map<Nft, CompletableFuture<NftPrice>> batch;
+    synchronized (lock) {
+      flushScheduled = false;
+      if (pending.isEmpty()) {
+        return;
+      }
+      batch = drain();
+    }
+    send(batch);
+  }
+
+  private Map<Nft, CompletableFuture<NftPrice>> drain() {
+    var batch = pending;
+    pending = new LinkedHashMap<>();
+    return batch;
+  }
+
+  private void send(Map<Nft, CompletableFuture<NftPrice>> batch) {
+    var request = new PriceRequest(batch.keySet().stream().map(NftHolder::new).toList());
+    client.getPrices(request)
+        .thenApply(response -> response.toPriceResponse().prices())
+        .whenComplete((prices, error) -> {
+          if (error != null) {
+            var cause = error instanceof CompletionException ? error.getCause() : error;
+            log.error("Unable to fetch ARMM prices for " + batch.size() + " nfts", cause);
+            batch.values().forEach(future -> future.completeExceptionally(cause));
+            return;
+          }
+          if (prices != null) {
+            prices.forEach(price -> {
+              var future = batch.get(price.nftId());
+              if (future != null) {
+                future.complete(price);
+              }
+            });
+          }
+          // ARMM left these out of its answer
+          batch.values().forEach(future -> future.complete(null));
+        });
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.armm;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tolamearth.marketplace.offset.Nft;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Singleton;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Caches ARMM prices per nft, bounded by size and evicted a fixed time after being fetched. The
+ * misses of a request are handed to the {@link ArmmPriceBatcher} together, and a request that
+ * misses on an nft another request is already fetching waits for that fetch instead of starting
+ * its own. Prices ARMM answers with an error code are handed back but not kept.
+ */
+@Singleton
+public class ArmmPriceCache {
+
+  private final ArmmPriceBatcher batcher;
+  private final AsyncCache<Nft, NftPrice> cache;
+
+  public ArmmPriceCache(ArmmPriceBatcher batcher, MeterRegistry meterRegistry,
+      @Value("${hem.armm.cache.max-size:10000}") Long maxSize,
+      @Value("${hem.armm.cache.ttl-seconds:300}") Long ttlSeconds) {
+    this.batcher = batcher;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+        // hand misses to the batcher on the requesting thread, it only queues them
+        .executor(Runnable::run)
+        .recordStats()
+        .buildAsync();
+    CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "hem.armm.prices");
+  }
+
+  /**
+   * Looks up the prices of the given nfts
+   *
+   * @param nfts nfts to price
+   * @return future of the prices ARMM knows, in the order of the requested nfts
+   */
+  public CompletableFuture<List<NftPrice>> getPrices(List<Nft> nfts) {
+    if (nfts.isEmpty()) {
+      return CompletableFuture.completedFuture(List.of());
+    }
+    return cache.getAll(nfts, (misses, executor) -> batcher.getPrices(misses))
+        .thenApply(prices -> {
+          prices.forEach((nft, price) -> {
+            if (price.code() != null) {
+              cache.synchronous().invalidate(nft);
+            }
+          });
+          return nfts.stream()
+              .map(prices::get)
+              .filter(Objects::nonNull)
+              .toList();
+        });
+  }
+}
@@ -21,6 +21,7 @@ import com.tolamearth.marketplace.armm.PriceRequest.NftHolder;
 import com.tolamearth.marketplace.common.error.HemErrorCode;
 import com.tolamearth.marketplace.common.error.HemException;
 import com.tolamearth.marketplace.offset.Nft;
+import com.tolamearth.marketplace.offset.NftIdCodec;
 import java.util.List;
 
 public class ArmmPriceResponse {
@@ -117,16 +118,11 @@ public class ArmmPriceResponse {
 
   PriceResponse toPriceResponse(){
     var newPrices = prices.stream().map(armmNftPrice -> {
-      var split = armmNftPrice.nftId.split("-");
       Nft nft;
-      if (split.length == 2){
-        nft = new Nft(split[0], Long.parseLong(split[1]));
-      }
-      else if (split.length == 3){
-        nft = new Nft(split[0]+split[1], Long.parseLong(split[2]));
-      }
-      else{
-        throw new HemException(HemErrorCode.INVALID_DATA);
+      try {
+        nft = NftIdCodec.parse(armmNftPrice.nftId);
+      } catch (IllegalArgumentException e) {
+        throw new HemException(HemErrorCode.INVALID_DATA, e);
       }
       return new NftPrice(nft, armmNftPrice.minPrice,armmNftPrice.maxPrice, armmNftPrice.code, armmNftPrice.message);
     }).toList();
@@ -16,31 +16,22 @@
 
 package com.tolamearth.marketplace.armm;
 
-import com.tolamearth.marketplace.armm.PriceRequest.NftHolder;
 import com.tolamearth.marketplace.offset.Nft;
 import jakarta.inject.Singleton;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Singleton
 public class ArmmService {
 
-  private final ArmmClient armmClient;
+  private final ArmmPriceCache priceCache;
 
-  public ArmmService(ArmmClient armmClient) {
-    this.armmClient = armmClient;
+  public ArmmService(ArmmPriceCache priceCache) {
+    this.priceCache = priceCache;
   }
 
-  public List<NftPrice> getPrices(List<Nft> nfts) {
-    var req = new PriceRequest(nfts.stream().map(NftHolder::new).toList());
-    var priceObject = armmClient.getPrices(req).toPriceResponse();
-    if (priceObject != null) {
-      var prices = priceObject.prices();
-      if (prices != null && !prices.isEmpty()) {
-        return priceObject.prices();
-      }
-    }
-    return new ArrayList<>();
+  public CompletableFuture<List<NftPrice>> getPrices(List<Nft> nfts) {
+    return priceCache.getPrices(nfts);
   }
 
 }
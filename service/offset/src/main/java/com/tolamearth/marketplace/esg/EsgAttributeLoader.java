@@ -0,0 +1,112 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.esg;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tolamearth.marketplace.common.util.FutureHelpers;
+import com.tolamearth.marketplace.esg.EsgClient.EsgAttributes;
+import com.tolamearth.marketplace.esg.db.EsgOffset;
+import com.tolamearth.marketplace.esg.db.EsgOffsetAttribute;
+import com.tolamearth.marketplace.offset.Nft;
+import jakarta.inject.Singleton;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts the ESG api attributes of an nft into an {@link EsgOffset}
+ */
+@Singleton
+public class EsgAttributeLoader {
+
+  private static final Logger log = LoggerFactory.getLogger(EsgAttributeLoader.class);
+
+  private final EsgClient client;
+  private final ObjectMapper objectMapper;
+
+  public EsgAttributeLoader(EsgClient client, ObjectMapper objectMapper) {
+    this.client = client;
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * Fetches the attributes of the nft from the ESG api
+   *
+   * @param nft nft to fetch
+   * @return a new, unsaved offset holding the converted attributes
+   */
+  public EsgOffset fetch(Nft nft) {
+    return FutureHelpers.join(fetchAsync(nft));
+  }
+
+  /**
+   * Fetches the attributes of the nft from the ESG api without waiting for the answer
+   *
+   * @param nft nft to fetch
+   * @return future of a new, unsaved offset holding the converted attributes
+   */
+  public CompletableFuture<EsgOffset> fetchAsync(Nft nft) {
+    return client.getNftAttributes(nft.tokenId(), nft.serialNumber()).thenApply(attributes -> {
+      var offset = new EsgOffset();
+      // populate fields
+      offset.setTokenId(nft.tokenId());
+      offset.setSerialNumber(nft.serialNumber());
+      addAttributes(offset, attributes);
+      return offset;
+    });
+  }
+
+  private void addAttributes(EsgOffset offset, EsgAttributes esgAttributes) {
+
+    var attributes = esgAttributes.attributes();
+    var convertedAttributes = new ArrayList<EsgOffsetAttribute>();
+    attributes.forEach(attribute -> {
+      var title = (String) attribute.get("title");
+      if (convertedAttributes.stream()
+          .noneMatch(convertedAttribute -> convertedAttribute.getTitle().equals(title))) {
+        var attributeEntity = new EsgOffsetAttribute();
+        attributeEntity.setTitle(title);
+        attributeEntity.setDescription(attribute.get("description").toString());
+        attributeEntity.setType(attribute.get("type").toString());
+        String value;
+        Object unconvertedValue = attribute.get("value");
+        if (attributeEntity.getType().equals("array")) {
+          try {
+            value = objectMapper.writeValueAsString(unconvertedValue);
+          } catch (JsonProcessingException e) {
+            log.error("Value on array type attribute did not properly convert to json, value toString: " + unconvertedValue.toString());
+            value = unconvertedValue.toString();
+          }
+        } else {
+          value = unconvertedValue.toString();
+        }
+        attributeEntity.setValue(value);
+        attributeEntity.setSchemaId(attribute.get("schemaId").toString());
+        attributeEntity.setSchemaName(attribute.get("schemaName").toString());
+        convertedAttributes.add(attributeEntity);
+      } else {
+        log.error("Found and ignored duplicate attribute with title: '" + title
+            + "' for offset: {tokenId: " + offset.getTokenId() + ", serial: "
+            + offset.getSerialNumber() + "}, attribute value: " + attribute.get("value")
+            .toString());
+      }
+    });
+    offset.setAttributes(convertedAttributes);
+  }
+}
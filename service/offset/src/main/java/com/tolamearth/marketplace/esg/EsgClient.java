@@ -21,6 +21,7 @@ import io.micronaut.http.annotation.Header;
 import io.micronaut.http.client.annotation.Client;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Client("esg")
 @Header(name = "Authorization", value = "${hem.lworks.api-key}")
@@ -31,6 +32,6 @@ public interface EsgClient {
   }
 
   @Get("/tokens/{tokenId}/nfts/{serialNumber}")
-  EsgAttributes getNftAttributes(String tokenId, Long serialNumber);
+  CompletableFuture<EsgAttributes> getNftAttributes(String tokenId, Long serialNumber);
 
 }
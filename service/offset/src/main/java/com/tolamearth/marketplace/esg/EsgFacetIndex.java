@@ -0,0 +1,449 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.esg;
+
+import com.tolamearth.marketplace.esg.db.EsgOffset;
+import com.tolamearth.marketplace.esg.db.EsgOffsetRepo;
+import com.tolamearth.marketplace.offset.Nft;
+import com.tolamearth.marketplace.offset.db.Listing;
+import com.tolamearth.marketplace.offset.db.ListingRepo;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.runtime.event.annotation.EventListener;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Singleton;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory inverted index over the ESG attributes of listed offsets, used to answer
+ * {@code /simplesearch} without going to the database.
+ *
+ * <p>Every nft gets a stable ordinal the first time it is seen. For each attribute title and
+ * value the index keeps a bitmap of the ordinals carrying that value, plus a bitmap of the
+ * ordinals that are currently listed. A search ORs the bitmaps of the requested values of a title,
+ * ANDs the titles together with the listed bitmap, and only hydrates the requested page. Each
+ * title/value pair also has an integer id, so facet counts are plain {@code int} counters.
+ *
+ * <p>Results come in the order of the database search, by token id and then serial number, so
+ * pages stay the same whether they are answered here or from the database.
+ *
+ * <p>The index is loaded from the database on startup and kept current by {@code EsgLoadJob}
+ * (new attributes) and {@code OffsetRepo} (listings and purchases) for changes made by this
+ * instance. Changes made by other instances are picked up every
+ * {@code hem.esg.search.index.refresh-interval}, which bounds how stale a search can be when the
+ * service runs on several nodes. Until it has been loaded {@link #isReady()} is false and searches
+ * should fall back to the database. The index is off unless {@code hem.esg.search.index.enabled}
+ * is set.
+ */
+@Singleton
+public class EsgFacetIndex {
+
+  private static final Logger log = LoggerFactory.getLogger(EsgFacetIndex.class);
+
+  private final EsgOffsetRepo esgOffsetRepo;
+  private final ListingRepo listingRepo;
+  private final boolean enabled;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private static final Comparator<Nft> NFT_ORDER = Comparator.comparing(Nft::tokenId)
+      .thenComparing(Nft::serialNumber);
+
+  // serializes listing reloads, they run outside the index lock
+  private final Lock reloadLock = new ReentrantLock();
+
+  private final Map<Nft, Integer> ordinals = new HashMap<>();
+  private final List<IndexedOffset> offsets = new ArrayList<>();
+  private final List<Integer> order = new ArrayList<>();
+  private final Map<String, Map<String, Integer>> valueIds = new HashMap<>();
+  private final List<String> valueTitles = new ArrayList<>();
+  private final List<String> values = new ArrayList<>();
+  private final List<BitSet> valueBitmaps = new ArrayList<>();
+  private final BitSet indexed = new BitSet();
+  private BitSet listed = new BitSet();
+  // listing changes made while a reload reads the database, replayed onto the reloaded bitmap
+  private List<Runnable> journal;
+  private boolean orderSorted = true;
+  private long lastEsgOffsetId;
+  private volatile boolean ready;
+
+  public EsgFacetIndex(EsgOffsetRepo esgOffsetRepo, ListingRepo listingRepo,
+      @Value("${hem.esg.search.index.enabled:false}") Boolean enabled) {
+    this.esgOffsetRepo = esgOffsetRepo;
+    this.listingRepo = listingRepo;
+    this.enabled = enabled;
+  }
+
+  @EventListener
+  void onStartup(StartupEvent event) {
+    if (enabled) {
+      rebuild();
+    }
+  }
+
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Reloads all ESG attributes and listings from the database.
+   */
+  public void rebuild() {
+    lock.writeLock().lock();
+    try {
+      ready = false;
+      ordinals.clear();
+      offsets.clear();
+      order.clear();
+      valueIds.clear();
+      valueTitles.clear();
+      values.clear();
+      valueBitmaps.clear();
+      indexed.clear();
+      listed.clear();
+      journal = null;
+      lastEsgOffsetId = 0;
+
+      esgOffsetRepo.list().forEach(this::index);
+      listingRepo.findByPurchaseTxnIdIsNull().forEach(this::list);
+      sortOrder();
+
+      ready = true;
+      log.info("Indexed ESG attributes of " + indexed.cardinality() + " offsets, "
+          + listed.cardinality() + " listed");
+    } catch (Exception e) {
+      log.error("Unable to load ESG search index, searches will use the database", e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Picks up changes made by other instances: indexes the ESG offsets loaded since the last
+   * refresh and reloads the listed offsets. An index that failed to load is rebuilt instead.
+   */
+  @Scheduled(fixedDelay = "${hem.esg.search.index.refresh-interval:1m}")
+  public void refresh() {
+    if (!enabled) {
+      return;
+    }
+    if (!ready) {
+      rebuild();
+      return;
+    }
+    try {
+      long since;
+      lock.readLock().lock();
+      try {
+        since = lastEsgOffsetId;
+      } finally {
+        lock.readLock().unlock();
+      }
+      var esgOffsets = esgOffsetRepo.findByIdGreaterThan(since);
+      update(() -> esgOffsets.forEach(this::index));
+    } catch (Exception e) {
+      log.error("Unable to load new ESG offsets into the search index", e);
+    }
+    refreshListings();
+  }
+
+  /**
+   * Reloads the listed bitmap from the database, for changes made in bulk outside
+   * {@code OffsetRepo} such as expired listings and purchases. The listings are read without
+   * holding the index lock and the new bitmap replaces the old one at the end, so searches and
+   * updates are not held up by the query.
+   */
+  public void refreshListings() {
+    if (!enabled) {
+      return;
+    }
+    reloadLock.lock();
+    try {
+      update(() -> journal = new ArrayList<>());
+      var listings = listingRepo.findByPurchaseTxnIdIsNull();
+      update(() -> {
+        if (journal == null) {
+          // rebuilt in the meantime, which read the listings after this did
+          return;
+        }
+        var reloaded = new BitSet();
+        listings.forEach(listing -> list(listing, reloaded));
+        listed = reloaded;
+        journal.forEach(Runnable::run);
+        journal = null;
+        sortOrder();
+      });
+    } catch (Exception e) {
+      update(() -> journal = null);
+      ready = false;
+      log.error("Unable to refresh listings of ESG search index, searches will use the database",
+          e);
+    } finally {
+      reloadLock.unlock();
+    }
+  }
+
+  public void add(EsgOffset esgOffset) {
+    update(() -> index(esgOffset));
+  }
+
+  public void listed(Nft nft, String ownerId, @Nullable Long price) {
+    updateListing(() -> list(nft, ownerId, price, listed));
+  }
+
+  public void unlisted(Nft nft) {
+    updateListing(() -> {
+      var ordinal = ordinals.get(nft);
+      if (ordinal != null) {
+        listed.clear(ordinal);
+      }
+    });
+  }
+
+  /**
+   * Finds the listed offsets matching every title, with any of the values given for each title.
+   * Results are ordered by token id and serial number, like the database search.
+   */
+  public List<EsgOffsetSummary> search(Map<String, List<String>> parameters,
+      @Nullable Integer limit, @Nullable Integer offset) {
+    return search(parameters, limit, offset, List.of()).offsetSummaries();
+  }
+
+  /**
+   * Like {@link #search(Map, Integer, Integer)}, also counting how many matching offsets carry
+   * each value of the requested facet titles. Counts cover all matches, not just the page, and
+   * are gathered in the same pass over the matches that builds the page.
+   */
+  public SearchResponse search(Map<String, List<String>> parameters,
+      @Nullable Integer limit, @Nullable Integer offset, List<String> facetTitles) {
+    lock.readLock().lock();
+    try {
+      var matches = matches(parameters);
+
+      var counted = new boolean[values.size()];
+      facetTitles.forEach(title ->
+          valueIds.getOrDefault(title, Map.of()).values().forEach(id -> counted[id] = true));
+      var counts = facetTitles.isEmpty() ? null : new int[values.size()];
+
+      var skip = offset == null ? 0 : offset;
+      var max = limit == null ? Integer.MAX_VALUE : limit;
+      var summaries = new ArrayList<EsgOffsetSummary>();
+      for (int ordinal : order) {
+        if (!matches.get(ordinal)) {
+          continue;
+        }
+        var indexedOffset = offsets.get(ordinal);
+        if (skip > 0) {
+          skip--;
+        } else if (summaries.size() < max) {
+          summaries.add(indexedOffset.toSummary());
+        } else if (counts == null) {
+          break;
+        }
+        if (counts != null) {
+          for (int id : indexedOffset.attributeValueIds) {
+            if (counted[id]) {
+              counts[id]++;
+            }
+          }
+        }
+      }
+      return new SearchResponse(parameters, summaries,
+          counts == null ? null : facets(facetTitles, counts));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private BitSet matches(Map<String, List<String>> parameters) {
+    var matches = (BitSet) listed.clone();
+    matches.and(indexed);
+    for (var parameter : parameters.entrySet()) {
+      if (parameter.getValue() == null || parameter.getValue().isEmpty()) {
+        continue;
+      }
+      var ids = valueIds.getOrDefault(parameter.getKey(), Map.of());
+      var anyValue = new BitSet();
+      parameter.getValue().forEach(value -> {
+        var id = ids.get(value);
+        if (id != null) {
+          anyValue.or(valueBitmaps.get(id));
+        }
+      });
+      matches.and(anyValue);
+      if (matches.isEmpty()) {
+        break;
+      }
+    }
+    return matches;
+  }
+
+  private Map<String, Map<String, Integer>> facets(List<String> facetTitles, int[] counts) {
+    var facets = new LinkedHashMap<String, Map<String, Integer>>();
+    facetTitles.forEach(title -> facets.put(title, new TreeMap<>()));
+    for (int id = 0; id < counts.length; id++) {
+      if (counts[id] > 0) {
+        facets.get(valueTitles.get(id)).put(values.get(id), counts[id]);
+      }
+    }
+    return facets;
+  }
+
+  /*
+  Changes wait for a running rebuild to finish instead of being dropped, so nothing saved while
+  the index is loading gets lost.
+   */
+  private void update(Runnable change) {
+    if (!enabled) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      if (ready) {
+        change.run();
+        sortOrder();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void updateListing(Runnable change) {
+    update(() -> {
+      change.run();
+      if (journal != null) {
+        journal.add(change);
+      }
+    });
+  }
+
+  private void list(Listing listing) {
+    list(listing, listed);
+  }
+
+  private void list(Listing listing, BitSet into) {
+    list(new Nft(listing.getTokenId(), listing.getSerialNumber()), listing.getAccountId(),
+        listing.getRetailPrice(), into);
+  }
+
+  private void list(Nft nft, String ownerId, Long price, BitSet into) {
+    var ordinal = ordinalOf(nft);
+    var offset = offsets.get(ordinal);
+    offset.ownerId = ownerId;
+    offset.price = price;
+    into.set(ordinal);
+  }
+
+  private void index(EsgOffset esgOffset) {
+    if (esgOffset.getId() != null) {
+      lastEsgOffsetId = Math.max(lastEsgOffsetId, esgOffset.getId());
+    }
+    var ordinal = ordinalOf(new Nft(esgOffset.getTokenId(), esgOffset.getSerialNumber()));
+    if (indexed.get(ordinal) || esgOffset.getAttributes() == null) {
+      return;
+    }
+    var offset = offsets.get(ordinal);
+    var ids = new int[esgOffset.getAttributes().size()];
+    for (int i = 0; i < ids.length; i++) {
+      var attribute = esgOffset.getAttributes().get(i);
+      ids[i] = valueIdOf(attribute.getTitle(), attribute.getValue());
+      valueBitmaps.get(ids[i]).set(ordinal);
+      offset.attribute(attribute.getTitle(), attribute.getValue());
+    }
+    offset.attributeValueIds = ids;
+    indexed.set(ordinal);
+  }
+
+  private int valueIdOf(String title, String value) {
+    return valueIds.computeIfAbsent(title, key -> new HashMap<>()).computeIfAbsent(value, key -> {
+      valueTitles.add(title);
+      values.add(value);
+      valueBitmaps.add(new BitSet());
+      return values.size() - 1;
+    });
+  }
+
+  private int ordinalOf(Nft nft) {
+    return ordinals.computeIfAbsent(nft, key -> {
+      offsets.add(new IndexedOffset(key));
+      var ordinal = offsets.size() - 1;
+      order.add(ordinal);
+      orderSorted = false;
+      return ordinal;
+    });
+  }
+
+  /*
+  A search walks the ordinals sorted by nft. New ordinals are appended and sorted once a change
+  is complete, which merges the new tail into the sorted list instead of inserting one by one.
+   */
+  private void sortOrder() {
+    if (!orderSorted) {
+      order.sort(Comparator.comparing((Integer ordinal) -> offsets.get(ordinal).nft, NFT_ORDER));
+      orderSorted = true;
+    }
+  }
+
+  private static class IndexedOffset {
+
+    private final Nft nft;
+    private String ownerId;
+    private Long price;
+    private String category;
+    private String type;
+    private String name;
+    private String country;
+    private String region;
+    private String vintage;
+    private int[] attributeValueIds = new int[0];
+
+    IndexedOffset(Nft nft) {
+      this.nft = nft;
+    }
+
+    void attribute(String title, String value) {
+      switch (title) {
+        case "Project Category" -> category = value;
+        case "Project Type" -> type = value;
+        case "Project Name" -> name = value;
+        case "Project Country" -> country = value;
+        case "Project Region" -> region = value;
+        case "Vintage" -> vintage = value;
+        default -> {
+        }
+      }
+    }
+
+    EsgOffsetSummary toSummary() {
+      return new EsgOffsetSummary(ownerId, nft, price, category, type, name, country, region,
+          vintage);
+    }
+  }
+}
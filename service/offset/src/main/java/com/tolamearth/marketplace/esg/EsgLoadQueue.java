@@ -30,5 +30,8 @@ public interface EsgLoadQueue {
   default List<Nft> list(){
     return list(true);
   }
+  default int size() {
+    return list(false).size();
+  }
 
 }
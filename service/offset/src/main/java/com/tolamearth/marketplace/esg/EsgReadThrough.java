@@ -0,0 +1,145 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.esg;
+
+import com.tolamearth.marketplace.esg.db.EsgOffset;
+import com.tolamearth.marketplace.esg.db.EsgOffsetRepo;
+import com.tolamearth.marketplace.offset.Nft;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.scheduling.TaskExecutors;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches the ESG data of an nft that is not stored yet straight from the ESG api, instead of
+ * leaving the caller to wait for {@link com.tolamearth.marketplace.esg.job.EsgLoadJob}. Concurrent
+ * requests for the same nft share one in-flight fetch. The fetched offset is stored in the
+ * background if this node manages to lock the nft in the {@link EsgLoadQueue}; otherwise the load
+ * job already holds it and will store it itself.
+ */
+@Singleton
+public class EsgReadThrough {
+
+  private static final Logger log = LoggerFactory.getLogger(EsgReadThrough.class);
+
+  private final EsgAttributeLoader loader;
+  private final EsgOffsetRepo attributesRepo;
+  private final EsgLoadQueue queue;
+  private final EsgFacetIndex facetIndex;
+  private final ExecutorService executor;
+  private final boolean enabled;
+  private final long timeoutMillis;
+  private final Map<Nft, CompletableFuture<EsgOffset>> inFlight = new ConcurrentHashMap<>();
+
+  public EsgReadThrough(EsgAttributeLoader loader, EsgOffsetRepo attributesRepo,
+      EsgLoadQueue queue, EsgFacetIndex facetIndex,
+      @Named(TaskExecutors.IO) ExecutorService executor,
+      @Value("${hem.esg.read-through.enabled:true}") Boolean enabled,
+      @Value("${hem.esg.read-through.timeout-millis:3000}") Long timeoutMillis) {
+    this.loader = loader;
+    this.attributesRepo = attributesRepo;
+    this.queue = queue;
+    this.facetIndex = facetIndex;
+    this.executor = executor;
+    this.enabled = enabled;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Fetches the ESG data of an nft, giving up waiting after the configured timeout. The fetch keeps
+   * going after a timeout, so a later request is likely to find the data stored.
+   *
+   * @param nft nft that is queued for loading
+   * @return future of the fetched offset, completed with null when read-through is disabled, the
+   * fetch failed or timed out
+   */
+  public CompletableFuture<EsgOffset> fetch(Nft nft) {
+    if (!enabled) {
+      return CompletableFuture.completedFuture(null);
+    }
+    var created = new CompletableFuture<EsgOffset>();
+    var fetch = inFlight.putIfAbsent(nft, created);
+    if (fetch == null) {
+      fetch = created;
+      load(nft, created);
+    }
+
+    // the timeout only applies to this caller, the shared fetch is left running
+    return fetch.copy()
+        .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+        .exceptionally(e -> {
+          var cause = e instanceof CompletionException ? e.getCause() : e;
+          if (cause instanceof TimeoutException) {
+            log.warn("Timed out fetching ESG data for " + nft + " after " + timeoutMillis + "ms");
+          } else {
+            log.error("Unable to fetch ESG data for " + nft, cause);
+          }
+          return null;
+        });
+  }
+
+  private void load(Nft nft, CompletableFuture<EsgOffset> fetch) {
+    // locking and storing touch the queue and the database, so they run on the executor, while the
+    // ESG api call itself holds no thread
+    CompletableFuture.supplyAsync(() -> queue.lock(nft), executor)
+        .thenCompose(locked -> loader.fetchAsync(nft)
+            .handleAsync((offset, error) -> {
+              if (error != null) {
+                if (locked) {
+                  queue.unlock(nft);
+                }
+                fetch.completeExceptionally(error);
+              } else {
+                fetch.complete(offset);
+                if (locked) {
+                  store(nft, offset);
+                }
+              }
+              return null;
+            }, executor))
+        .whenComplete((ignored, error) -> {
+          if (error != null) {
+            // the queue itself failed, the load job will pick the nft up
+            fetch.completeExceptionally(error);
+          }
+          // the nft stays in flight until it is stored, so no second fetch can start in the meantime
+          inFlight.remove(nft, fetch);
+        });
+  }
+
+  private void store(Nft nft, EsgOffset offset) {
+    try {
+      if (attributesRepo.findByTokenIdAndSerialNumber(nft.tokenId(), nft.serialNumber()) == null) {
+        attributesRepo.save(offset);
+        facetIndex.add(offset);
+      }
+      queue.remove(nft);
+    } catch (Exception e) {
+      log.error("Unable to save ESG data for " + nft + ", leaving it to the load job", e);
+      queue.unlock(nft);
+    }
+  }
+}
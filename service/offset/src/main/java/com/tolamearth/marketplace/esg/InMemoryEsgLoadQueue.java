@@ -17,19 +17,25 @@
 package com.tolamearth.marketplace.esg;
 
 import com.tolamearth.marketplace.offset.Nft;
+import io.micronaut.context.annotation.Requires;
 import jakarta.inject.Singleton;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Node-local queue. Every transition is a single atomic map operation, so controllers can
+ * enqueue while {@link com.tolamearth.marketplace.esg.job.EsgLoadJob} drains the queue.
+ */
 @Singleton
+@Requires(property = "hem.esg.queue.store", value = "memory", defaultValue = "memory")
 public class InMemoryEsgLoadQueue implements EsgLoadQueue {
 
   private final Map<Nft, Boolean> tokens;
 
   public InMemoryEsgLoadQueue() {
-    tokens = new HashMap<>();
+    tokens = new ConcurrentHashMap<>();
   }
 
   @Override
@@ -39,44 +45,27 @@ public class InMemoryEsgLoadQueue implements EsgLoadQueue {
 
   @Override
   public boolean add(Nft nft) {
-    if (tokens.containsKey(nft)) {
-      return false;
-    }
-    tokens.put(nft, false);
-    return true;
+    return tokens.putIfAbsent(nft, false) == null;
   }
 
   @Override
   public boolean lock(Nft nft) {
-    if (tokens.containsKey(nft)) {
-      if (!tokens.get(nft)) {
-        tokens.remove(nft);
-        tokens.put(nft, true);
-        return true;
-      }
-    }
-    return false;
+    return tokens.replace(nft, false, true);
   }
 
   @Override
   public boolean unlock(Nft nft) {
-    if (tokens.containsKey(nft)) {
-      if (tokens.get(nft)) {
-        tokens.remove(nft);
-        tokens.put(nft, false);
-        return true;
-      }
-    }
-    return false;
+    return tokens.replace(nft, true, false);
   }
 
   @Override
   public boolean remove(Nft nft) {
-    if (tokens.containsKey(nft)) {
-      tokens.remove(nft);
-      return true;
-    }
-    return false;
+    return tokens.remove(nft) != null;
+  }
+
+  @Override
+  public int size() {
+    return tokens.size();
   }
 
   @Override
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.esg;
+
+import com.tolamearth.marketplace.esg.db.EsgLoadQueueEntry;
+import com.tolamearth.marketplace.esg.db.EsgLoadQueueRepo;
+import com.tolamearth.marketplace.offset.Nft;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.data.exceptions.DataAccessException;
+import jakarta.inject.Singleton;
+import java.time.Clock;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Queue shared by every node through the database. A lock is claimed with a conditional update,
+ * so when several nodes race for the same entry exactly one of them wins it. Locks older than
+ * {@code hem.esg.queue.lock-timeout-seconds} are treated as abandoned by a node that died
+ * mid-load and can be claimed again.
+ */
+@Singleton
+@Requires(property = "hem.esg.queue.store", value = "jdbc")
+public class JdbcEsgLoadQueue implements EsgLoadQueue {
+
+  private static final Logger log = LoggerFactory.getLogger(JdbcEsgLoadQueue.class);
+
+  private final EsgLoadQueueRepo repo;
+  private final Clock clock;
+  private final long lockTimeoutMillis;
+
+  public JdbcEsgLoadQueue(EsgLoadQueueRepo repo, Clock clock,
+      @Value("${hem.esg.queue.lock-timeout-seconds:600}") Integer lockTimeoutSeconds) {
+    this.repo = repo;
+    this.clock = clock;
+    this.lockTimeoutMillis = lockTimeoutSeconds * 1000L;
+  }
+
+  @Override
+  public boolean contains(Nft nft) {
+    return repo.existsByTokenIdAndSerialNumber(nft.tokenId(), nft.serialNumber());
+  }
+
+  @Override
+  public boolean add(Nft nft) {
+    if (contains(nft)) {
+      return false;
+    }
+    try {
+      repo.save(new EsgLoadQueueEntry(nft.tokenId(), nft.serialNumber(), clock.millis()));
+      return true;
+    } catch (DataAccessException e) {
+      // another node queued the same nft between the check and the insert
+      log.debug("Nft already queued: " + nft);
+      return false;
+    }
+  }
+
+  @Override
+  public boolean lock(Nft nft) {
+    var now = clock.millis();
+    return repo.updateLockIfAvailable(nft.tokenId(), nft.serialNumber(), now,
+        now - lockTimeoutMillis) == 1;
+  }
+
+  @Override
+  public boolean unlock(Nft nft) {
+    return repo.updateReleaseLock(nft.tokenId(), nft.serialNumber()) == 1;
+  }
+
+  @Override
+  public boolean remove(Nft nft) {
+    return repo.deleteByTokenIdAndSerialNumber(nft.tokenId(), nft.serialNumber()) > 0;
+  }
+
+  @Override
+  public int size() {
+    return (int) repo.count();
+  }
+
+  @Override
+  public List<Nft> list(boolean unlockedOnly) {
+    var entries = unlockedOnly
+        ? repo.findByLockedAtIsNullOrLockedAtLessThanOrderById(clock.millis() - lockTimeoutMillis)
+        : repo.listOrderById();
+    return entries.stream()
+        .map(entry -> new Nft(entry.getTokenId(), entry.getSerialNumber()))
+        .toList();
+  }
+}
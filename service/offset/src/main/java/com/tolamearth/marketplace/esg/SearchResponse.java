@@ -16,10 +16,17 @@
 
 package com.tolamearth.marketplace.esg;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.util.List;
 import java.util.Map;
 
-public record SearchResponse(@JsonProperty("request") Map<String, List<String>> parameters, @JsonProperty("results") List<EsgOffsetSummary> offsetSummaries){
+public record SearchResponse(@JsonProperty("request") Map<String, List<String>> parameters, @JsonProperty("results") List<EsgOffsetSummary> offsetSummaries,
+                             @JsonProperty("facets") @JsonInclude(Include.NON_NULL) Map<String, Map<String, Integer>> facets){
+
+    public SearchResponse(Map<String, List<String>> parameters, List<EsgOffsetSummary> offsetSummaries){
+        this(parameters, offsetSummaries, null);
+    }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.esg.db;
+
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.data.annotation.GeneratedValue;
+import io.micronaut.data.annotation.Id;
+import io.micronaut.data.annotation.MappedEntity;
+
+@MappedEntity("EsgLoadQueue")
+public class EsgLoadQueueEntry {
+
+  @Id
+  @GeneratedValue
+  private Long id;
+
+  private String tokenId;
+  private Long serialNumber;
+  private Long creationTime;
+  @Nullable
+  private Long lockedAt;
+
+  public EsgLoadQueueEntry() {
+  }
+
+  public EsgLoadQueueEntry(String tokenId, Long serialNumber, Long creationTime) {
+    this.tokenId = tokenId;
+    this.serialNumber = serialNumber;
+    this.creationTime = creationTime;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getTokenId() {
+    return tokenId;
+  }
+
+  public void setTokenId(String tokenId) {
+    this.tokenId = tokenId;
+  }
+
+  public Long getSerialNumber() {
+    return serialNumber;
+  }
+
+  public void setSerialNumber(Long serialNumber) {
+    this.serialNumber = serialNumber;
+  }
+
+  public Long getCreationTime() {
+    return creationTime;
+  }
+
+  public void setCreationTime(Long creationTime) {
+    this.creationTime = creationTime;
+  }
+
+  @Nullable
+  public Long getLockedAt() {
+    return lockedAt;
+  }
+
+  public void setLockedAt(@Nullable Long lockedAt) {
+    this.lockedAt = lockedAt;
+  }
+}
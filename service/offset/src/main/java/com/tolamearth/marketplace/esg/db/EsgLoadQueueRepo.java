@@ -0,0 +1,49 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.esg.db;
+
+import io.micronaut.data.annotation.Query;
+import io.micronaut.data.jdbc.annotation.JdbcRepository;
+import io.micronaut.data.repository.CrudRepository;
+import java.util.List;
+
+@JdbcRepository
+public interface EsgLoadQueueRepo extends CrudRepository<EsgLoadQueueEntry, Long> {
+
+  boolean existsByTokenIdAndSerialNumber(String tokenId, Long serialNumber);
+
+  int deleteByTokenIdAndSerialNumber(String tokenId, Long serialNumber);
+
+  List<EsgLoadQueueEntry> listOrderById();
+
+  List<EsgLoadQueueEntry> findByLockedAtIsNullOrLockedAtLessThanOrderById(Long staleBefore);
+
+  /**
+   * Claims the entry unless another caller holds a lock taken after {@code staleBefore}.
+   * Returns the number of rows claimed, 0 when the entry was lost to another caller.
+   */
+  @Query("""
+      UPDATE EsgLoadQueue SET locked_at = :lockedAt \
+      WHERE token_id = :tokenId AND serial_number = :serialNumber \
+      AND (locked_at IS NULL OR locked_at < :staleBefore)""")
+  int updateLockIfAvailable(String tokenId, Long serialNumber, Long lockedAt, Long staleBefore);
+
+  @Query("""
+      UPDATE EsgLoadQueue SET locked_at = NULL \
+      WHERE token_id = :tokenId AND serial_number = :serialNumber AND locked_at IS NOT NULL""")
+  int updateReleaseLock(String tokenId, Long serialNumber);
+}
@@ -20,12 +20,22 @@ import io.micronaut.core.annotation.Nullable;
 import io.micronaut.data.annotation.Join;
 import io.micronaut.data.annotation.Join.Type;
 import io.micronaut.data.jdbc.annotation.JdbcRepository;
-import io.micronaut.data.model.query.builder.sql.Dialect;
 import io.micronaut.data.repository.CrudRepository;
+import java.util.Collection;
+import java.util.List;
 
-@JdbcRepository(dialect = Dialect.H2)
+@JdbcRepository
 public interface EsgOffsetRepo extends CrudRepository<EsgOffset, Long> {
 
   @Join(value="attributes", type = Type.FETCH)
   @Nullable EsgOffset findByTokenIdAndSerialNumber(String tokenId, Long serialNumber);
+
+  @Join(value="attributes", type = Type.FETCH)
+  List<EsgOffset> list();
+
+  @Join(value="attributes", type = Type.FETCH)
+  List<EsgOffset> findByIdGreaterThan(Long id);
+
+  List<EsgOffset> findByTokenIdInAndSerialNumberIn(Collection<String> tokenIds,
+      Collection<Long> serialNumbers);
 }
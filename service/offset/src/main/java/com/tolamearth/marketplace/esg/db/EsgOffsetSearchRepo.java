@@ -17,20 +17,22 @@
 package com.tolamearth.marketplace.esg.db;
 
 import com.tolamearth.marketplace.esg.EsgOffsetSummary;
+import com.tolamearth.marketplace.esg.SearchResponse;
 import com.tolamearth.marketplace.offset.Nft;
 import io.micronaut.data.jdbc.annotation.JdbcRepository;
 import io.micronaut.data.jdbc.runtime.JdbcOperations;
-import io.micronaut.data.model.query.builder.sql.Dialect;
 import jakarta.inject.Singleton;
 
 import javax.transaction.Transactional;
 import java.math.BigInteger;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.*;
 import java.util.stream.Collectors;
 
 @Singleton
-@JdbcRepository(dialect = Dialect.H2)
+@JdbcRepository
 public class EsgOffsetSearchRepo {
 
     private final JdbcOperations jdbc;
@@ -39,90 +41,189 @@ public class EsgOffsetSearchRepo {
         this.jdbc = jdbc;
     }
     /*
-    Loop through the map of TITLEs and corresponding VALUEs finding the matching Nfts,
-    placing them in a set, and then intersecting the existing set with the next set.
+    Answers the whole conjunction in one statement: every TITLE becomes an EXISTS clause over the
+    attribute table, so only listed offsets matching all TITLEs (with any of the VALUEs given for
+    each) are selected. Matching offsets are paged in the database before their attributes are
+    joined in, so a page never loads more than limit offsets.
      */
     public List<EsgOffsetSummary> findByParameters(Map<String, List<String>> parameters){
-        if(parameters.size() == 0){
-            return runFinalQuery(null, buildFinalQuery(0)).stream().map(teos -> transmogrify(teos)).collect(Collectors.toList());//make final query
+        return findByParameters(parameters, null, 0);
+    }
+
+    public List<EsgOffsetSummary> findByParameters(Map<String, List<String>> parameters, Integer limit, Integer offset){
+        var filters = filters(parameters);
+        return runSearchQuery(buildSearchQuery(filters, limit != null), filters, limit, offset == null ? 0 : offset)
+                .stream().map(teos -> transmogrify(teos)).collect(Collectors.toList());
+    }
+
+    /*
+    Returns a page of matches together with how many of all matching listed offsets carry each
+    VALUE of the requested facet TITLEs. Both come from one statement: the match query is a common
+    table expression that the page and the grouped counts read from, so it runs once.
+     */
+    public SearchResponse findWithFacetCounts(Map<String, List<String>> parameters, Integer limit, Integer offset,
+                                              List<String> titles){
+        var filters = filters(parameters);
+        Map<String, Map<String, Integer>> counts = new LinkedHashMap<>();
+        titles.forEach(title -> counts.put(title, new LinkedHashMap<>()));
+        if (titles.isEmpty()) {
+            return new SearchResponse(parameters, findByParameters(parameters, limit, offset), counts);
+        }
+        var summaries = runFacetSearchQuery(buildFacetSearchQuery(filters, limit != null, titles.size()), filters,
+                limit, offset == null ? 0 : offset, titles, counts);
+        return new SearchResponse(parameters, summaries.stream().map(teos -> transmogrify(teos)).toList(), counts);
+    }
+
+    private static List<Map.Entry<String, List<String>>> filters(Map<String, List<String>> parameters){
+        return parameters.entrySet().stream()
+                .filter(entry -> entry.getValue() != null && !entry.getValue().isEmpty())
+                .toList();
+    }
+
+    private static String buildMatchQuery(List<Map.Entry<String, List<String>>> filters, boolean paged){
+        StringBuilder sbuf = new StringBuilder("""
+        SELECT \
+        a.account_id as owner_id, \
+        a.token_id as token_id, \
+        a.serial_number as serial_number, \
+        a.retail_price as price, \
+        b.ID as esg_offset_id \
+        FROM ListedOffsets a \
+        JOIN ESGOFFSET b ON a.token_id=b.token_id AND a.serial_number=b.serial_number \
+        WHERE a.purchase_txn_id IS NULL \
+        """);
+        for (var filter : filters) {
+            sbuf.append(" AND EXISTS (SELECT 1 FROM ESGOFFSETATTRIBUTE f WHERE f.ESG_OFFSET_ID=b.ID AND f.title=? AND f.value IN (");
+            appendPlaceholders(sbuf, filter.getValue().size());
+            sbuf.append("))");
         }
-        List<EsgOffsetSummary> summaries = new ArrayList<>();
-        String firstKey = parameters.keySet().stream().findFirst().get();
-        var query = buildPropertyQuery(parameters.get(firstKey).size());
-        Set<Nft> nfts = runPropertyQuery(query, firstKey, parameters.get(firstKey));
-        if(parameters.size() > 1) {
-            parameters.keySet().stream().skip(1).forEach( key ->
-                    {
-                        Set<Nft> newSet = runPropertyQuery(buildPropertyQuery(parameters.get(key).size()), key, parameters.get(key));
-                        nfts.retainAll(newSet);//Take the intersection of the two sets (i.e. perform the "AND")
-                    }
-            );
+        if (paged) {
+            sbuf.append(" ORDER BY a.token_id, a.serial_number LIMIT ? OFFSET ?");
         }
-        if(nfts.size() > 0){
-            summaries = runFinalQuery(nfts, buildFinalQuery(nfts.size())).stream().map(teos -> transmogrify(teos)).collect(Collectors.toList());//make final query
+        return sbuf.toString();
+    }
+
+    private static void appendPlaceholders(StringBuilder sbuf, int length){
+        sbuf.append("?");
+        for(int i=0;i<length-1;i++){
+            sbuf.append(",?");
         }
-        return summaries;
     }
-    private static String buildPropertyQuery(int length){
-        StringBuilder sbuf = new StringBuilder("""
+
+    private static String buildSearchQuery(List<Map.Entry<String, List<String>>> filters, boolean paged){
+        return """
         SELECT \
-        b.token_id as token_id, \
-        b.serial_number as serial_number \
-        FROM ESGOFFSETATTRIBUTE a \
-        JOIN ESGOFFSET b ON a.ESG_OFFSET_ID=b.ID \
-        WHERE title=?  AND value IN ( \
+        m.owner_id as owner_id, \
+        m.token_id as token_id, \
+        m.serial_number as serial_number, \
+        m.price as price, \
+        c.title as title, \
+        c.value as value \
+        FROM (\
+        """ + buildMatchQuery(filters, paged) + """
+        ) m \
+        JOIN ESGOFFSETATTRIBUTE c ON m.esg_offset_id=c.ESG_OFFSET_ID \
+        ORDER BY m.token_id, m.serial_number;\
+        """;
+    }
+
+    private static String buildFacetSearchQuery(List<Map.Entry<String, List<String>>> filters, boolean paged,
+                                                int titles){
+        StringBuilder sbuf = new StringBuilder("WITH m AS (");
+        sbuf.append(buildMatchQuery(filters, false));
+        sbuf.append(")");
+        if (paged) {
+            sbuf.append(", p AS (SELECT * FROM m ORDER BY token_id, serial_number LIMIT ? OFFSET ?)");
+        }
+        sbuf.append("""
+         SELECT \
+        0 as facet, \
+        p.owner_id as owner_id, \
+        p.token_id as token_id, \
+        p.serial_number as serial_number, \
+        p.price as price, \
+        c.title as title, \
+        c.value as value, \
+        0 as total \
+        FROM\
         """);
-        if(length > 1){
-            sbuf.append("?");
-            for(int i=0;i<length-1;i++){
-                sbuf.append(",?");
+        sbuf.append(paged ? " p" : " m p");
+        sbuf.append("""
+         JOIN ESGOFFSETATTRIBUTE c ON p.esg_offset_id=c.ESG_OFFSET_ID \
+        UNION ALL \
+        SELECT 1, NULL, NULL, NULL, NULL, c.title, c.value, COUNT(*) \
+        FROM m \
+        JOIN ESGOFFSETATTRIBUTE c ON m.esg_offset_id=c.ESG_OFFSET_ID \
+        WHERE c.title IN (\
+        """);
+        appendPlaceholders(sbuf, titles);
+        // offsets first in token order, then the counts; by position as VALUE is a keyword in H2
+        sbuf.append(") GROUP BY c.title, c.value ORDER BY 1, 3, 4, 6, 7;");
+        return sbuf.toString();
+    }
+
+    private static int bindFilters(PreparedStatement statement, List<Map.Entry<String, List<String>>> filters) throws SQLException {
+        int index=1;
+        for (var filter : filters) {
+            statement.setString(index++, filter.getKey());
+            for (String value : filter.getValue()) {
+                statement.setString(index++, value);
             }
-        }else{
-            sbuf.append("?");
         }
-        sbuf.append(");");
-        return sbuf.toString();
+        return index;
     }
+
     @Transactional
-    public Set<Nft> runPropertyQuery(String query, String key, List<String> parameters){
+    public List<TempEsgOffsetSummary> runFacetSearchQuery(String query, List<Map.Entry<String, List<String>>> filters,
+                                                          Integer limit, int offset, List<String> titles,
+                                                          Map<String, Map<String, Integer>> counts){
         return jdbc.prepareStatement(query, statement -> {
-            statement.setString(1, key);
-            for(int i=0;i<parameters.size();i++){
-                statement.setString(i+2, parameters.get(i));
+            int index = bindFilters(statement, filters);
+            if (limit != null) {
+                statement.setInt(index++, limit);
+                statement.setInt(index++, offset);
+            }
+            for (String title : titles) {
+                statement.setString(index++, title);
             }
             ResultSet rs = statement.executeQuery();
-            var set = new HashSet<Nft>();
+            Map<Nft,TempEsgOffsetSummary> tempMap = new LinkedHashMap<>();
             while (rs.next()){
-                set.add(new Nft(rs.getString("token_id"), rs.getLong("serial_number")));
+                if (rs.getInt("facet") == 1) {
+                    counts.get(rs.getString("title")).put(rs.getString("value"), rs.getInt("total"));
+                } else {
+                    readSummary(rs, tempMap);
+                }
             }
-            return set;
+            return tempMap.values().stream().toList();
         });
     }
+
     @Transactional
-    public List<TempEsgOffsetSummary> runFinalQuery(Set<Nft> nfts, String query){
+    public List<TempEsgOffsetSummary> runSearchQuery(String query, List<Map.Entry<String, List<String>>> filters, Integer limit, int offset){
         return jdbc.prepareStatement(query, statement -> {
-            if (nfts != null && nfts.size() > 0){
-                int index=1;
-                for (Nft nft : nfts) {
-                    statement.setString(index++, nft.tokenId());
-                    statement.setLong(index++, nft.serialNumber());
-                }
+            int index = bindFilters(statement, filters);
+            if (limit != null) {
+                statement.setInt(index++, limit);
+                statement.setInt(index, offset);
             }
             ResultSet rs = statement.executeQuery();
-            TempEsgOffsetSummary tempEsgOffsetSummary;
-            Nft nft;
-            Map<Nft,TempEsgOffsetSummary> tempMap = new HashMap<>();
+            Map<Nft,TempEsgOffsetSummary> tempMap = new LinkedHashMap<>();
             while (rs.next()){
-                nft = new Nft(rs.getString("token_id"), rs.getLong("serial_number"));
-                tempEsgOffsetSummary = tempMap.containsKey(nft) ?
-                        tempMap.get(nft) :
-                        new TempEsgOffsetSummary(nft, rs.getString("owner_id"), rs.getBigDecimal("price").toBigInteger());
-                mapTo(tempEsgOffsetSummary, rs.getString("title"), rs.getString("value"));
-                tempMap.put(nft, tempEsgOffsetSummary);
+                readSummary(rs, tempMap);
             }
             return tempMap.values().stream().toList();
         });
     }
+
+    private void readSummary(ResultSet rs, Map<Nft,TempEsgOffsetSummary> tempMap) throws SQLException {
+        Nft nft = new Nft(rs.getString("token_id"), rs.getLong("serial_number"));
+        TempEsgOffsetSummary tempEsgOffsetSummary = tempMap.containsKey(nft) ?
+                tempMap.get(nft) :
+                new TempEsgOffsetSummary(nft, rs.getString("owner_id"), rs.getBigDecimal("price").toBigInteger());
+        mapTo(tempEsgOffsetSummary, rs.getString("title"), rs.getString("value"));
+        tempMap.put(nft, tempEsgOffsetSummary);
+    }
     private void mapTo(TempEsgOffsetSummary tempEsgOffsetSummary, String title, String value){
         switch (title){
             case "Project Category":
@@ -145,35 +246,6 @@ public class EsgOffsetSearchRepo {
                 break;
         }
     }
-    /*
-    Get the attributes of all matching Nfts (tokenId/serial#)
-     */
-    private String buildFinalQuery(int length){
-        StringBuilder sbuf = new StringBuilder("""
-        SELECT \
-        a.account_id as owner_id, \
-        a.token_id as token_id, \
-        a.serial_number as serial_number, \
-        a.retail_price as price, \
-        c.title as title, \
-        c.value as value \
-        FROM ListedOffsets a \
-        JOIN ESGOFFSET b ON a.token_id=b.token_id AND a.serial_number=b.serial_number \
-        JOIN ESGOFFSETATTRIBUTE c ON b.ID=c.ESG_OFFSET_ID \
-        WHERE a.purchase_txn_id IS NULL \
-        """);
-        if(length > 0) {
-            sbuf.append(" AND ((a.token_id=? AND a.serial_number=?) ");
-            if(length > 1){
-                for(int i=0;i<length-1;i++) {
-                    sbuf.append(" OR (a.token_id=? AND a.serial_number=?)");
-                }
-            }
-            sbuf.append(")");
-        }
-        sbuf.append(";");
-        return sbuf.toString();
-    }
     class TempEsgOffsetSummary{
         TempEsgOffsetSummary(Nft nft, String owner_id, BigInteger price){
             this.nft = nft;
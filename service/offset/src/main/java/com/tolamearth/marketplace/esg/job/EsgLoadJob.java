@@ -16,103 +16,174 @@
 
 package com.tolamearth.marketplace.esg.job;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.tolamearth.marketplace.esg.EsgClient;
+import com.tolamearth.marketplace.esg.EsgAttributeLoader;
+import com.tolamearth.marketplace.esg.EsgFacetIndex;
 import com.tolamearth.marketplace.esg.EsgLoadQueue;
 import com.tolamearth.marketplace.esg.db.EsgOffset;
-import com.tolamearth.marketplace.esg.db.EsgOffsetAttribute;
 import com.tolamearth.marketplace.esg.db.EsgOffsetRepo;
+import com.tolamearth.marketplace.offset.Nft;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.context.annotation.Value;
 import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Loads the ESG attributes of queued nfts. Claimed nfts are handled in batches: one query finds
+ * the nfts that are already loaded, the remaining ones are fetched in parallel on the
+ * {@code esg-load} executor and the batch is stored with a single {@code saveAll}. The fetches of
+ * the next batch are started before the previous batch is stored, so the database writes overlap
+ * with the ESG api calls.
+ */
 @Singleton
 public class EsgLoadJob {
 
   private static final Logger log = LoggerFactory.getLogger(EsgLoadJob.class);
 
-  private final EsgClient client;
+  private final EsgAttributeLoader loader;
   private final EsgLoadQueue queue;
   private final EsgOffsetRepo attributesRepo;
-  private final ObjectMapper objectMapper;
+  private final EsgFacetIndex facetIndex;
+  private final ExecutorService executor;
+  private final int batchSize;
+  private final Timer fetchTimer;
+  private final Timer saveTimer;
+  private final Timer runTimer;
+  private final Counter failures;
 
-  public EsgLoadJob(EsgClient client, EsgLoadQueue queue, EsgOffsetRepo attributesRepo,
-      ObjectMapper objectMapper) {
-    this.client = client;
+  public EsgLoadJob(EsgAttributeLoader loader, EsgLoadQueue queue, EsgOffsetRepo attributesRepo,
+      EsgFacetIndex facetIndex,
+      @Named("esg-load") ExecutorService executor, MeterRegistry meterRegistry,
+      @Value("${hem.esg.load.batch-size:100}") Integer batchSize) {
+    this.loader = loader;
     this.queue = queue;
     this.attributesRepo = attributesRepo;
-    this.objectMapper = objectMapper;
+    this.facetIndex = facetIndex;
+    this.executor = executor;
+    this.batchSize = Math.max(1, batchSize);
+    Gauge.builder("hem.esg.load.queue.depth", queue, EsgLoadQueue::size)
+        .description("Nfts waiting for their ESG attributes to be loaded")
+        .register(meterRegistry);
+    this.fetchTimer = Timer.builder("hem.esg.load.fetch")
+        .description("Time to fetch the ESG attributes of one nft")
+        .register(meterRegistry);
+    this.saveTimer = Timer.builder("hem.esg.load.save")
+        .description("Time to store one batch of loaded nfts")
+        .register(meterRegistry);
+    this.runTimer = Timer.builder("hem.esg.load.run")
+        .description("Time for one run of the load job")
+        .register(meterRegistry);
+    this.failures = Counter.builder("hem.esg.load.failures")
+        .description("Nfts that failed to load and were put back on the queue")
+        .register(meterRegistry);
   }
 
   @Scheduled(fixedDelay = "1m")
   public void run() {
-    var tokenIds = queue.list();
-    // lock all first so if job runs again they don't get processed twice
-    tokenIds.forEach(queue::lock);
-
-    tokenIds.forEach(nft -> {
-      log.debug("processing " + nft);
-      try {
-        // check if attributes already loaded
-        if (attributesRepo.findByTokenIdAndSerialNumber(nft.tokenId(), nft.serialNumber())
-            == null) {
-          var offset = new EsgOffset();
-          // populate fields
-          offset.setTokenId(nft.tokenId());
-          offset.setSerialNumber(nft.serialNumber());
-          addAttributes(offset);
-          attributesRepo.save(offset);
-        } else {
-          log.debug("Tried processing already populated token: " + nft);
-        }
+    // lock all first so if job runs again they don't get processed twice, and only process the
+    // ones this run managed to lock since another node may be draining the same queue
+    var tokenIds = queue.list().stream()
+        .filter(queue::lock)
+        .toList();
+    if (tokenIds.isEmpty()) {
+      return;
+    }
 
-        queue.remove(nft);
-      } catch (Exception e) {
-        e.printStackTrace();
-        queue.unlock(nft); // try again on the next run
+    runTimer.record(() -> {
+      Map<Nft, CompletableFuture<EsgOffset>> previous = Map.of();
+      for (int from = 0; from < tokenIds.size(); from += batchSize) {
+        var batch = tokenIds.subList(from, Math.min(from + batchSize, tokenIds.size()));
+        var fetches = startBatch(batch);
+        finishBatch(previous);
+        previous = fetches;
       }
+      finishBatch(previous);
     });
   }
 
-  private void addAttributes(EsgOffset offset) {
+  /**
+   * Removes the already loaded nfts of the batch from the queue and starts fetching the rest
+   */
+  private Map<Nft, CompletableFuture<EsgOffset>> startBatch(List<Nft> batch) {
+    Set<Nft> existing;
+    try {
+      existing = findExisting(batch);
+    } catch (Exception e) {
+      log.error("Unable to look up existing ESG data for " + batch.size() + " nfts", e);
+      batch.forEach(this::retry);
+      return Map.of();
+    }
 
-    var attributes = client.getNftAttributes(offset.getTokenId(), offset.getSerialNumber())
-        .attributes();
-    var convertedAttributes = new ArrayList<EsgOffsetAttribute>();
-    attributes.forEach(attribute -> {
-      var title = (String) attribute.get("title");
-      if (convertedAttributes.stream()
-          .noneMatch(convertedAttribute -> convertedAttribute.getTitle().equals(title))) {
-        var attributeEntity = new EsgOffsetAttribute();
-        attributeEntity.setTitle(title);
-        attributeEntity.setDescription(attribute.get("description").toString());
-        attributeEntity.setType(attribute.get("type").toString());
-        String value;
-        Object unconvertedValue = attribute.get("value");
-        if (attributeEntity.getType().equals("array")) {
-          try {
-            value = objectMapper.writeValueAsString(unconvertedValue);
-          } catch (JsonProcessingException e) {
-            log.error("Value on array type attribute did not properly convert to json, value toString: " + unconvertedValue.toString());
-            value = unconvertedValue.toString();
-          }
-        } else {
-          value = unconvertedValue.toString();
-        }
-        attributeEntity.setValue(value);
-        attributeEntity.setSchemaId(attribute.get("schemaId").toString());
-        attributeEntity.setSchemaName(attribute.get("schemaName").toString());
-        convertedAttributes.add(attributeEntity);
+    var fetches = new LinkedHashMap<Nft, CompletableFuture<EsgOffset>>();
+    batch.forEach(nft -> {
+      if (existing.contains(nft)) {
+        log.debug("Tried processing already populated token: " + nft);
+        queue.remove(nft);
       } else {
-        log.error("Found and ignored duplicate attribute with title: '" + title
-            + "' for offset: {tokenId: " + offset.getTokenId() + ", serial: "
-            + offset.getSerialNumber() + "}, attribute value: " + attribute.get("value")
-            .toString());
+        log.debug("processing " + nft);
+        fetches.put(nft, CompletableFuture.supplyAsync(() -> fetchTimer.record(() -> loader.fetch(nft)),
+            executor));
       }
     });
-    offset.setAttributes(convertedAttributes);
+    return fetches;
+  }
+
+  /**
+   * Waits for the fetches of a batch and stores every offset that loaded in one go
+   */
+  private void finishBatch(Map<Nft, CompletableFuture<EsgOffset>> fetches) {
+    var offsets = new ArrayList<EsgOffset>();
+    var loaded = new ArrayList<Nft>();
+    fetches.forEach((nft, fetch) -> {
+      try {
+        offsets.add(fetch.join());
+        loaded.add(nft);
+      } catch (Exception e) {
+        log.error("Unable to load ESG data for " + nft, e);
+        retry(nft);
+      }
+    });
+    if (offsets.isEmpty()) {
+      return;
+    }
+
+    try {
+      saveTimer.record(() -> attributesRepo.saveAll(offsets));
+    } catch (Exception e) {
+      log.error("Unable to save ESG data for " + offsets.size() + " nfts", e);
+      loaded.forEach(this::retry);
+      return;
+    }
+    offsets.forEach(facetIndex::add);
+    loaded.forEach(queue::remove);
+  }
+
+  private Set<Nft> findExisting(List<Nft> batch) {
+    var tokenIds = batch.stream().map(Nft::tokenId).collect(Collectors.toSet());
+    var serialNumbers = batch.stream().map(Nft::serialNumber).collect(Collectors.toSet());
+    // the IN lists match a superset of the batch, the nft set narrows it back down
+    var existing = new HashSet<Nft>();
+    attributesRepo.findByTokenIdInAndSerialNumberIn(tokenIds, serialNumbers)
+        .forEach(offset -> existing.add(new Nft(offset.getTokenId(), offset.getSerialNumber())));
+    return existing;
+  }
+
+  private void retry(Nft nft) {
+    failures.increment();
+    queue.unlock(nft); // try again on the next run
   }
 }
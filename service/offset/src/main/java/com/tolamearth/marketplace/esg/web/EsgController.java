@@ -19,28 +19,35 @@ package com.tolamearth.marketplace.esg.web;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tolamearth.marketplace.armm.ArmmService;
+import com.tolamearth.marketplace.armm.NftPrice;
 import com.tolamearth.marketplace.common.error.HemErrorCode;
 import com.tolamearth.marketplace.common.error.HemException;
+import com.tolamearth.marketplace.esg.EsgFacetIndex;
 import com.tolamearth.marketplace.esg.EsgLoadQueue;
+import com.tolamearth.marketplace.esg.EsgReadThrough;
 import com.tolamearth.marketplace.esg.SearchResponse;
 import com.tolamearth.marketplace.esg.db.EsgOffset;
 import com.tolamearth.marketplace.esg.db.EsgOffsetRepo;
 import com.tolamearth.marketplace.esg.db.EsgOffsetSearchRepo;
 import com.tolamearth.marketplace.esg.web.EsgResponse.EsgCredentialSubject;
 import com.tolamearth.marketplace.offset.Nft;
+import com.tolamearth.marketplace.offset.Offset;
 import com.tolamearth.marketplace.offset.db.OffsetRepo;
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.http.HttpStatus;
 import io.micronaut.http.annotation.*;
 
 import io.micronaut.scheduling.TaskExecutors;
 import io.micronaut.scheduling.annotation.ExecuteOn;
+import jakarta.inject.Named;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Controller("/hem/${hem.api.version}")
-@ExecuteOn(TaskExecutors.IO)
 public class EsgController {
 
   private static final Logger log = LoggerFactory.getLogger(EsgController.class);
@@ -51,42 +58,63 @@ public class EsgController {
   private final EsgLoadQueue queue;
   private final ObjectMapper objectMapper;
   private final EsgOffsetSearchRepo esgOffsetSearchRepo;
+  private final EsgFacetIndex facetIndex;
+  private final EsgReadThrough readThrough;
+  private final ExecutorService executor;
 
   public EsgController(OffsetRepo offsetRepo, ArmmService armmService,
       EsgOffsetRepo attributesRepo, EsgLoadQueue queue, ObjectMapper objectMapper,
-      EsgOffsetSearchRepo esgOffsetSearchRepo) {
+      EsgOffsetSearchRepo esgOffsetSearchRepo, EsgFacetIndex facetIndex,
+      EsgReadThrough readThrough, @Named(TaskExecutors.IO) ExecutorService executor) {
     this.offsetRepo = offsetRepo;
     this.armmService = armmService;
     this.attributesRepo = attributesRepo;
     this.queue = queue;
     this.objectMapper = objectMapper;
     this.esgOffsetSearchRepo = esgOffsetSearchRepo;
+    this.facetIndex = facetIndex;
+    this.readThrough = readThrough;
+    this.executor = executor;
   }
 
+  /**
+   * The ESG data, the ARMM prices and the offset are looked up at the same time. The database reads
+   * run on the IO executor, the ESG api and ARMM calls hold no thread while in flight.
+   */
   @Get("/esg")
-  EsgResponse load(@RequestBean EsgRequest request) {
-    var esgData = loadEsgData(request.getTokenId(), request.getSerialNumber());
-    if (esgData == null) {
-      throw new HemException(HemErrorCode.UNKNOWN_RESOURCE, new NullPointerException(
-          "Unable to find ESG details for token id: " + request.getTokenId()));
-    }
-    if (esgData.getAttributes() == null) {
-      esgData.setAttributes(List.of());
-    }
-    var armmData = armmService.getPrices(
-        List.of(new Nft(request.getTokenId(), request.getSerialNumber())));
-    if (armmData == null || armmData.isEmpty()) {
-      throw new HemException(HemErrorCode.UNKNOWN_RESOURCE,
-          new NullPointerException("Unable to fetch ARMM prices"));
-    }
-    var offset = offsetRepo.findByTokenIdAndSerialNumber(request.getTokenId(),
-        request.getSerialNumber());
+  CompletableFuture<EsgResponse> load(@RequestBean EsgRequest request) {
+    var nft = new Nft(request.getTokenId(), request.getSerialNumber());
+    var esgData = loadEsgData(nft);
+    var armmData = armmService.getPrices(List.of(nft));
+    var offset = CompletableFuture.supplyAsync(() -> offsetRepo.findByTokenIdAndSerialNumber(
+        request.getTokenId(), request.getSerialNumber()), executor);
+
+    // missing data is reported in the same order as when the lookups ran one after the other
+    return esgData.thenCompose(esg -> {
+      if (esg == null) {
+        throw new HemException(HemErrorCode.UNKNOWN_RESOURCE, new NullPointerException(
+            "Unable to find ESG details for token id: " + request.getTokenId()));
+      }
+      if (esg.getAttributes() == null) {
+        esg.setAttributes(List.of());
+      }
+      return armmData.thenCompose(armm -> {
+        if (armm == null || armm.isEmpty()) {
+          throw new HemException(HemErrorCode.UNKNOWN_RESOURCE,
+              new NullPointerException("Unable to fetch ARMM prices"));
+        }
+        return offset.thenApply(found -> toResponse(request, esg, armm.get(0), found));
+      });
+    });
+  }
+
+  private EsgResponse toResponse(EsgRequest request, EsgOffset esgData, NftPrice armmPrice,
+      Offset offset) {
     if (offset == null) {
       throw new HemException(HemErrorCode.UNKNOWN_RESOURCE, new NullPointerException(
           "Unable to load token information, does nft actually exist? token id: "
               + request.getTokenId()));
     }
-    var armmPrice = armmData.get(0);
     return new EsgResponse(request,
         offset.ownerId(),
         offset.price(),
@@ -121,20 +149,42 @@ public class EsgController {
 
   @Post("/simplesearch")
   @Status(HttpStatus.OK)
-  SearchResponse search(@Body Map<String, List<String>> parameters) {
-    return new SearchResponse(parameters, esgOffsetSearchRepo.findByParameters(parameters));
+  @ExecuteOn(TaskExecutors.IO)
+  SearchResponse search(@Body Map<String, List<String>> parameters,
+      @QueryValue @Nullable Integer limit,
+      @QueryValue @Nullable Integer offset,
+      @QueryValue @Nullable List<String> facets) {
+    if (limit != null && limit < 0) {
+      throw new HemException(HemErrorCode.INVALID_DATA,
+          new IllegalArgumentException("limit must not be negative"));
+    }
+    if (offset != null && offset < 0) {
+      throw new HemException(HemErrorCode.INVALID_DATA,
+          new IllegalArgumentException("offset must not be negative"));
+    }
+    var facetTitles = facets == null ? List.<String>of() : facets;
+    if (facetIndex.isReady()) {
+      return facetIndex.search(parameters, limit, offset, facetTitles);
+    }
+    if (facetTitles.isEmpty()) {
+      return new SearchResponse(parameters,
+          esgOffsetSearchRepo.findByParameters(parameters, limit, offset));
+    }
+    return esgOffsetSearchRepo.findWithFacetCounts(parameters, limit, offset, facetTitles);
   }
 
-  private EsgOffset loadEsgData(String tokenId, Long serialNumber) {
-    var attributes = attributesRepo.findByTokenIdAndSerialNumber(tokenId, serialNumber);
-
-    if (attributes == null) {
-      var nft = new Nft(tokenId, serialNumber);
-      if (!queue.contains(nft)) {
+  private CompletableFuture<EsgOffset> loadEsgData(Nft nft) {
+    return CompletableFuture.supplyAsync(() -> {
+      var attributes = attributesRepo.findByTokenIdAndSerialNumber(nft.tokenId(),
+          nft.serialNumber());
+      if (attributes == null && !queue.contains(nft)) {
         queue.add(nft);
       }
-    }
-    return attributes;
+      return attributes;
+    }, executor).thenCompose(attributes -> attributes != null
+        ? CompletableFuture.completedFuture(attributes)
+        // queued first so the load job still picks it up if the fetch fails or times out
+        : readThrough.fetch(nft));
   }
 }
 
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.mirrornode;
+
+import com.tolamearth.marketplace.mirrornode.MirrorNodeClient.MirrorNodeTokenResponse;
+import io.micronaut.core.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * One page of the nfts of an account. Pages are walked lazily by chaining futures: the page after
+ * this one is requested from links.next only when {@link #next()} is called, so a walk that stops
+ * early fetches nothing more.
+ */
+class AccountNftPages {
+
+  private final MirrorNodeClient client;
+  private final List<MirrorNodeNft> nfts;
+  @Nullable
+  private final String nextLink;
+
+  private AccountNftPages(MirrorNodeClient client, MirrorNodeTokenResponse response) {
+    this.client = client;
+    this.nfts = response.nfts() == null ? List.of() : response.nfts();
+    this.nextLink = nextLink(response);
+  }
+
+  /**
+   * @param response the page the walk starts from
+   * @return future of the first page
+   */
+  static CompletableFuture<AccountNftPages> first(MirrorNodeClient client,
+      CompletableFuture<MirrorNodeTokenResponse> response) {
+    return response.thenApply(page -> new AccountNftPages(client, page));
+  }
+
+  /**
+   * Maps the nfts of every page from {@code firstPage} on until the limit is reached. The next
+   * page is requested before the current one is mapped, and only when the current page cannot
+   * satisfy the limit, so no page is fetched that the caller will not read.
+   *
+   * @param limit the most nfts to map, or null to follow every page
+   * @return future of the mapped nfts in mirror node order
+   */
+  static <T> CompletableFuture<List<T>> collect(MirrorNodeClient client,
+      CompletableFuture<MirrorNodeTokenResponse> firstPage, @Nullable Integer limit,
+      Function<MirrorNodeNft, T> mapper) {
+    var remaining = limit == null ? Long.MAX_VALUE : limit;
+    return first(client, firstPage)
+        .thenCompose(page -> page.collect(remaining, mapper, new ArrayList<>()));
+  }
+
+  List<MirrorNodeNft> nfts() {
+    return nfts;
+  }
+
+  boolean hasNext() {
+    return nextLink != null;
+  }
+
+  /**
+   * Requests the page after this one
+   */
+  CompletableFuture<AccountNftPages> next() {
+    if (nextLink == null) {
+      throw new NoSuchElementException();
+    }
+    return client.getTokens(nextLink).thenApply(page -> new AccountNftPages(client, page));
+  }
+
+  private <T> CompletableFuture<List<T>> collect(long limit, Function<MirrorNodeNft, T> mapper,
+      List<T> collected) {
+    var following = hasNext() && limit - collected.size() > nfts.size() ? next() : null;
+    for (var nft : nfts) {
+      if (collected.size() == limit) {
+        break;
+      }
+      collected.add(mapper.apply(nft));
+    }
+    return following == null ? CompletableFuture.completedFuture(collected)
+        : following.thenCompose(page -> page.collect(limit, mapper, collected));
+  }
+
+  /**
+   * The mirror node answers with an absolute path including its /api/v1 prefix, which the client
+   * already adds from its configured path
+   */
+  private static String nextLink(MirrorNodeTokenResponse response) {
+    if (response.links() == null || !(response.links().get("next") instanceof String next)) {
+      return null;
+    }
+    int start = next.indexOf("/accounts/");
+    return start < 0 ? null : next.substring(start);
+  }
+}
@@ -20,8 +20,10 @@ import com.tolamearth.marketplace.common.HederaAccount;
 import com.tolamearth.marketplace.common.ListingOrder;
 import com.tolamearth.marketplace.offset.SimpleOffset;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface AccountService {
   Boolean isAccountValid(HederaAccount account);
-  List<SimpleOffset> fetchOffsets(HederaAccount account, String tokenId, Integer limit, ListingOrder order);
+  CompletableFuture<Boolean> isAccountValidAsync(HederaAccount account);
+  CompletableFuture<List<SimpleOffset>> fetchOffsets(HederaAccount account, String tokenId, Integer limit, ListingOrder order);
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.mirrornode;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.tolamearth.marketplace.common.HederaAccount;
+import com.tolamearth.marketplace.common.ListingOrder;
+import com.tolamearth.marketplace.common.util.FutureHelpers;
+import com.tolamearth.marketplace.offset.SimpleOffset;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micronaut.context.annotation.Primary;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the answers of {@link RestAccountService#isAccountValid}. Hedera accounts are not
+ * removed, so a valid account is kept for {@code hem.accounts.cache.ttl-seconds}, while an
+ * unknown account is only kept for {@code hem.accounts.cache.negative-ttl-seconds} because it may
+ * be created at any moment. Set {@code hem.accounts.cache.enabled} to false to ask the mirror node
+ * every time.
+ */
+@Primary
+@Singleton
+@Requires(property = "hem.accounts.cache.enabled", value = "true", defaultValue = "true")
+class CachingAccountService implements AccountService {
+
+  private final AccountService delegate;
+  private final AsyncCache<String, Boolean> validAccounts;
+
+  @Inject
+  public CachingAccountService(RestAccountService delegate, MeterRegistry meterRegistry,
+      @Value("${hem.accounts.cache.max-size:100000}") Long maxSize,
+      @Value("${hem.accounts.cache.ttl-seconds:86400}") Long ttlSeconds,
+      @Value("${hem.accounts.cache.negative-ttl-seconds:30}") Long negativeTtlSeconds) {
+    this(delegate, meterRegistry, maxSize, ttlSeconds, negativeTtlSeconds, Ticker.systemTicker());
+  }
+
+  CachingAccountService(AccountService delegate, MeterRegistry meterRegistry, Long maxSize,
+      Long ttlSeconds, Long negativeTtlSeconds, Ticker ticker) {
+    this.delegate = delegate;
+    var ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    var negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+    this.validAccounts = Caffeine.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfter(new Expiry<String, Boolean>() {
+          @Override
+          public long expireAfterCreate(String accountId, Boolean valid, long currentTime) {
+            return valid ? ttlNanos : negativeTtlNanos;
+          }
+
+          @Override
+          public long expireAfterUpdate(String accountId, Boolean valid, long currentTime,
+              long currentDuration) {
+            return expireAfterCreate(accountId, valid, currentTime);
+          }
+
+          @Override
+          public long expireAfterRead(String accountId, Boolean valid, long currentTime,
+              long currentDuration) {
+            return currentDuration;
+          }
+        })
+        .ticker(ticker)
+        // the delegate answers asynchronously, so there is nothing to hand to another thread
+        .executor(Runnable::run)
+        .recordStats()
+        .buildAsync();
+    CaffeineCacheMetrics.monitor(meterRegistry, validAccounts.synchronous(), "hem.accounts.valid");
+    Gauge.builder("hem.accounts.valid.hit.ratio", validAccounts.synchronous(),
+            cache -> cache.stats().hitRate())
+        .description("Share of account checks answered without calling the mirror node")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public Boolean isAccountValid(HederaAccount account) {
+    return FutureHelpers.join(isAccountValidAsync(account));
+  }
+
+  @Override
+  public CompletableFuture<Boolean> isAccountValidAsync(HederaAccount account) {
+    // concurrent lookups of the same account wait for one mirror node call
+    return validAccounts.get(account.getId(),
+        (accountId, executor) -> delegate.isAccountValidAsync(account));
+  }
+
+  @Override
+  public CompletableFuture<List<SimpleOffset>> fetchOffsets(HederaAccount account,
+      String tokenId, Integer limit, ListingOrder order) {
+    return delegate.fetchOffsets(account, tokenId, limit, order);
+  }
+}
@@ -25,20 +25,27 @@ import io.micronaut.http.annotation.QueryValue;
 import io.micronaut.http.client.annotation.Client;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Client("mirror-node")
 @Header(name = "Authorization", value = "${hem.lworks.api-key}")
 interface MirrorNodeClient {
 
     @Get("/accounts")
-    MirrorNodeAccountResponse getAccount(@QueryValue("account.id") String accountId);
+    CompletableFuture<MirrorNodeAccountResponse> getAccount(@QueryValue("account.id") String accountId);
 
     @Get("/accounts/{accountId}/nfts")
-    MirrorNodeTokenResponse getTokens(@PathVariable String accountId,
+    CompletableFuture<MirrorNodeTokenResponse> getTokens(@PathVariable String accountId,
                   @Nullable @QueryValue String order,
                   @Nullable @QueryValue Integer limit,
                   @Nullable @QueryValue("token.id") String tokenFilter);
 
+    /**
+     * Follows a links.next path of a previous page, relative to the configured /api/v1 path
+     */
+    @Get("{+nextLink}")
+    CompletableFuture<MirrorNodeTokenResponse> getTokens(@PathVariable String nextLink);
+
     record MirrorNodeTokenResponse(List<MirrorNodeNft> nfts, Map links){}
     record MirrorNodeAccountResponse(List<Map> accounts, Map links){};
 
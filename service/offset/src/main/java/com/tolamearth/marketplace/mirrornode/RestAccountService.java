@@ -18,14 +18,21 @@ package com.tolamearth.marketplace.mirrornode;
 
 import com.tolamearth.marketplace.common.HederaAccount;
 import com.tolamearth.marketplace.common.ListingOrder;
+import com.tolamearth.marketplace.common.util.FutureHelpers;
 import com.tolamearth.marketplace.offset.Nft;
 import com.tolamearth.marketplace.offset.SimpleOffset;
 import jakarta.inject.Singleton;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Singleton
 class RestAccountService implements AccountService {
 
+  /**
+   * The mirror node answers at most this many nfts per page
+   */
+  static final int MAX_PAGE_SIZE = 100;
+
   private final MirrorNodeClient mirrorNodeClient;
 
   public RestAccountService(MirrorNodeClient mirrorNodeClient) {
@@ -34,20 +41,27 @@ class RestAccountService implements AccountService {
 
   @Override
   public Boolean isAccountValid(HederaAccount account) {
-    return mirrorNodeClient.getAccount(account.getId()).accounts().size() > 0;
+    return FutureHelpers.join(isAccountValidAsync(account));
   }
 
   @Override
-  public List<SimpleOffset> fetchOffsets(HederaAccount account, String tokenFilter, Integer limit,
-      ListingOrder order) {
+  public CompletableFuture<Boolean> isAccountValidAsync(HederaAccount account) {
+    return mirrorNodeClient.getAccount(account.getId())
+        .thenApply(response -> response.accounts().size() > 0);
+  }
+
+  @Override
+  public CompletableFuture<List<SimpleOffset>> fetchOffsets(HederaAccount account,
+      String tokenFilter, Integer limit, ListingOrder order) {
     if (tokenFilter != null && !tokenFilter.startsWith("gt") && !tokenFilter.startsWith("lt")) { // TODO: validate that this guard statement is valid
       throw new IllegalArgumentException("tokenId is not valid filter");
     }
-    List<MirrorNodeNft> tokens = mirrorNodeClient.getTokens(account.getId(),
-            order.name().toLowerCase(), limit, tokenFilter)
-        .nfts();
-    return tokens.stream().map(token -> new SimpleOffset(token.accountId(), new Nft(token.tokenId(), token.serialNumber()),null )).toList();
-
+    var pageSize = limit == null ? MAX_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+    var firstPage = mirrorNodeClient.getTokens(account.getId(), order.name().toLowerCase(),
+        pageSize, tokenFilter);
+    return AccountNftPages.collect(mirrorNodeClient, firstPage, limit,
+        token -> new SimpleOffset(token.accountId(),
+            new Nft(token.tokenId(), token.serialNumber()), null));
   }
 
 }
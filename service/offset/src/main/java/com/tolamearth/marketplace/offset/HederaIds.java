@@ -0,0 +1,139 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset;
+
+/**
+ * Hand-written parsers for the Hedera transaction ids and consensus timestamps handled while
+ * publishing transactions. Both walk the characters once, without regular expressions or
+ * splitting.
+ */
+public final class HederaIds {
+
+  private static final String SCHEDULE = "?schedule";
+
+  private HederaIds() {
+  }
+
+  /**
+   * Consensus timestamp, seconds and nanoseconds since the epoch
+   */
+  public record ConsensusTime(long seconds, int nanos) {
+
+  }
+
+  /**
+   * Converts a transaction id to the form the mirror node rest api expects
+   *
+   * @param txnId Hedera TransactionID, formatted as
+   *              ({@literal <shard.realm.num@sss.nnn>[/nonce][?schedule]})
+   * @return the mirror node path segment, formatted as ({@literal <shard.realm.num-sss-nnn>})
+   * @throws IllegalArgumentException if the transaction id is not in that format
+   */
+  public static String toMirrorNodeTxnId(String txnId) {
+    int length = txnId.length();
+    int accountEnd = NftIdCodec.entityIdEnd(txnId, 0);
+    if (accountEnd < 0 || accountEnd == length || txnId.charAt(accountEnd) != '@') {
+      throw invalidTxnId(txnId);
+    }
+    int secondsStart = accountEnd + 1;
+    int secondsEnd = digitsEnd(txnId, secondsStart);
+    if (secondsEnd == secondsStart || secondsEnd == length || txnId.charAt(secondsEnd) != '.') {
+      throw invalidTxnId(txnId);
+    }
+    int nanosStart = secondsEnd + 1;
+    int nanosEnd = digitsEnd(txnId, nanosStart);
+    if (nanosEnd == nanosStart) {
+      throw invalidTxnId(txnId);
+    }
+
+    int i = nanosEnd;
+    // optional nonce, "/123"
+    if (i < length && txnId.charAt(i) == '/') {
+      int nonceEnd = digitsEnd(txnId, i + 1);
+      if (nonceEnd > i + 1) {
+        i = nonceEnd;
+      }
+    }
+    // optional schedule marker, "?schedule" or "/?schedule" in any case
+    if (i < length) {
+      int scheduleStart = txnId.charAt(i) == '/' ? i + 1 : i;
+      if (scheduleStart + SCHEDULE.length() == length && isSchedule(txnId, scheduleStart)) {
+        i = length;
+      }
+    }
+    if (i != length) {
+      throw invalidTxnId(txnId);
+    }
+
+    return new StringBuilder(nanosEnd)
+        .append(txnId, 0, accountEnd)
+        .append('-')
+        .append(txnId, secondsStart, secondsEnd)
+        .append('-')
+        .append(txnId, nanosStart, nanosEnd)
+        .toString();
+  }
+
+  /**
+   * @param timestamp consensus timestamp, formatted as ({@literal <seconds.nanos>})
+   * @return the parsed timestamp
+   * @throws IllegalArgumentException if the timestamp is not in that format
+   */
+  public static ConsensusTime parseConsensusTime(CharSequence timestamp) {
+    int dot = digitsEnd(timestamp, 0);
+    if (dot == timestamp.length() || timestamp.charAt(dot) != '.') {
+      throw invalidTimestamp(timestamp);
+    }
+    long seconds = NftIdCodec.parseNumber(timestamp, 0, dot);
+    long nanos = NftIdCodec.parseNumber(timestamp, dot + 1, timestamp.length());
+    if (seconds < 0 || nanos < 0 || nanos > 999_999_999) {
+      throw invalidTimestamp(timestamp);
+    }
+    return new ConsensusTime(seconds, (int) nanos);
+  }
+
+  /**
+   * ASCII-only case insensitive match, String.regionMatches would also accept letters such as the
+   * long s that only upper case to an ASCII letter
+   */
+  private static boolean isSchedule(String txnId, int from) {
+    for (int i = 0; i < SCHEDULE.length(); i++) {
+      char expected = SCHEDULE.charAt(i);
+      char actual = txnId.charAt(from + i);
+      if (actual != expected && !(expected >= 'a' && expected <= 'z' && actual == expected - 32)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int digitsEnd(CharSequence value, int from) {
+    int i = from;
+    while (i < value.length() && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+      i++;
+    }
+    return i;
+  }
+
+  private static IllegalArgumentException invalidTxnId(String txnId) {
+    return new IllegalArgumentException("Unexpected Hedera TransactionId: " + txnId);
+  }
+
+  private static IllegalArgumentException invalidTimestamp(CharSequence timestamp) {
+    return new IllegalArgumentException("Unexpected consensus timestamp: " + timestamp);
+  }
+}
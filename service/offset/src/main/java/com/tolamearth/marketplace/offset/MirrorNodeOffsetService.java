@@ -23,66 +23,118 @@ import com.tolamearth.marketplace.common.HederaAccount;
 import com.tolamearth.marketplace.common.ListingOrder;
 import com.tolamearth.marketplace.common.error.HemErrorCode;
 import com.tolamearth.marketplace.common.error.HemException;
+import com.tolamearth.marketplace.common.util.FutureHelpers;
 import com.tolamearth.marketplace.common.util.StreamHelpers;
 import com.tolamearth.marketplace.mirrornode.AccountService;
 import com.tolamearth.marketplace.offset.db.OffsetRepo;
 import com.tolamearth.marketplace.smartcontract.TransactionService;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.runtime.event.annotation.EventListener;
+import io.micronaut.scheduling.TaskExecutors;
+import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.StreamSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 @Singleton
 public class MirrorNodeOffsetService implements OffsetService {
 
+  private static final Logger log = LoggerFactory.getLogger(MirrorNodeOffsetService.class);
+
   private final AccountService accountService;
   private final OffsetRepo offsetRepo;
   private final TransactionService transactionService;
+  private final Integer streamPageSize;
+  private final boolean asyncReceipts;
+  private final ExecutorService executor;
 
   public MirrorNodeOffsetService(AccountService accountService,
-      OffsetRepo offsetRepo, TransactionService transactionService) {
+      OffsetRepo offsetRepo, TransactionService transactionService,
+      @Value("${hem.offsets.stream.page-size:500}") Integer streamPageSize,
+      @Value("${hem.contract.receipts.async:false}") boolean asyncReceipts,
+      @Named(TaskExecutors.IO) ExecutorService executor) {
     this.accountService = accountService;
     this.offsetRepo = offsetRepo;
     this.transactionService = transactionService;
+    this.streamPageSize = streamPageSize;
+    this.asyncReceipts = asyncReceipts;
+    this.executor = executor;
   }
 
   @Override
-  public List<ListingStateOffset> fetchOffsets(HederaAccount account, String tokenId, Integer limit,
-      ListingOrder order, ListingState state) {
+  public CompletableFuture<List<ListingStateOffset>> fetchOffsets(HederaAccount account,
+      String tokenId, Integer limit, ListingOrder order, ListingState state) {
 
-    if (!accountService.isAccountValid(account)) {
-      throw new HemException(HemErrorCode.UNKNOWN_RESOURCE);
-    }
+    // the mirror node calls hold no thread while in flight, only the listing query takes one from
+    // the IO executor
+    var accountValid = accountService.isAccountValidAsync(account);
+    var unlisted = state == LISTED ? null : fetchUnlisted(account, tokenId, limit, order);
+    var listed = state == UNLISTED ? null : CompletableFuture.supplyAsync(
+        () -> fetchListed(account, tokenId, limit, order), executor);
 
-    if (state == LISTED) {
-      return fetchListed(account, tokenId, limit, order);
-    } else if (state == UNLISTED) {
-      return fetchUnlisted(account, tokenId, limit, order);
-    }
-
-    var listed = fetchListed(account, tokenId, limit, order);
-    var unlisted = fetchUnlisted(account, tokenId, limit, order).stream()
-        .filter(offset -> listed.stream().noneMatch(listedOffset -> offset.offset().nft().tokenId().equals(listedOffset.offset().nft().tokenId()) && offset.offset().nft().serialNumber().equals(listedOffset.offset().nft().serialNumber()))).toList();
-    var combined = Stream.of(listed, unlisted)
-        .flatMap(Collection::stream)
-        .sorted();
-    if (order == ListingOrder.DESC) {
-      combined = StreamHelpers.reverse(combined);
-    }
-    return combined
-        .limit(limit)
-        .toList();
+    return accountValid.thenCompose(valid -> {
+      if (!Boolean.TRUE.equals(valid)) {
+        throw new HemException(HemErrorCode.UNKNOWN_RESOURCE);
+      }
+      if (state == LISTED) {
+        return listed;
+      } else if (state == UNLISTED) {
+        return unlisted;
+      }
+      return listed.thenCombine(unlisted, (left, right) -> merge(left, right, order, limit));
+    });
   }
 
-  private List<ListingStateOffset> fetchUnlisted(HederaAccount account, String tokenId,
-      Integer limit, ListingOrder order) {
-    List<SimpleOffset> offsets = accountService.fetchOffsets(account, tokenId, limit, order);
-    if (offsets == null || offsets.isEmpty()) {
-      return new ArrayList<>();
+  /**
+   * Merge-joins listed and unlisted offsets on (token id, serial number), dropping the unlisted copy
+   * of an nft that is also listed
+   */
+  static List<ListingStateOffset> merge(List<ListingStateOffset> listed,
+      List<ListingStateOffset> unlisted, ListingOrder order, int limit) {
+    Comparator<ListingStateOffset> comparator =
+        order == ListingOrder.DESC ? Comparator.reverseOrder() : Comparator.naturalOrder();
+    // the mirror node already returns its page in order, sorting it again is a single pass
+    var left = listed.stream().sorted(comparator).toList();
+    var right = unlisted.stream().sorted(comparator).toList();
+
+    var merged = new ArrayList<ListingStateOffset>(Math.min(limit, left.size() + right.size()));
+    int i = 0;
+    int j = 0;
+    while (merged.size() < limit && (i < left.size() || j < right.size())) {
+      if (j == right.size()) {
+        merged.add(left.get(i++));
+      } else if (i == left.size()) {
+        merged.add(right.get(j++));
+      } else {
+        int result = comparator.compare(left.get(i), right.get(j));
+        if (result <= 0) {
+          merged.add(left.get(i++));
+          if (result == 0) {
+            j++;
+          }
+        } else {
+          merged.add(right.get(j++));
+        }
+      }
     }
+    return merged;
+  }
 
-    return offsets.stream().map(offset -> new ListingStateOffset(UNLISTED, offset)).toList();
+  private CompletableFuture<List<ListingStateOffset>> fetchUnlisted(HederaAccount account,
+      String tokenId, Integer limit, ListingOrder order) {
+    return accountService.fetchOffsets(account, tokenId, limit, order).thenApply(offsets -> {
+      if (offsets == null || offsets.isEmpty()) {
+        return new ArrayList<>();
+      }
+      return offsets.stream().map(offset -> new ListingStateOffset(UNLISTED, offset)).toList();
+    });
   }
 
   private List<ListingStateOffset> fetchListed(HederaAccount account, String tokenId, Integer limit,
@@ -110,17 +162,27 @@ public class MirrorNodeOffsetService implements OffsetService {
   }
 
   @Override
-  public List<ListingStateOffset> fetchOffsets(String tokenId, Integer limit,
+  public List<ListingStateOffset> fetchOffsets(String tokenId, Long serialNumber, Integer limit,
       ListingOrder order, ListingState state) {
-    return offsetRepo.findAllByTransactionState(ListingTransactionState.LISTED).stream()
-        .map(offset -> new ListingStateOffset(LISTED,
-            new SimpleOffset(offset.ownerId(), offset.nft(), offset.price())))
+    return offsetRepo.findListedPage(ListingTransactionState.LISTED, tokenId, serialNumber, limit,
+            order).stream()
+        .map(offset -> new ListingStateOffset(LISTED, offset))
         .toList();
+  }
 
+  @Override
+  public Iterable<ListingStateOffset> streamOffsets(String tokenId, Long serialNumber,
+      ListingOrder order) {
+    var offsets = offsetRepo.streamListed(ListingTransactionState.LISTED, tokenId, serialNumber,
+        streamPageSize, order);
+    return () -> StreamSupport.stream(offsets.spliterator(), false)
+        .map(offset -> new ListingStateOffset(LISTED, offset))
+        .iterator();
   }
 
   @Override
-  public void list(String accountId, String transactionId, List<PricedNft> pricedNfts) {
+  public ListingTransactionState list(String accountId, String transactionId,
+      List<PricedNft> pricedNfts) {
     if (pricedNfts.stream()
         .map(PricedNft::withoutPrice)
         .map(offsetRepo::findByNft)
@@ -128,12 +190,14 @@ public class MirrorNodeOffsetService implements OffsetService {
       throw new HemException(HemErrorCode.ALREADY_IN_PROGRESS);
     }
     offsetRepo.addListing(accountId, transactionId, pricedNfts);
-    transactionService.allowList(accountId, transactionId, pricedNfts);
-    offsetRepo.approveListing(transactionId);
+    var call = transactionService.allowList(accountId, transactionId, pricedNfts);
+    offsetRepo.receiptPending(TransactionTypeCode.LIST, transactionId, call.transactionId());
+    return approveOnReceipt(TransactionTypeCode.LIST, transactionId, call.receipt());
   }
 
   @Override
-  public void purchase(String accountId, String transactionId, List<Nft> nfts) {
+  public ListingTransactionState purchase(String accountId, String transactionId,
+      List<Nft> nfts) {
     if (nfts.stream()
         .map(offsetRepo::findByNft)
         .anyMatch(it -> it.state() == UNLISTED)) {
@@ -143,8 +207,71 @@ public class MirrorNodeOffsetService implements OffsetService {
       throw new HemException(HemErrorCode.UNKNOWN_RESOURCE);
     }
     offsetRepo.updateListings(transactionId, nfts);// update the listing
-    transactionService.purchaseList(accountId, transactionId, nfts);// make the purchase
-    offsetRepo.updatePurchasedTransactionState(transactionId,
-        ListingTransactionState.APPROVED);// store the purchase transaction
+    var call = transactionService.purchaseList(accountId, transactionId, nfts);// make the purchase
+    offsetRepo.receiptPending(TransactionTypeCode.PURCHASE, transactionId, call.transactionId());
+    return approveOnReceipt(TransactionTypeCode.PURCHASE, transactionId, call.receipt());
+  }
+
+  /**
+   * Collects the receipts that were still pending when the service stopped, the contract
+   * transaction of every such listing or purchase is stored with it.
+   */
+  @EventListener
+  void onStartup(StartupEvent event) {
+    var pending = offsetRepo.findPendingReceipts();
+    if (!pending.isEmpty()) {
+      log.info("Resuming {} pending contract receipts", pending.size());
+    }
+    for (var receipt : pending) {
+      resolveReceipt(receipt.type(), receipt.transactionId(),
+          transactionService.receipt(receipt.contractTxnId()));
+    }
+  }
+
+  /**
+   * Approves the transaction once its contract call reached consensus. With async receipts the
+   * request returns right after precheck and the transaction stays CREATED until the receipt
+   * arrives, the stored contract transaction keeps it from expiring meanwhile. A failed one is
+   * left for the creation expiry to remove.
+   */
+  private ListingTransactionState approveOnReceipt(TransactionTypeCode type,
+      String transactionId, CompletableFuture<Void> receipt) {
+    if (asyncReceipts) {
+      resolveReceipt(type, transactionId, receipt);
+      return ListingTransactionState.CREATED;
+    }
+    try {
+      FutureHelpers.join(receipt);
+    } catch (RuntimeException e) {
+      offsetRepo.receiptFailed(type, transactionId);
+      throw e;
+    }
+    approve(type, transactionId);
+    return ListingTransactionState.APPROVED;
+  }
+
+  private void resolveReceipt(TransactionTypeCode type, String transactionId,
+      CompletableFuture<Void> receipt) {
+    receipt.handleAsync((ignored, e) -> {
+      if (e != null) {
+        log.warn("Contract call of transaction {} failed", transactionId, e);
+        offsetRepo.receiptFailed(type, transactionId);
+      } else {
+        approve(type, transactionId);
+      }
+      return null;
+    }, executor).exceptionally(e -> {
+      log.warn("Could not approve transaction {}", transactionId, e);
+      return null;
+    });
+  }
+
+  private void approve(TransactionTypeCode type, String transactionId) {
+    if (type == TransactionTypeCode.LIST) {
+      offsetRepo.approveListing(transactionId);
+    } else {
+      offsetRepo.updatePurchasedTransactionState(transactionId,
+          ListingTransactionState.APPROVED);
+    }
   }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset;
+
+/**
+ * Reads and writes the {@literal <shard.realm.num-serial>} nft ids used by ARMM. Parsing walks the
+ * characters once, without regular expressions or splitting into intermediate arrays. A Hedera
+ * checksum on the token id ({@literal <shard.realm.num-abcde-serial>}) is accepted and dropped, so
+ * the parsed nft equals the one that was requested.
+ */
+public final class NftIdCodec {
+
+  private static final int CHECKSUM_LENGTH = 5;
+
+  private NftIdCodec() {
+  }
+
+  public static String format(Nft nft) {
+    return format(nft.tokenId(), nft.serialNumber());
+  }
+
+  public static String format(String tokenId, long serialNumber) {
+    // 19 digits for the largest serial number plus the separator
+    return new StringBuilder(tokenId.length() + 20)
+        .append(tokenId)
+        .append('-')
+        .append(serialNumber)
+        .toString();
+  }
+
+  /**
+   * @param nftId nft id, formatted as {@literal <shard.realm.num[-checksum]-serial>}
+   * @return the parsed nft
+   * @throws IllegalArgumentException if the id is not in that format
+   */
+  public static Nft parse(CharSequence nftId) {
+    int tokenEnd = entityIdEnd(nftId, 0);
+    if (tokenEnd < 0 || tokenEnd == nftId.length() || nftId.charAt(tokenEnd) != '-') {
+      throw invalid(nftId);
+    }
+    int serialStart = tokenEnd + 1;
+    if (isChecksum(nftId, serialStart)) {
+      serialStart += CHECKSUM_LENGTH + 1;
+    }
+    long serialNumber = parseNumber(nftId, serialStart, nftId.length());
+    if (serialNumber < 0) {
+      throw invalid(nftId);
+    }
+    return new Nft(nftId.subSequence(0, tokenEnd).toString(), serialNumber);
+  }
+
+  /**
+   * Scans a {@literal <shard.realm.num>} entity id
+   *
+   * @param value text holding the entity id
+   * @param from  index the entity id starts at
+   * @return the index just past the entity id, -1 if there is no entity id at {@code from}
+   */
+  public static int entityIdEnd(CharSequence value, int from) {
+    int i = from;
+    for (int part = 0; part < 3; part++) {
+      if (part > 0) {
+        if (i == value.length() || value.charAt(i) != '.') {
+          return -1;
+        }
+        i++;
+      }
+      int start = i;
+      while (i < value.length() && isDigit(value.charAt(i))) {
+        i++;
+      }
+      if (i == start) {
+        return -1;
+      }
+    }
+    return i;
+  }
+
+  /**
+   * Parses the digits in {@code value} between {@code from} and {@code to}
+   *
+   * @return the number, -1 if the range is empty, holds anything but digits or overflows a long
+   */
+  public static long parseNumber(CharSequence value, int from, int to) {
+    if (from >= to) {
+      return -1;
+    }
+    long number = 0;
+    for (int i = from; i < to; i++) {
+      char c = value.charAt(i);
+      if (!isDigit(c)) {
+        return -1;
+      }
+      int digit = c - '0';
+      if (number > (Long.MAX_VALUE - digit) / 10) {
+        return -1;
+      }
+      number = number * 10 + digit;
+    }
+    return number;
+  }
+
+  /**
+   * @return whether a checksum followed by a '-' starts at {@code from}
+   */
+  private static boolean isChecksum(CharSequence value, int from) {
+    if (value.length() <= from + CHECKSUM_LENGTH || value.charAt(from + CHECKSUM_LENGTH) != '-') {
+      return false;
+    }
+    for (int i = from; i < from + CHECKSUM_LENGTH; i++) {
+      char c = value.charAt(i);
+      if (c < 'a' || c > 'z') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static IllegalArgumentException invalid(CharSequence nftId) {
+    return new IllegalArgumentException("Unexpected nft id: " + nftId);
+  }
+}
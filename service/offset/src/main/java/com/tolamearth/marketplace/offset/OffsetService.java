@@ -19,17 +19,22 @@ package com.tolamearth.marketplace.offset;
 import com.tolamearth.marketplace.common.HederaAccount;
 import com.tolamearth.marketplace.common.ListingOrder;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface OffsetService {
 
-  List<ListingStateOffset> fetchOffsets(HederaAccount account, String tokenId, Integer limit,
+  CompletableFuture<List<ListingStateOffset>> fetchOffsets(HederaAccount account, String tokenId,
+      Integer limit, ListingOrder order, ListingState state);
+
+  List<ListingStateOffset> fetchOffsets(String tokenId, Long serialNumber, Integer limit,
       ListingOrder order, ListingState state);
 
-  List<ListingStateOffset> fetchOffsets(String tokenId, Integer limit, ListingOrder order,
-      ListingState state);
+  Iterable<ListingStateOffset> streamOffsets(String tokenId, Long serialNumber,
+      ListingOrder order);
 
-    void list(String accountId, String transactionId, List<PricedNft> pricedNfts);
+    ListingTransactionState list(String accountId, String transactionId,
+        List<PricedNft> pricedNfts);
 
-    void purchase(String accountId, String transactionId, List<Nft> nfts);
+    ListingTransactionState purchase(String accountId, String transactionId, List<Nft> nfts);
 
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset.db;
+
+import com.tolamearth.marketplace.offset.ListingTransactionState;
+import io.micronaut.data.jdbc.runtime.JdbcOperations;
+import jakarta.inject.Singleton;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Set-based statements for removing expired listing and purchase transactions. Every statement
+ * selects the same oldest {@code batchSize} expired transactions of a state, so they are meant to
+ * run in one database transaction after the matching {@code lock} call. A transaction whose
+ * contract receipt is still pending expires at {@code receiptLastUpdateTime} instead, so it is not
+ * removed while its contract call may still succeed.
+ */
+@Singleton
+public class ExpiryRepo {
+
+  private static final String EXPIRED_LISTINGS = """
+      SELECT id FROM ListedTransactions \
+      WHERE listing_transaction_state = ? AND last_update_time < ? \
+      AND (contract_txn_id IS NULL OR last_update_time < ?) \
+      ORDER BY id LIMIT ?""";
+
+  private static final String EXPIRED_PURCHASES = """
+      SELECT id FROM PurchasedTransactions \
+      WHERE purchased_state = ? AND last_update_time < ? \
+      AND (contract_txn_id IS NULL OR last_update_time < ?) \
+      ORDER BY id LIMIT ?""";
+
+  private final JdbcOperations jdbc;
+
+  public ExpiryRepo(JdbcOperations jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /**
+   * Locks the expired listing transactions so they cannot change state until the transaction
+   * ends.
+   *
+   * @return the number of expired listing transactions, at most {@code batchSize}
+   */
+  public int lockExpiredListings(ListingTransactionState state, long lastUpdateTime,
+      long receiptLastUpdateTime, int batchSize) {
+    return count(EXPIRED_LISTINGS + " FOR UPDATE", state, lastUpdateTime, receiptLastUpdateTime,
+        batchSize);
+  }
+
+  public int deleteExpiredListings(ListingTransactionState state, long lastUpdateTime,
+      long receiptLastUpdateTime, int batchSize) {
+    return update("""
+        DELETE FROM ListedOffsets WHERE txn_id IN (SELECT transaction_id \
+        FROM ListedTransactions WHERE id IN (""" + EXPIRED_LISTINGS + "))",
+        state, lastUpdateTime, receiptLastUpdateTime, batchSize);
+  }
+
+  public int deleteExpiredListingTransactions(ListingTransactionState state,
+      long lastUpdateTime, long receiptLastUpdateTime, int batchSize) {
+    return update("DELETE FROM ListedTransactions WHERE id IN (" + EXPIRED_LISTINGS + ")",
+        state, lastUpdateTime, receiptLastUpdateTime, batchSize);
+  }
+
+  /**
+   * Locks the expired purchase transactions so they cannot change state until the transaction
+   * ends.
+   *
+   * @return the number of expired purchase transactions, at most {@code batchSize}
+   */
+  public int lockExpiredPurchases(ListingTransactionState state, long lastUpdateTime,
+      long receiptLastUpdateTime, int batchSize) {
+    return count(EXPIRED_PURCHASES + " FOR UPDATE", state, lastUpdateTime, receiptLastUpdateTime,
+        batchSize);
+  }
+
+  /**
+   * Puts the listings of expired purchases back on sale.
+   */
+  public int resetExpiredPurchases(ListingTransactionState state, long lastUpdateTime,
+      long receiptLastUpdateTime, int batchSize) {
+    return update("""
+        UPDATE ListedOffsets SET purchase_txn_id = NULL WHERE purchase_txn_id IN (SELECT txn_id \
+        FROM PurchasedTransactions WHERE id IN (""" + EXPIRED_PURCHASES + "))",
+        state, lastUpdateTime, receiptLastUpdateTime, batchSize);
+  }
+
+  public int deleteExpiredPurchaseTransactions(ListingTransactionState state,
+      long lastUpdateTime, long receiptLastUpdateTime, int batchSize) {
+    return update("DELETE FROM PurchasedTransactions WHERE id IN (" + EXPIRED_PURCHASES + ")",
+        state, lastUpdateTime, receiptLastUpdateTime, batchSize);
+  }
+
+  private int count(String query, ListingTransactionState state, long lastUpdateTime,
+      long receiptLastUpdateTime, int batchSize) {
+    return jdbc.prepareStatement(query, statement -> {
+      bind(statement, state, lastUpdateTime, receiptLastUpdateTime, batchSize);
+      try (var results = statement.executeQuery()) {
+        var count = 0;
+        while (results.next()) {
+          count++;
+        }
+        return count;
+      }
+    });
+  }
+
+  private int update(String query, ListingTransactionState state, long lastUpdateTime,
+      long receiptLastUpdateTime, int batchSize) {
+    return jdbc.prepareStatement(query, statement -> {
+      bind(statement, state, lastUpdateTime, receiptLastUpdateTime, batchSize);
+      return statement.executeUpdate();
+    });
+  }
+
+  private static void bind(PreparedStatement statement, ListingTransactionState state,
+      long lastUpdateTime, long receiptLastUpdateTime, int batchSize) throws SQLException {
+    statement.setString(1, state.name());
+    statement.setLong(2, lastUpdateTime);
+    statement.setLong(3, receiptLastUpdateTime);
+    statement.setInt(4, batchSize);
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset.db;
+
+import com.tolamearth.marketplace.common.ListingOrder;
+import com.tolamearth.marketplace.common.error.HemErrorCode;
+import com.tolamearth.marketplace.common.error.HemException;
+import com.tolamearth.marketplace.offset.ListingTransactionState;
+import com.tolamearth.marketplace.offset.NftIdCodec;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.data.jdbc.runtime.JdbcOperations;
+import jakarta.inject.Singleton;
+import java.util.List;
+import javax.transaction.Transactional;
+
+/**
+ * Keyset pagination over the current listings, ordered by token and serial number.
+ *
+ * <p>Tokens are ordered by their numeric shard, realm and num (0.0.9 before 0.0.10), the order
+ * of {@link com.tolamearth.marketplace.offset.SimpleOffset} and of the mirror node, using the
+ * token_shard, token_realm and token_num columns the database derives from token_id. The token
+ * filter follows the mirror node convention: {@code gt:<tokenId>} and {@code lt:<tokenId>} select
+ * the tokens after / before the given one, a bare token id (or {@code eq:<tokenId>}) selects that
+ * token only. When a serial number is given as well the cursor becomes the (token, serial) pair,
+ * so a page can end in the middle of a token and the next page picks up at the following serial.
+ * Every page is a single indexed range scan no matter how deep into the catalogue it is.
+ */
+@Singleton
+public class ListedOffsetPageRepo {
+
+  private final JdbcOperations jdbc;
+
+  public ListedOffsetPageRepo(JdbcOperations jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  @Transactional
+  public List<Listing> findPage(ListingTransactionState state, @Nullable String tokenFilter,
+      @Nullable Long serialNumber, int limit, ListingOrder order) {
+    return findPage(state, tokenFilter, serialNumber, null, limit, order);
+  }
+
+  /**
+   * Loads a page after the cursor that also stays within {@code boundFilter}, a token filter of
+   * the same format. Walking a {@code lt:} filter in ascending order (or {@code gt:} in
+   * descending order) continues each page with the opposite cursor, the original filter is kept
+   * as the bound so later pages do not run past it.
+   */
+  @Transactional
+  public List<Listing> findPage(ListingTransactionState state, @Nullable String tokenFilter,
+      @Nullable Long serialNumber, @Nullable String boundFilter, int limit, ListingOrder order) {
+    var cursor = Cursor.parse(tokenFilter, serialNumber, order);
+    var bound = Cursor.parse(boundFilter, null, order);
+    var query = buildQuery(cursor, bound, order);
+    return jdbc.prepareStatement(query, statement -> {
+      int index = 1;
+      statement.setString(index++, state.name());
+      for (var condition : new Cursor[] {cursor, bound}) {
+        if (condition != null) {
+          statement.setLong(index++, condition.shard());
+          statement.setLong(index++, condition.realm());
+          statement.setLong(index++, condition.num());
+          if (condition.serialNumber() != null) {
+            statement.setLong(index++, condition.serialNumber());
+          }
+        }
+      }
+      statement.setInt(index, limit);
+      return jdbc.entityStream(statement.executeQuery(), Listing.class).toList();
+    });
+  }
+
+  private static String buildQuery(@Nullable Cursor cursor, @Nullable Cursor bound,
+      ListingOrder order) {
+    var direction = order == ListingOrder.DESC ? "DESC" : "ASC";
+    var sbuf = new StringBuilder("""
+        SELECT l.* FROM ListedOffsets l \
+        WHERE l.purchase_txn_id IS NULL \
+        AND EXISTS (SELECT 1 FROM ListedTransactions t \
+        WHERE t.transaction_id = l.txn_id AND t.listing_transaction_state = ?)\
+        """);
+    appendCondition(sbuf, cursor);
+    appendCondition(sbuf, bound);
+    sbuf.append(" ORDER BY l.token_shard ").append(direction)
+        .append(", l.token_realm ").append(direction)
+        .append(", l.token_num ").append(direction)
+        .append(", l.serial_number ").append(direction)
+        .append(" LIMIT ?");
+    return sbuf.toString();
+  }
+
+  private static void appendCondition(StringBuilder sbuf, @Nullable Cursor cursor) {
+    if (cursor == null) {
+      return;
+    }
+    if (cursor.exact()) {
+      sbuf.append(" AND l.token_shard = ? AND l.token_realm = ? AND l.token_num = ?");
+      if (cursor.serialNumber() != null) {
+        sbuf.append(" AND l.serial_number ").append(cursor.operator()).append(" ?");
+      }
+    } else if (cursor.serialNumber() == null) {
+      sbuf.append(" AND (l.token_shard, l.token_realm, l.token_num) ")
+          .append(cursor.operator()).append(" (?, ?, ?)");
+    } else {
+      sbuf.append(" AND (l.token_shard, l.token_realm, l.token_num, l.serial_number) ")
+          .append(cursor.operator()).append(" (?, ?, ?, ?)");
+    }
+  }
+
+  /**
+   * @param shard    shard of the cursor token
+   * @param realm    realm of the cursor token
+   * @param num      num of the cursor token
+   * @param operator comparison applied to the serial number, and to the token unless exact
+   */
+  record Cursor(long shard, long realm, long num, @Nullable Long serialNumber, boolean exact,
+                String operator) {
+
+    @Nullable
+    static Cursor parse(@Nullable String tokenFilter, @Nullable Long serialNumber,
+        ListingOrder order) {
+      if (tokenFilter == null || tokenFilter.isBlank()) {
+        if (serialNumber != null) {
+          throw new HemException(HemErrorCode.INVALID_DATA, new IllegalArgumentException(
+              "serial number cursor requires a token id"));
+        }
+        return null;
+      }
+      var separator = tokenFilter.indexOf(':');
+      var prefix = separator < 0 ? "eq" : tokenFilter.substring(0, separator);
+      var token = parseToken(tokenFilter, separator + 1);
+      return switch (prefix) {
+        case "gt" -> new Cursor(token[0], token[1], token[2], serialNumber, false, ">");
+        case "lt" -> new Cursor(token[0], token[1], token[2], serialNumber, false, "<");
+        case "eq" -> new Cursor(token[0], token[1], token[2], serialNumber, true,
+            order == ListingOrder.DESC ? "<" : ">");
+        default -> throw invalidFilter(tokenFilter);
+      };
+    }
+
+    /**
+     * @return shard, realm and num of the {@literal <shard.realm.num>} token id at {@code from}
+     */
+    private static long[] parseToken(String tokenFilter, int from) {
+      if (NftIdCodec.entityIdEnd(tokenFilter, from) != tokenFilter.length()) {
+        throw invalidFilter(tokenFilter);
+      }
+      var parts = new long[3];
+      int start = from;
+      for (int part = 0; part < 3; part++) {
+        int end = part < 2 ? tokenFilter.indexOf('.', start) : tokenFilter.length();
+        parts[part] = NftIdCodec.parseNumber(tokenFilter, start, end);
+        if (parts[part] < 0) {
+          throw invalidFilter(tokenFilter);
+        }
+        start = end + 1;
+      }
+      return parts;
+    }
+
+    private static HemException invalidFilter(String tokenFilter) {
+      return new HemException(HemErrorCode.INVALID_DATA,
+          new IllegalArgumentException("tokenId is not valid filter: " + tokenFilter));
+    }
+  }
+}
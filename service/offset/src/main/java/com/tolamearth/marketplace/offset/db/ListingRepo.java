@@ -16,16 +16,16 @@
 
 package com.tolamearth.marketplace.offset.db;
 
-import io.micronaut.context.annotation.Executable;
+import io.micronaut.data.annotation.Query;
 import io.micronaut.data.jdbc.annotation.JdbcRepository;
-import io.micronaut.data.model.query.builder.sql.Dialect;
 import io.micronaut.data.repository.CrudRepository;
 import java.util.List;
 
-@JdbcRepository(dialect = Dialect.H2)
+@JdbcRepository
 public interface ListingRepo extends CrudRepository<Listing, Long> {
 
   List<Listing> findByAccountIdAndPurchaseTxnIdIsNull(String accountId);
+  List<Listing> findByPurchaseTxnIdIsNull();
   List<Listing> findByTokenIdIn(List<String> tokenIds);
   List<Listing> findByTokenIdAndSerialNumber(String tokenId, Long serialNumber);
   List<Listing> findByAccountIdAndTokenIdAndSerialNumber(String accountId, String tokenId, Long serialNumber);
@@ -33,6 +33,26 @@ public interface ListingRepo extends CrudRepository<Listing, Long> {
   List<Listing> findByPurchaseTxnId(String purchaseTxnId);
   List<Listing> findByTxnIdIn(List<String> txnIds);
   List<Listing> findByAccountIdAndTxnId(String accountId, String txnId);
-  @Executable
-  Integer deleteByTxnIdIn(List<String> transactionIds);
+
+  /**
+   * Loads every listing (current and historical) of the nfts that are part of a listing
+   * transaction in a single statement.
+   */
+  @Query("""
+      SELECT DISTINCT l.* FROM ListedOffsets t \
+      JOIN ListedOffsets l ON l.token_id = t.token_id AND l.serial_number = t.serial_number \
+      WHERE t.txn_id = :txnId \
+      ORDER BY l.id""")
+  List<Listing> findHistoryByTxnId(String txnId);
+
+  /**
+   * Loads every listing (current and historical) of the nfts that are part of a purchase
+   * transaction in a single statement.
+   */
+  @Query("""
+      SELECT DISTINCT l.* FROM ListedOffsets t \
+      JOIN ListedOffsets l ON l.token_id = t.token_id AND l.serial_number = t.serial_number \
+      WHERE t.purchase_txn_id = :purchaseTxnId \
+      ORDER BY l.id""")
+  List<Listing> findHistoryByPurchaseTxnId(String purchaseTxnId);
 }
\ No newline at end of file
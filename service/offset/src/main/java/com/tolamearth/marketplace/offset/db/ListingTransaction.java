@@ -18,6 +18,7 @@ package com.tolamearth.marketplace.offset.db;
 
 import com.tolamearth.marketplace.offset.ListingTransactionState;
 import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.data.annotation.GeneratedValue;
 import io.micronaut.data.annotation.Id;
 import io.micronaut.data.annotation.MappedEntity;
@@ -33,6 +34,7 @@ public class ListingTransaction {
   private ListingTransactionState listingTransactionState;
   private Long creationTime;
   private Long lastUpdateTime;
+  private String contractTxnId;
 
   public ListingTransaction(@NotEmpty String transactionId,
       @NonNull ListingTransactionState listingTransactionState, @NonNull Long creationTime,
@@ -85,6 +87,18 @@ public class ListingTransaction {
     this.lastUpdateTime = lastUpdateTime;
   }
 
+  /**
+   * Hedera id of the contract transaction whose receipt has not been resolved yet
+   */
+  @Nullable
+  public String getContractTxnId() {
+    return contractTxnId;
+  }
+
+  public void setContractTxnId(@Nullable String contractTxnId) {
+    this.contractTxnId = contractTxnId;
+  }
+
   @Override
   public String toString() {
     return listingTransactionState.toString();
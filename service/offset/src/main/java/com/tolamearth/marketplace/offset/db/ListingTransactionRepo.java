@@ -18,20 +18,20 @@ package com.tolamearth.marketplace.offset.db;
 
 import com.tolamearth.marketplace.offset.ListingTransactionState;
 import io.micronaut.data.jdbc.annotation.JdbcRepository;
-import io.micronaut.data.model.query.builder.sql.Dialect;
 import io.micronaut.data.repository.CrudRepository;
+import java.util.Collection;
 import java.util.List;
 
-@JdbcRepository(dialect = Dialect.H2)
+@JdbcRepository
 public interface ListingTransactionRepo extends CrudRepository<ListingTransaction, Long> {
 
-  List<String> findTransactionIdByListingTransactionStateAndLastUpdateTimeLessThan(ListingTransactionState listingTransactionState, Long lastUpdateTime);
   Integer deleteByListingTransactionStateAndLastUpdateTimeLessThan(
       ListingTransactionState listedTransactionState, Long lastUpdateTime);
-  Integer deleteByTransactionIdIn(List<String> transactionIds);
 
   List<ListingTransaction> findByListingTransactionStateAndLastUpdateTimeLessThan(ListingTransactionState listingTransactionState, long lastUpdateTime);
   List<ListingTransaction> findByListingTransactionState(ListingTransactionState listingTransactionState);
+  List<ListingTransaction> findByListingTransactionStateAndContractTxnIdIsNotNull(ListingTransactionState listingTransactionState);
   Integer updateById(Long id, ListingTransactionState listingTransactionState);
   ListingTransaction getByTransactionId(String transactionId);
+  List<ListingTransaction> findByTransactionIdIn(Collection<String> transactionIds);
 }
@@ -18,8 +18,10 @@ package com.tolamearth.marketplace.offset.db;
 
 import static com.tolamearth.marketplace.offset.ListingState.LISTED;
 
+import com.tolamearth.marketplace.common.ListingOrder;
 import com.tolamearth.marketplace.common.error.HemErrorCode;
 import com.tolamearth.marketplace.common.error.HemException;
+import com.tolamearth.marketplace.esg.EsgFacetIndex;
 import com.tolamearth.marketplace.mirrornode.TokenClient;
 import com.tolamearth.marketplace.offset.ListingState;
 import com.tolamearth.marketplace.offset.ListingTransactionState;
@@ -27,10 +29,21 @@ import com.tolamearth.marketplace.offset.Nft;
 import com.tolamearth.marketplace.offset.Offset;
 import com.tolamearth.marketplace.offset.OffsetListing;
 import com.tolamearth.marketplace.offset.PricedNft;
+import com.tolamearth.marketplace.offset.SimpleOffset;
+import com.tolamearth.marketplace.offset.TransactionTypeCode;
+import com.tolamearth.marketplace.offset.job.ExpiryScheduler;
+import io.micronaut.core.annotation.Nullable;
 import jakarta.inject.Singleton;
 import java.time.Clock;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Singleton
 public class OffsetRepo {
@@ -38,17 +51,24 @@ public class OffsetRepo {
   private final ListingTransactionRepo listingTransactionRepo;
   private final PurchasedTransactionRepo purchasedTransactionRepo;
   private final ListingRepo listingRepo;
+  private final ListedOffsetPageRepo listedOffsetPageRepo;
   private final TokenClient tokenClient;
+  private final EsgFacetIndex facetIndex;
+  private final ExpiryScheduler expiryScheduler;
   private final Clock clock;
 
   public OffsetRepo(ListingTransactionRepo listingTransactionRepo,
       PurchasedTransactionRepo purchasedTransactionRepo,
-      ListingRepo listingRepo, TokenClient tokenClient, Clock clock) {
+      ListingRepo listingRepo, ListedOffsetPageRepo listedOffsetPageRepo, TokenClient tokenClient,
+      EsgFacetIndex facetIndex, ExpiryScheduler expiryScheduler, Clock clock) {
 
     this.listingTransactionRepo = listingTransactionRepo;
     this.purchasedTransactionRepo = purchasedTransactionRepo;
     this.listingRepo = listingRepo;
+    this.listedOffsetPageRepo = listedOffsetPageRepo;
     this.tokenClient = tokenClient;
+    this.facetIndex = facetIndex;
+    this.expiryScheduler = expiryScheduler;
     this.clock = clock;
   }
 
@@ -57,19 +77,24 @@ public class OffsetRepo {
   }
 
   public List<Offset> findAllByListingTransactionId(String transactionId, boolean currentOnly) {
-    var listings = listingRepo.findByTxnId(transactionId); // maybe change this to a projection
-    return listings.stream().filter(listing -> listing.getPurchaseTxnId() == null || !currentOnly)
-        .map(
-            listing -> findByTokenIdAndSerialNumber(listing.getTokenId(), listing.getSerialNumber())
-        ).toList();
+    var history = listingRepo.findHistoryByTxnId(transactionId);
+    var nfts = history.stream()
+        .filter(listing -> listing.getTxnId().equals(transactionId))
+        .filter(listing -> listing.getPurchaseTxnId() == null || !currentOnly)
+        .map(OffsetRepo::toNft)
+        .distinct()
+        .toList();
+    return assembleOffsets(nfts, history);
   }
 
   public List<Offset> findAllByPurchaseTransactionId(String transactionId) {
-    var listings = listingRepo.findByPurchaseTxnId(transactionId);
-    return listings.stream()
-        .map(
-            listing -> findByTokenIdAndSerialNumber(listing.getTokenId(), listing.getSerialNumber())
-        ).toList();
+    var history = listingRepo.findHistoryByPurchaseTxnId(transactionId);
+    var nfts = history.stream()
+        .filter(listing -> transactionId.equals(listing.getPurchaseTxnId()))
+        .map(OffsetRepo::toNft)
+        .distinct()
+        .toList();
+    return assembleOffsets(nfts, history);
   }
 
   public Offset findByNft(Nft nft) {
@@ -78,59 +103,164 @@ public class OffsetRepo {
 
   public Offset findByTokenIdAndSerialNumber(String tokenId, Long serialNumber) {
     var listings = listingRepo.findByTokenIdAndSerialNumber(tokenId, serialNumber);
+    return buildOffset(new Nft(tokenId, serialNumber), listings, this::mapListingData);
+  }
+
+  /*
+  Builds the offsets for the given nfts out of an already loaded listing history, fetching the
+  ListedTransactions rows of the whole history in one statement instead of one per listing.
+   */
+  private List<Offset> assembleOffsets(List<Nft> nfts, List<Listing> history) {
+    if (nfts.isEmpty()) {
+      return List.of();
+    }
+    var transactions = loadTransactions(history);
+    Map<Nft, List<Listing>> listingsByNft = history.stream()
+        .collect(Collectors.groupingBy(OffsetRepo::toNft));
+    return nfts.stream()
+        .map(nft -> buildOffset(nft, listingsByNft.getOrDefault(nft, List.of()),
+            listing -> mapListingData(listing, transactions.get(listing.getTxnId()))))
+        .toList();
+  }
+
+  private Offset buildOffset(Nft nft, List<Listing> listings,
+      Function<Listing, OffsetListing> listingMapper) {
     var possibleCurrentListing = listings.stream().filter(it -> it.getPurchaseTxnId() == null)
         .findFirst();
     if (possibleCurrentListing.isPresent()) {
       var currentListing = possibleCurrentListing.get();
 
-      return new Offset(currentListing.getAccountId(), new Nft(tokenId, serialNumber),
+      return new Offset(currentListing.getAccountId(), nft,
           currentListing.getRetailPrice(), ListingState.LISTED,
-          listings.stream().map(this::mapListingData).toList()
+          listings.stream().map(listingMapper).toList()
       );
     } else { // no active listing
-      var tokenNft = tokenClient.getNft(tokenId, serialNumber);
+      var tokenNft = tokenClient.getNft(nft.tokenId(), nft.serialNumber());
       if(tokenNft == null){
         throw new HemException(HemErrorCode.UNKNOWN_RESOURCE);
       }
       return new Offset(tokenNft.accountId(),
-          new Nft(tokenId, serialNumber),
+          nft,
           null,
           ListingState.UNLISTED,
-          listings.stream().map(this::mapListingData).toList()
+          listings.stream().map(listingMapper).toList()
       );
     }
   }
 
+  private Map<String, ListingTransaction> loadTransactions(List<Listing> listings) {
+    Map<String, ListingTransaction> transactions = new HashMap<>();
+    if (listings.isEmpty()) {
+      return transactions;
+    }
+    var transactionIds = listings.stream().map(Listing::getTxnId).collect(Collectors.toSet());
+    listingTransactionRepo.findByTransactionIdIn(transactionIds)
+        .forEach(transaction -> transactions.putIfAbsent(transaction.getTransactionId(), transaction));
+    return transactions;
+  }
+
+  private static Nft toNft(Listing listing) {
+    return new Nft(listing.getTokenId(), listing.getSerialNumber());
+  }
+
   public List<Offset> findCurrentlyListedByOwnerId(String ownerId) {
     var listings = listingRepo.findByAccountIdAndPurchaseTxnIdIsNull(ownerId);
+    var transactions = loadTransactions(listings);
     return listings.stream().sorted(Comparator.comparing(Listing::getTokenId))
         .map(listing -> new Offset(listing.getAccountId(),
             new Nft(listing.getTokenId(), listing.getSerialNumber()),
             listing.getRetailPrice(),
             LISTED,
-            List.of(mapListingData(listing)))
+            List.of(mapListingData(listing, transactions.get(listing.getTxnId()))))
         ).toList();
   }
 
   public List<Offset> findAllByTransactionState(ListingTransactionState state) {
-    List<String> transactionIds = listingTransactionRepo
-        .findByListingTransactionState(state).stream()
-        .map(ListingTransaction::getTransactionId)
-        .toList();
+    Map<String, ListingTransaction> transactions = new HashMap<>();
+    listingTransactionRepo.findByListingTransactionState(state)
+        .forEach(transaction -> transactions.putIfAbsent(transaction.getTransactionId(), transaction));
+    if (transactions.isEmpty()) {
+      return List.of();
+    }
 
-    return listingRepo.findByTxnIdIn(transactionIds).stream()
+    return listingRepo.findByTxnIdIn(List.copyOf(transactions.keySet())).stream()
         .filter(listing -> listing.getPurchaseTxnId() == null)
         .map(listing -> new Offset(listing.getAccountId(),
                 new Nft(listing.getTokenId(), listing.getSerialNumber()),
                 listing.getRetailPrice(),
                 LISTED,
-                List.of(mapListingData(listing))
+                List.of(mapListingData(listing, transactions.get(listing.getTxnId())))
             )
         ).toList();
   }
 
+  /**
+   * Loads one page of the current listings whose listing transaction is in the given state, see
+   * {@link ListedOffsetPageRepo} for the cursor format.
+   */
+  public List<SimpleOffset> findListedPage(ListingTransactionState state,
+      @Nullable String tokenFilter, @Nullable Long serialNumber, int limit, ListingOrder order) {
+    return toSimpleOffsets(
+        listedOffsetPageRepo.findPage(state, tokenFilter, serialNumber, limit, order));
+  }
+
+  /**
+   * Lazily walks the current listings page by page, starting after the given cursor. Only one
+   * page is held in memory at a time. A bare or {@code eq:} filter walks that token only, a
+   * {@code gt:} or {@code lt:} filter is honoured whichever way the walk is ordered.
+   */
+  public Iterable<SimpleOffset> streamListed(ListingTransactionState state,
+      @Nullable String tokenFilter, @Nullable Long serialNumber, int pageSize,
+      ListingOrder order) {
+    var filtered = tokenFilter != null && !tokenFilter.isBlank();
+    var exact = filtered && !tokenFilter.startsWith(order.nextPrefix())
+        && !tokenFilter.startsWith(order.previousPrefix());
+    // a filter against the order is not implied by the next cursor, so every page keeps it
+    var bound = filtered && tokenFilter.startsWith(order.previousPrefix()) ? tokenFilter : null;
+    return () -> new Iterator<>() {
+      private List<SimpleOffset> page = findStreamPage(state, tokenFilter, serialNumber, bound,
+          pageSize, order);
+      private int index;
+
+      @Override
+      public boolean hasNext() {
+        if (index == page.size() && page.size() == pageSize) {
+          var last = page.get(page.size() - 1).nft();
+          var cursor = (exact ? "eq:" : order.nextPrefix()) + last.tokenId();
+          page = findStreamPage(state, cursor, last.serialNumber(), bound, pageSize, order);
+          index = 0;
+        }
+        return index < page.size();
+      }
+
+      @Override
+      public SimpleOffset next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return page.get(index++);
+      }
+    };
+  }
+
+  private List<SimpleOffset> findStreamPage(ListingTransactionState state, String tokenFilter,
+      @Nullable Long serialNumber, @Nullable String bound, int pageSize, ListingOrder order) {
+    return toSimpleOffsets(
+        listedOffsetPageRepo.findPage(state, tokenFilter, serialNumber, bound, pageSize, order));
+  }
+
+  private static List<SimpleOffset> toSimpleOffsets(List<Listing> listings) {
+    return listings.stream()
+        .map(listing -> new SimpleOffset(listing.getAccountId(), toNft(listing),
+            listing.getRetailPrice()))
+        .toList();
+  }
+
   private OffsetListing mapListingData(Listing listing) {
-    var listTransaction = listingTransactionRepo.getByTransactionId(listing.getTxnId());
+    return mapListingData(listing, listingTransactionRepo.getByTransactionId(listing.getTxnId()));
+  }
+
+  private OffsetListing mapListingData(Listing listing, ListingTransaction listTransaction) {
     return new OffsetListing(listing.getId(), listing.getTokenId(), listing.getSerialNumber(),
         listing.getAccountId(), listing.getTxnId(),
         listing.getRetailPrice(), listing.getRetailPriceTimestamp(), listing.getPurchaseTxnId(),
@@ -143,11 +273,15 @@ public class OffsetRepo {
     for (PricedNft pricedNft : pricedNfts) {
       listingRepo.save(new Listing(pricedNft.tokenId(), pricedNft.serialNumber(), accountId,
           transactionId, pricedNft.price(), now, null));
+      facetIndex.listed(new Nft(pricedNft.tokenId(), pricedNft.serialNumber()), accountId,
+          pricedNft.price());
     }
     var listingTransactionDto = new ListingTransaction(
         transactionId, ListingTransactionState.CREATED, now, now);
 
     listingTransactionRepo.save(listingTransactionDto);
+    expiryScheduler.scheduled(TransactionTypeCode.LIST, transactionId,
+        ListingTransactionState.CREATED, now);
   }
 
   public void updateListings(String transactionId, List<Nft> nfts) {
@@ -160,6 +294,7 @@ public class OffsetRepo {
           .ifPresent(listing -> {
             listing.setPurchaseTxnId(transactionId);
             listingRepo.update(listing);
+            facetIndex.unlisted(nft);
           });
     });
 
@@ -168,25 +303,104 @@ public class OffsetRepo {
     purchasedTransactionRepo.save(
         new PurchasedTransaction(transactionId, "XXXXXXX", ListingTransactionState.CREATED, now,
             now));
+    expiryScheduler.scheduled(TransactionTypeCode.PURCHASE, transactionId,
+        ListingTransactionState.CREATED, now);
   }
 
   public void updatePurchasedTransactionState(String transactionId,
       ListingTransactionState listingTransactionState) {
     PurchasedTransaction purchasedTransaction = purchasedTransactionRepo.getByTxnId(transactionId);
     purchasedTransaction.setPurchasedState(listingTransactionState);
+    purchasedTransaction.setContractTxnId(null);
     purchasedTransaction.setLastUpdateTime(clock.millis());
     purchasedTransactionRepo.update(purchasedTransaction);
+    expiryScheduler.scheduled(TransactionTypeCode.PURCHASE, transactionId,
+        listingTransactionState, purchasedTransaction.getLastUpdateTime());
   }
 
   public List<OffsetListing> findListingByTokenIdIn(List<String> tokenIds) {
-    return listingRepo.findByTokenIdIn(tokenIds).stream().map(this::mapListingData).toList();
+    var listings = listingRepo.findByTokenIdIn(tokenIds);
+    var transactions = loadTransactions(listings);
+    return listings.stream()
+        .map(listing -> mapListingData(listing, transactions.get(listing.getTxnId())))
+        .toList();
   }
 
   public void approveListing(String transactionId) {
     var entity = listingTransactionRepo.getByTransactionId(transactionId);
     entity.setListingTransactionState(ListingTransactionState.APPROVED);
+    entity.setContractTxnId(null);
     entity.setLastUpdateTime(clock.millis());
     listingTransactionRepo.update(entity);
+    expiryScheduler.scheduled(TransactionTypeCode.LIST, transactionId,
+        ListingTransactionState.APPROVED, entity.getLastUpdateTime());
+  }
+
+  /**
+   * Records the contract transaction submitted for a listing or purchase, which keeps it from
+   * expiring until the receipt is resolved or {@code hem.txn.timeout.receipt} passed.
+   */
+  public void receiptPending(TransactionTypeCode type, String transactionId,
+      String contractTxnId) {
+    setContractTxnId(type, transactionId, contractTxnId);
+  }
+
+  /**
+   * Clears the contract transaction of a listing or purchase whose receipt did not succeed, it then
+   * expires like any other CREATED transaction.
+   */
+  public void receiptFailed(TransactionTypeCode type, String transactionId) {
+    setContractTxnId(type, transactionId, null);
+  }
+
+  /**
+   * @return the CREATED listings and purchases whose contract receipt has not been resolved
+   */
+  public List<PendingReceipt> findPendingReceipts() {
+    var listings = listingTransactionRepo
+        .findByListingTransactionStateAndContractTxnIdIsNotNull(ListingTransactionState.CREATED)
+        .stream()
+        .map(transaction -> new PendingReceipt(TransactionTypeCode.LIST,
+            transaction.getTransactionId(), transaction.getContractTxnId()));
+    var purchases = purchasedTransactionRepo
+        .findByPurchasedStateAndContractTxnIdIsNotNull(ListingTransactionState.CREATED)
+        .stream()
+        .map(transaction -> new PendingReceipt(TransactionTypeCode.PURCHASE,
+            transaction.getTxnId(), transaction.getContractTxnId()));
+    return Stream.concat(listings, purchases).toList();
+  }
+
+  private void setContractTxnId(TransactionTypeCode type, String transactionId,
+      @Nullable String contractTxnId) {
+    long lastUpdateTime;
+    if (type == TransactionTypeCode.LIST) {
+      var entity = listingTransactionRepo.getByTransactionId(transactionId);
+      if (entity == null) {
+        return;
+      }
+      entity.setContractTxnId(contractTxnId);
+      listingTransactionRepo.update(entity);
+      lastUpdateTime = entity.getLastUpdateTime();
+    } else {
+      var entity = purchasedTransactionRepo.getByTxnId(transactionId);
+      if (entity == null) {
+        return;
+      }
+      entity.setContractTxnId(contractTxnId);
+      purchasedTransactionRepo.update(entity);
+      lastUpdateTime = entity.getLastUpdateTime();
+    }
+    expiryScheduler.scheduled(type, transactionId, ListingTransactionState.CREATED,
+        lastUpdateTime, contractTxnId != null);
+  }
+
+  /**
+   * @param contractTxnId Hedera id of the contract transaction submitted for the listing or
+   *                      purchase
+   */
+  public record PendingReceipt(TransactionTypeCode type, String transactionId,
+                               String contractTxnId) {
+
   }
 
 }
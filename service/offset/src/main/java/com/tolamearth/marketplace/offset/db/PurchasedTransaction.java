@@ -18,6 +18,7 @@ package com.tolamearth.marketplace.offset.db;
 
 import com.tolamearth.marketplace.offset.ListingTransactionState;
 import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.data.annotation.GeneratedValue;
 import io.micronaut.data.annotation.Id;
 import io.micronaut.data.annotation.MappedEntity;
@@ -35,6 +36,7 @@ public class PurchasedTransaction {
     private ListingTransactionState purchasedState;
     private Long creationTime;
     private Long lastUpdateTime;
+    private String contractTxnId;
 
     public PurchasedTransaction(@NotEmpty String txnId,
                               @NotEmpty String wlTxnId,
@@ -94,6 +96,18 @@ public class PurchasedTransaction {
         this.lastUpdateTime = lastUpdateTime;
     }
 
+    /**
+     * Hedera id of the contract transaction whose receipt has not been resolved yet
+     */
+    @Nullable
+    public String getContractTxnId() {
+        return contractTxnId;
+    }
+
+    public void setContractTxnId(@Nullable String contractTxnId) {
+        this.contractTxnId = contractTxnId;
+    }
+
     @Override
     public String toString() {
         return purchasedState.toString();
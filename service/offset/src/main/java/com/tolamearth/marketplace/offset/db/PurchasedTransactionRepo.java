@@ -18,17 +18,15 @@ package com.tolamearth.marketplace.offset.db;
 
 import com.tolamearth.marketplace.offset.ListingTransactionState;
 import io.micronaut.data.jdbc.annotation.JdbcRepository;
-import io.micronaut.data.model.query.builder.sql.Dialect;
 import io.micronaut.data.repository.CrudRepository;
 import java.util.List;
 
-@JdbcRepository(dialect = Dialect.H2)
+@JdbcRepository
 public interface PurchasedTransactionRepo extends CrudRepository<PurchasedTransaction, Long> {
-  List<String> findTxnIdByPurchasedStateAndLastUpdateTimeLessThan(
-      ListingTransactionState purchasedState, Long lastUpdateTime);
-  Integer deleteByTxnIdIn(List<String> txnIds);
   List<PurchasedTransaction> findByPurchasedStateAndLastUpdateTimeLessThan(ListingTransactionState purchasedState, long lastUpdateTime);
 
   Integer updateById(Long id, ListingTransactionState purchasedState);
   PurchasedTransaction getByTxnId(String transactionId);
+  List<PurchasedTransaction> findByPurchasedState(ListingTransactionState purchasedState);
+  List<PurchasedTransaction> findByPurchasedStateAndContractTxnIdIsNotNull(ListingTransactionState purchasedState);
 }
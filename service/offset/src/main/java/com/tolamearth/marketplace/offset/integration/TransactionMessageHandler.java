@@ -22,6 +22,7 @@ import com.tolamearth.integration.marketplace.MarketplaceEvent.EventType;
 import com.tolamearth.integration.marketplace.MarketplaceEvent.NftId;
 import com.tolamearth.integration.marketplace.MarketplaceEvent.Transaction;
 import com.tolamearth.marketplace.mirrornode.TransactionClient;
+import com.tolamearth.marketplace.offset.HederaIds;
 import com.tolamearth.marketplace.offset.Offset;
 import com.tolamearth.marketplace.offset.TransactionTypeCode;
 import com.tolamearth.marketplace.offset.db.OffsetRepo;
@@ -72,20 +73,29 @@ public class TransactionMessageHandler {
   }
 
   private List<Transaction> buildListTransaction(PendingTransaction transaction) {
-
-    return offsetRepo.findAllByListingTransactionId(transaction.getTxnId()).stream()
+    var offsets = offsetRepo.findAllByListingTransactionId(transaction.getTxnId());
+    if (offsets.isEmpty()) {
+      return List.of();
+    }
+    var transactionTime = buildTimestamp(transaction);
+    return offsets.stream()
         .map(offset -> Transaction.newBuilder()
             .setNftId(buildNftId(offset))
             .setOwner(offset.ownerId())
             .setListPrice(offset.price())
             .setTransactionId(transaction.getTxnId())
-            .setTransactionTime(buildTimestamp(transaction.getMirrorNodeTxnId()))
+            .setTransactionTime(transactionTime)
             .build())
         .toList();
   }
 
   private List<Transaction> buildPurchaseTransaction(PendingTransaction transaction) {
-    return offsetRepo.findAllByPurchaseTransactionId(transaction.getTxnId()).stream()
+    var offsets = offsetRepo.findAllByPurchaseTransactionId(transaction.getTxnId());
+    if (offsets.isEmpty()) {
+      return List.of();
+    }
+    var transactionTime = buildTimestamp(transaction);
+    return offsets.stream()
         .map(offset -> {
           var listing = offset.listings().stream()
               .filter(it -> it.purchaseTxnId().equals(transaction.getTxnId()))
@@ -97,7 +107,7 @@ public class TransactionMessageHandler {
               .setListPrice(listing.retailPrice())
               .setPurchasePrice(listing.retailPrice())
               .setTransactionId(transaction.getTxnId())
-              .setTransactionTime(buildTimestamp(transaction.getMirrorNodeTxnId()))
+              .setTransactionTime(transactionTime)
               .build();
         })
         .toList();
@@ -110,13 +120,20 @@ public class TransactionMessageHandler {
         .build();
   }
 
-  private Timestamp buildTimestamp(String mirrorNodeTxnId) {
-    var hederaTxn = transactionClient.getTransaction(mirrorNodeTxnId)
-        .transactions().get(0);
-    var timestamp = (String) hederaTxn.get("consensus_timestamp");
+  /*
+  Uses the consensus timestamp recorded during validation, only falling back to the mirror node
+  for transactions that did not pass through the validator.
+   */
+  private Timestamp buildTimestamp(PendingTransaction transaction) {
+    var consensusTime = transaction.getConsensusTime();
+    if (consensusTime == null) {
+      var hederaTxn = transactionClient.getTransaction(transaction.getMirrorNodeTxnId())
+          .transactions().get(0);
+      consensusTime = HederaIds.parseConsensusTime((String) hederaTxn.get("consensus_timestamp"));
+    }
     return Timestamp.newBuilder()
-        .setSeconds(Long.parseLong(timestamp.split("\\.")[0]))
-        .setNanos(Integer.parseInt(timestamp.split("\\.")[1]))
+        .setSeconds(consensusTime.seconds())
+        .setNanos(consensusTime.nanos())
         .build();
   }
 }
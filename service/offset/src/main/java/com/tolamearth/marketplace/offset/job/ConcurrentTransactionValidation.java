@@ -0,0 +1,157 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset.job;
+
+import com.tolamearth.marketplace.offset.job.PendingTransactions.PendingTransaction;
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a {@link TransactionValidator} over a batch of pending transactions with bounded
+ * parallelism. The number of in-flight mirror node requests is capped by the size of the
+ * {@code txn-validation} executor, requests are spaced to the configured rate, and no new
+ * validation is started once the per-run time budget is spent. Transactions that are skipped stay
+ * APPROVED and are picked up again on the next run.
+ */
+@Singleton
+public class ConcurrentTransactionValidation {
+
+  private static final Logger log = LoggerFactory.getLogger(ConcurrentTransactionValidation.class);
+
+  private final TransactionValidator transactionValidator;
+  private final ExecutorService executor;
+  private final Clock clock;
+  private final Long timeBudgetMillis;
+  private final RequestRateLimiter rateLimiter;
+
+  public ConcurrentTransactionValidation(TransactionValidator transactionValidator,
+      @Named("txn-validation") ExecutorService executor,
+      Clock clock,
+      @Value("${hem.txn.validation.time-budget-millis:4000}") Long timeBudgetMillis,
+      @Value("${hem.txn.validation.max-requests-per-second:50}") Integer maxRequestsPerSecond) {
+    this.transactionValidator = transactionValidator;
+    this.executor = executor;
+    this.clock = clock;
+    this.timeBudgetMillis = timeBudgetMillis;
+    this.rateLimiter = new RequestRateLimiter(maxRequestsPerSecond);
+  }
+
+  /**
+   * Validates the given transactions, blocking until every started validation has finished
+   *
+   * @param transactions transactions to validate
+   * @return the transactions that were successfully validated, in their original order
+   */
+  public List<PendingTransaction> validate(List<PendingTransaction> transactions) {
+    if (transactions.isEmpty()) {
+      return List.of();
+    }
+    var deadline = clock.millis() + timeBudgetMillis;
+    var futures = transactions.stream()
+        .map(transaction -> CompletableFuture.supplyAsync(() -> validate(transaction, deadline),
+            executor))
+        .toList();
+
+    var validated = new ArrayList<PendingTransaction>();
+    int skipped = 0;
+    for (int i = 0; i < futures.size(); i++) {
+      var result = futures.get(i).join();
+      if (result == Result.VALID) {
+        validated.add(transactions.get(i));
+      } else if (result == Result.SKIPPED) {
+        skipped++;
+      }
+    }
+    if (skipped > 0) {
+      log.warn("Validation time budget of " + timeBudgetMillis + "ms exceeded, deferred " + skipped
+          + " of " + transactions.size() + " transactions to the next run");
+    }
+    return validated;
+  }
+
+  private Result validate(PendingTransaction transaction, long deadline) {
+    try {
+      if (!rateLimiter.acquire(deadline - clock.millis())) {
+        return Result.SKIPPED;
+      }
+      if (clock.millis() >= deadline) {
+        return Result.SKIPPED;
+      }
+      return transactionValidator.validate(transaction) ? Result.VALID : Result.INVALID;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Result.SKIPPED;
+    } catch (Exception e) {
+      log.error("Unable to validate transaction " + transaction.getTxnId(), e);
+      return Result.INVALID;
+    }
+  }
+
+  private enum Result {
+    VALID, INVALID, SKIPPED
+  }
+
+  /**
+   * Spaces requests to the mirror node evenly so that bursts of validations do not exceed the
+   * configured requests per second. A non-positive rate disables limiting.
+   */
+  static class RequestRateLimiter {
+
+    private final long intervalNanos;
+    private long nextSlot = System.nanoTime();
+
+    RequestRateLimiter(int maxRequestsPerSecond) {
+      this.intervalNanos = maxRequestsPerSecond > 0
+          ? TimeUnit.SECONDS.toNanos(1) / maxRequestsPerSecond : 0;
+    }
+
+    /**
+     * Waits for the next free request slot
+     *
+     * @param maxWaitMillis the longest the caller is willing to wait
+     * @return true if a slot was acquired, false if it would not be available in time
+     */
+    boolean acquire(long maxWaitMillis) throws InterruptedException {
+      if (intervalNanos == 0) {
+        return true;
+      }
+      long waitNanos;
+      synchronized (this) {
+        var now = System.nanoTime();
+        var slot = Math.max(now, nextSlot);
+        waitNanos = slot - now;
+        if (waitNanos > TimeUnit.MILLISECONDS.toNanos(maxWaitMillis)) {
+          return false;
+        }
+        nextSlot = slot + intervalNanos;
+      }
+      if (waitNanos > 0) {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset.job;
+
+import static com.tolamearth.marketplace.offset.ListingTransactionState.APPROVED;
+import static com.tolamearth.marketplace.offset.ListingTransactionState.CREATED;
+
+import com.tolamearth.marketplace.esg.EsgFacetIndex;
+import com.tolamearth.marketplace.offset.ListingTransactionState;
+import com.tolamearth.marketplace.offset.TransactionTypeCode;
+import com.tolamearth.marketplace.offset.db.ListingTransactionRepo;
+import com.tolamearth.marketplace.offset.db.PurchasedTransactionRepo;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.runtime.event.annotation.EventListener;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Singleton;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the {@link ExpirySweep} when a listing or purchase transaction actually expires instead of
+ * polling for expired ones. The deadline of every CREATED and APPROVED transaction is kept in a
+ * {@link TimingWheel} which is filled as {@code OffsetRepo} records state changes and rebuilt
+ * from the database on startup. Advancing the wheel does not touch the database, so nothing is
+ * queried while no transaction is due. A sweep that hits its batch size is repeated at once until
+ * the backlog is gone. The sweep still runs every {@code hem.txn.expiry.sweep-interval} to catch
+ * transactions the wheel did not see, such as ones written by another instance.
+ */
+@Singleton
+public class ExpiryScheduler {
+
+  private static final Logger log = LoggerFactory.getLogger(ExpiryScheduler.class);
+  private static final int WHEEL_SIZE = 64;
+
+  private final ExpirySweep expirySweep;
+  private final ListingTransactionRepo listingTransactionRepo;
+  private final PurchasedTransactionRepo purchasedTransactionRepo;
+  private final EsgFacetIndex facetIndex;
+  private final Clock clock;
+  private final TimingWheel<Key> wheel;
+  private final Map<Key, Long> deadlines = new HashMap<>();
+  private final Lock sweeping = new ReentrantLock();
+  private boolean overdue;
+
+  public ExpiryScheduler(ExpirySweep expirySweep, ListingTransactionRepo listingTransactionRepo,
+      PurchasedTransactionRepo purchasedTransactionRepo, EsgFacetIndex facetIndex, Clock clock,
+      MeterRegistry meterRegistry, @Value("${hem.txn.expiry.tick:1s}") Duration tick) {
+    this.expirySweep = expirySweep;
+    this.listingTransactionRepo = listingTransactionRepo;
+    this.purchasedTransactionRepo = purchasedTransactionRepo;
+    this.facetIndex = facetIndex;
+    this.clock = clock;
+    this.wheel = new TimingWheel<>(Math.max(1, tick.toMillis()), WHEEL_SIZE, clock.millis());
+    Gauge.builder("hem.txn.expiry.scheduled", this, ExpiryScheduler::pending)
+        .description("Listing and purchase transactions waiting for their expiry")
+        .register(meterRegistry);
+  }
+
+  @EventListener
+  void onStartup(StartupEvent event) {
+    rebuild();
+  }
+
+  /**
+   * Schedules the expiry of transaction {@code transactionId} which moved to {@code state} at
+   * {@code lastUpdateTime}, replacing any earlier deadline. States that do not expire cancel it.
+   */
+  public void scheduled(TransactionTypeCode type, String transactionId,
+      ListingTransactionState state, long lastUpdateTime) {
+    scheduled(type, transactionId, state, lastUpdateTime, false);
+  }
+
+  /**
+   * @param receiptPending whether the receipt of the contract call is still outstanding, which
+   *                       defers the expiry of a CREATED transaction
+   */
+  public void scheduled(TransactionTypeCode type, String transactionId,
+      ListingTransactionState state, long lastUpdateTime, boolean receiptPending) {
+    var key = new Key(type, transactionId);
+    var deadline = expirySweep.deadline(type, state, lastUpdateTime, receiptPending);
+    synchronized (this) {
+      if (deadline.isEmpty()) {
+        deadlines.remove(key);
+        return;
+      }
+      if (wheel.add(key, deadline.getAsLong())) {
+        deadlines.put(key, deadline.getAsLong());
+      } else {
+        deadlines.remove(key);
+        overdue = true;
+      }
+    }
+  }
+
+  /**
+   * Drops the expiry of a transaction that completed.
+   */
+  public synchronized void completed(TransactionTypeCode type, String transactionId) {
+    deadlines.remove(new Key(type, transactionId));
+  }
+
+  /**
+   * Reloads the deadlines of all transactions that can still expire from the database.
+   */
+  public void rebuild() {
+    var count = 0;
+    for (var state : List.of(CREATED, APPROVED)) {
+      for (var transaction : listingTransactionRepo.findByListingTransactionState(state)) {
+        scheduled(TransactionTypeCode.LIST, transaction.getTransactionId(), state,
+            transaction.getLastUpdateTime(), transaction.getContractTxnId() != null);
+        count++;
+      }
+      for (var transaction : purchasedTransactionRepo.findByPurchasedState(state)) {
+        scheduled(TransactionTypeCode.PURCHASE, transaction.getTxnId(), state,
+            transaction.getLastUpdateTime(), transaction.getContractTxnId() != null);
+        count++;
+      }
+    }
+    log.info("Scheduled the expiry of " + count + " pending transactions");
+  }
+
+  /**
+   * Advances the wheel and sweeps if a scheduled transaction expired.
+   */
+  @Scheduled(fixedDelay = "${hem.txn.expiry.tick:1s}")
+  public void tick() {
+    if (due() > 0) {
+      sweep();
+    }
+  }
+
+  /**
+   * Removes all expired transactions, whether scheduled or not. Each run is its own database
+   * transaction, runs are repeated while they hit the batch size. Only one sweep runs at a time,
+   * a sweep asked for meanwhile is taken up by the next tick.
+   */
+  @Scheduled(fixedDelay = "${hem.txn.expiry.sweep-interval:5m}")
+  public void sweep() {
+    if (!sweeping.tryLock()) {
+      synchronized (this) {
+        overdue = true;
+      }
+      return;
+    }
+    try {
+      var listings = 0;
+      var purchases = 0;
+      ExpirySweep.Result expired;
+      do {
+        expired = expirySweep.run();
+        listings += expired.listings();
+        purchases += expired.purchases();
+      } while (expired.full());
+      if (listings + purchases == 0) {
+        log.debug("No expired listings or purchases");
+        return;
+      }
+      log.info("Removed " + listings + " expired listings and " + purchases
+          + " expired purchases");
+
+      // expiry deletes and resets listings in bulk, so reload the listed offsets of the index
+      facetIndex.refreshListings();
+    } finally {
+      sweeping.unlock();
+    }
+  }
+
+  private synchronized int due() {
+    var now = clock.millis();
+    var due = 0;
+    for (var key : wheel.advance(now)) {
+      // a transaction that completed or was rescheduled leaves a stale entry behind
+      var deadline = deadlines.get(key);
+      if (deadline != null && deadline < now) {
+        deadlines.remove(key);
+        due++;
+      }
+    }
+    if (overdue) {
+      overdue = false;
+      due++;
+    }
+    return due;
+  }
+
+  private synchronized int pending() {
+    return deadlines.size();
+  }
+
+  private record Key(TransactionTypeCode type, String transactionId) {
+
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset.job;
+
+import static com.tolamearth.marketplace.offset.ListingTransactionState.APPROVED;
+import static com.tolamearth.marketplace.offset.ListingTransactionState.CREATED;
+
+import com.tolamearth.marketplace.offset.ListingTransactionState;
+import com.tolamearth.marketplace.offset.TransactionTypeCode;
+import com.tolamearth.marketplace.offset.db.ExpiryRepo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Singleton;
+import java.time.Clock;
+import java.util.OptionalLong;
+import java.util.stream.IntStream;
+import javax.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes expired listing transactions with their listings, and expired purchase transactions,
+ * putting their listings back on sale. Each of the four states is a phase of a few set-based
+ * statements and all phases run in one database transaction. A phase removes at most
+ * {@code hem.txn.expiry.batch-size} transactions per run so a large backlog is worked off over
+ * several runs instead of locking the tables for one long one. The {@link Result} tells whether a
+ * phase hit the batch size, the caller then runs again right away. A CREATED transaction whose
+ * contract receipt has not been resolved is kept for {@code hem.txn.timeout.receipt} seconds
+ * instead, so it is not removed while its contract call may still succeed.
+ */
+@Singleton
+public class ExpirySweep {
+
+  private static final Logger log = LoggerFactory.getLogger(ExpirySweep.class);
+
+  private final Clock clock;
+  private final ExpiryRepo expiryRepo;
+  private final int batchSize;
+  private final long receiptTimeoutMillis;
+  private final Phase listingsCreated;
+  private final Phase listingsApproved;
+  private final Phase purchasesCreated;
+  private final Phase purchasesApproved;
+
+  public ExpirySweep(Clock clock, ExpiryRepo expiryRepo, MeterRegistry meterRegistry,
+      @Value("${hem.listed_txn_created_expire_timeout:30}") Integer listingCreatedTimeout,
+      @Value("${hem.listed_txn_approval_expire_timeout:30}") Integer listingApprovedTimeout,
+      @Value("${hem.purchased_txn_created_expire_timeout:30}") Integer purchaseCreatedTimeout,
+      @Value("${hem.purchased_txn_approval_expire_timeout:30}") Integer purchaseApprovedTimeout,
+      @Value("${hem.pending_receipt_expire_timeout:180}") Integer receiptTimeout,
+      @Value("${hem.txn.expiry.batch-size:1000}") Integer batchSize) {
+    this.clock = clock;
+    this.expiryRepo = expiryRepo;
+    this.batchSize = Math.max(1, batchSize);
+    this.receiptTimeoutMillis = receiptTimeout * 1000L;
+    this.listingsCreated = new Phase("listings.created", CREATED, listingCreatedTimeout,
+        meterRegistry);
+    this.listingsApproved = new Phase("listings.approved", APPROVED, listingApprovedTimeout,
+        meterRegistry);
+    this.purchasesCreated = new Phase("purchases.created", CREATED, purchaseCreatedTimeout,
+        meterRegistry);
+    this.purchasesApproved = new Phase("purchases.approved", APPROVED, purchaseApprovedTimeout,
+        meterRegistry);
+  }
+
+  @Transactional
+  public Result run() {
+    var now = clock.millis();
+    var createdListings = expireListings(listingsCreated, now);
+    var approvedListings = expireListings(listingsApproved, now);
+    var createdPurchases = expirePurchases(purchasesCreated, now);
+    var approvedPurchases = expirePurchases(purchasesApproved, now);
+    var full = IntStream.of(createdListings, approvedListings, createdPurchases, approvedPurchases)
+        .anyMatch(expired -> expired == batchSize);
+    return new Result(createdListings + approvedListings, createdPurchases + approvedPurchases,
+        full);
+  }
+
+  /**
+   * Returns the time after which a transaction last updated at {@code lastUpdateTime} is removed by
+   * a sweep, or nothing when transactions in {@code state} do not expire.
+   *
+   * @param receiptPending whether the receipt of the contract call is still outstanding
+   */
+  public OptionalLong deadline(TransactionTypeCode type, ListingTransactionState state,
+      long lastUpdateTime, boolean receiptPending) {
+    var phase = switch (state) {
+      case CREATED -> type == TransactionTypeCode.LIST ? listingsCreated : purchasesCreated;
+      case APPROVED -> type == TransactionTypeCode.LIST ? listingsApproved : purchasesApproved;
+      default -> null;
+    };
+    if (phase == null) {
+      return OptionalLong.empty();
+    }
+    return OptionalLong.of(lastUpdateTime + (receiptPending
+        ? Math.max(phase.timeoutMillis(), receiptTimeoutMillis) : phase.timeoutMillis()));
+  }
+
+  private int expireListings(Phase phase, long now) {
+    return phase.timer().record(() -> {
+      var lastUpdateTime = phase.lastUpdateTime(now);
+      var receiptLastUpdateTime = receiptLastUpdateTime(phase, now);
+      var expired = expiryRepo.lockExpiredListings(phase.state(), lastUpdateTime,
+          receiptLastUpdateTime, batchSize);
+      if (expired == 0) {
+        return 0;
+      }
+      var deletedListings = expiryRepo.deleteExpiredListings(phase.state(), lastUpdateTime,
+          receiptLastUpdateTime, batchSize);
+      expiryRepo.deleteExpiredListingTransactions(phase.state(), lastUpdateTime,
+          receiptLastUpdateTime, batchSize);
+      log.info("Removed {} expired {} listing transactions with {} listings", expired,
+          phase.state(), deletedListings);
+      warnIfFull(phase, expired);
+      return expired;
+    });
+  }
+
+  private int expirePurchases(Phase phase, long now) {
+    return phase.timer().record(() -> {
+      var lastUpdateTime = phase.lastUpdateTime(now);
+      var receiptLastUpdateTime = receiptLastUpdateTime(phase, now);
+      var expired = expiryRepo.lockExpiredPurchases(phase.state(), lastUpdateTime,
+          receiptLastUpdateTime, batchSize);
+      if (expired == 0) {
+        return 0;
+      }
+      var resetListings = expiryRepo.resetExpiredPurchases(phase.state(), lastUpdateTime,
+          receiptLastUpdateTime, batchSize);
+      expiryRepo.deleteExpiredPurchaseTransactions(phase.state(), lastUpdateTime,
+          receiptLastUpdateTime, batchSize);
+      log.info("Removed {} expired {} purchase transactions, {} listings are for sale again",
+          expired, phase.state(), resetListings);
+      warnIfFull(phase, expired);
+      return expired;
+    });
+  }
+
+  private long receiptLastUpdateTime(Phase phase, long now) {
+    return now - Math.max(phase.timeoutMillis(), receiptTimeoutMillis);
+  }
+
+  private void warnIfFull(Phase phase, int expired) {
+    if (expired == batchSize) {
+      log.warn("Expiry of {} hit the batch size of {}, the rest is removed by another run",
+          phase.name(), batchSize);
+    }
+  }
+
+  /**
+   * @param listings expired listing transactions removed
+   * @param purchases expired purchase transactions removed
+   * @param full whether a phase hit the batch size and may have left expired transactions behind
+   */
+  public record Result(int listings, int purchases, boolean full) {
+
+    public int total() {
+      return listings + purchases;
+    }
+  }
+
+  private record Phase(String name, ListingTransactionState state, long timeoutMillis,
+                       Timer timer) {
+
+    Phase(String name, ListingTransactionState state, Integer timeoutSeconds,
+        MeterRegistry meterRegistry) {
+      this(name, state, timeoutSeconds * 1000L, Timer.builder("hem.txn.expiry.sweep")
+          .description("Time to remove the expired transactions of one state")
+          .tag("phase", name)
+          .register(meterRegistry));
+    }
+
+    long lastUpdateTime(long now) {
+      return now - timeoutMillis;
+    }
+  }
+}
@@ -17,13 +17,8 @@
 package com.tolamearth.marketplace.offset.job;
 
 import com.tolamearth.marketplace.offset.integration.TransactionMessageHandler;
-import com.tolamearth.marketplace.offset.job.PendingTransactions.PendingTransaction;
 import io.micronaut.scheduling.annotation.Scheduled;
-import jakarta.inject.Named;
 import jakarta.inject.Singleton;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,59 +27,28 @@ public class OffsetListingUpdateJob {
 
   private static final Logger log = LoggerFactory.getLogger(OffsetListingUpdateJob.class);
 
-  private final ExpiryChecker creationExpiryChecker;
-  private final ExpiryChecker approvalExpiryChecker;
-  private final PurchasedExpiryChecker purchasedCreationExpiryChecker;
-  private final PurchasedExpiryChecker purchasedApprovalExpiryChecker;
+  private final ExpiryScheduler expiryScheduler;
   private final PendingTransactions pendingTransactions;
-  private final TransactionValidator transactionValidator;
+  private final ConcurrentTransactionValidation transactionValidation;
   private final TransactionMessageHandler transactionMessageHandler;
 
-  public OffsetListingUpdateJob(@Named("creation") ExpiryChecker creationExpiryChecker,
-      @Named("approval") ExpiryChecker approvalExpiryChecker,
-      @Named("purchasedCreation") PurchasedExpiryChecker purchasedCreationExpiryChecker,
-      @Named("purchasedApproval") PurchasedExpiryChecker purchasedApprovalExpiryChecker,
+  public OffsetListingUpdateJob(ExpiryScheduler expiryScheduler,
       PendingTransactions pendingTransactions,
-      TransactionValidator transactionValidator,
+      ConcurrentTransactionValidation transactionValidation,
       TransactionMessageHandler transactionMessageHandler) {
-    this.creationExpiryChecker = creationExpiryChecker;
-    this.approvalExpiryChecker = approvalExpiryChecker;
-    this.purchasedCreationExpiryChecker = purchasedCreationExpiryChecker;
-    this.purchasedApprovalExpiryChecker = purchasedApprovalExpiryChecker;
+    this.expiryScheduler = expiryScheduler;
     this.pendingTransactions = pendingTransactions;
-    this.transactionValidator = transactionValidator;
+    this.transactionValidation = transactionValidation;
     this.transactionMessageHandler = transactionMessageHandler;
   }
 
   @Scheduled(fixedDelay = "5s")
   public void run() {
-    // find and remove expired create
-    int removedCreate = creationExpiryChecker.run();
-    log.info("Removed " + removedCreate + " expired CREATE listings");
-
-    // find and remove expired approved
-    int removedApproved = approvalExpiryChecker.run();
-    log.info("Removed " + removedApproved + " expired APPROVED listings");
-
-    // find and remove expired purchased create
-    int removedPurchasedCreate = purchasedCreationExpiryChecker.run();
-    log.info("Removed " + removedPurchasedCreate + " expired purchased CREATE listings");
-
-    // find and remove expired purchased approved
-    int removedPurchasedApproved = purchasedApprovalExpiryChecker.run();
-    log.info("Removed " + removedPurchasedApproved + " expired purchased APPROVED listings");
-
     // find and update valid listings
-    AtomicInteger updatedListings = new AtomicInteger();
-    List<PendingTransaction> validated = new ArrayList<>();
-    pendingTransactions.list().forEach(pendingTransaction -> {
-      var success = transactionValidator.validate(pendingTransaction);
-      if (success) {
-        updatedListings.getAndIncrement();
-        validated.add(pendingTransaction);
-      }
-    });
-    log.info("Updated " + updatedListings + " valid approved listings");
+    var validated = transactionValidation.validate(pendingTransactions.list());
+    log.info("Updated " + validated.size() + " valid approved listings");
+    validated.forEach(transaction -> expiryScheduler.completed(transaction.getTransactionType(),
+        transaction.getTxnId()));
 
     transactionMessageHandler.publish(validated);
   }
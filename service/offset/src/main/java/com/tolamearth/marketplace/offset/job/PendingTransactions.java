@@ -16,10 +16,12 @@
 
 package com.tolamearth.marketplace.offset.job;
 
+import com.tolamearth.marketplace.offset.HederaIds;
+import com.tolamearth.marketplace.offset.HederaIds.ConsensusTime;
 import com.tolamearth.marketplace.offset.TransactionTypeCode;
+import io.micronaut.core.annotation.Nullable;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 /**
  * Holder for approved, valid transactions
@@ -38,11 +40,13 @@ public interface PendingTransactions {
    */
   class PendingTransaction {
 
-    private static final Pattern HEDERA_TXN_ID = Pattern.compile(
-        "(\\d+\\.\\d+\\.\\d+)@(\\d+\\.\\d+)(?:/\\d+)?(?:/?\\?schedule)?", Pattern.CASE_INSENSITIVE);
     private final long internalId;
     private final String txnId;
     private final TransactionTypeCode transactionType;
+    private volatile String mirrorNodeTxnId;
+    private volatile String consensusTimestamp;
+    private volatile ConsensusTime consensusTime;
+    private volatile Map<String, Object> mirrorNodeTransaction;
 
     /**
      * @param internalId ID of the internal object
@@ -75,16 +79,61 @@ public interface PendingTransactions {
      * Hedera Mirror Mode API Docs</a>/
      */
      public String getMirrorNodeTxnId() {
-      Matcher matcher = HEDERA_TXN_ID.matcher(txnId);
-      if (matcher.matches()) {
-        return matcher.group(1) + "-" + matcher.group(2).replace('.', '-');
-      } else {
-        throw new IllegalArgumentException("Unexpected Hedera TransactionId: " + txnId);
+      // converted once, the validator and the publisher both ask for it
+      var converted = mirrorNodeTxnId;
+      if (converted == null) {
+        converted = HederaIds.toMirrorNodeTxnId(txnId);
+        mirrorNodeTxnId = converted;
       }
+      return converted;
     }
 
     public TransactionTypeCode getTransactionType() {
       return transactionType;
     }
+
+    /**
+     * @return the consensus timestamp ({@literal <seconds.nanos>}) recorded by the validator, null
+     * if this transaction has not been validated yet
+     */
+    @Nullable
+    public String getConsensusTimestamp() {
+      return consensusTimestamp;
+    }
+
+    /**
+     * @return the parsed consensus timestamp, null if this transaction has not been validated yet
+     */
+    @Nullable
+    public ConsensusTime getConsensusTime() {
+      var parsed = consensusTime;
+      if (parsed == null && consensusTimestamp != null) {
+        parsed = HederaIds.parseConsensusTime(consensusTimestamp);
+        consensusTime = parsed;
+      }
+      return parsed;
+    }
+
+    /**
+     * @return the raw mirror node transaction the validator read the consensus timestamp from,
+     * null if this transaction has not been validated yet
+     */
+    @Nullable
+    public Map<String, Object> getMirrorNodeTransaction() {
+      return mirrorNodeTransaction;
+    }
+
+    /**
+     * Records the mirror node transaction found during validation, so it does not need to be
+     * fetched again when the transaction is published.
+     *
+     * @param consensusTimestamp consensus timestamp of the transaction
+     * @param mirrorNodeTransaction raw mirror node transaction
+     */
+    public void validated(String consensusTimestamp, Map<String, Object> mirrorNodeTransaction) {
+      this.consensusTimestamp = consensusTimestamp;
+      this.consensusTime = null;
+      this.mirrorNodeTransaction = mirrorNodeTransaction;
+    }
   }
 }
@@ -47,6 +47,7 @@ public class RestTransactionValidator implements TransactionValidator {
       if (transaction.containsKey("consensus_timestamp")) {
         var consensusTimestamp = (String) transaction.get("consensus_timestamp");
         if (consensusTimestamp != null && !consensusTimestamp.isEmpty()) {
+          pendingTransaction.validated(consensusTimestamp, transaction);
           return switch (pendingTransaction.getTransactionType()) {
             case LIST ->
                 listingTransactionRepo.updateById(pendingTransaction.getInternalId(), ListingTransactionState.LISTED) > 0;
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset.job;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel. The first level has {@code size} buckets of one tick each, every
+ * further level has buckets as wide as the whole level below it and is only created once a
+ * deadline lands beyond the existing levels. Adding a value is O(1), advancing touches one bucket
+ * per level and elapsed tick, and a value is cascaded into a finer level when its coarse bucket
+ * comes up. Values are returned on the first tick after their deadline, so they are never early.
+ *
+ * <p>Not thread safe, callers synchronize.
+ */
+final class TimingWheel<T> {
+
+  private final long tickMillis;
+  private final int size;
+  private final List<Level<T>> levels = new ArrayList<>();
+  private long currentTime;
+  private int pending;
+
+  TimingWheel(long tickMillis, int size, long startTime) {
+    if (tickMillis < 1 || size < 2) {
+      throw new IllegalArgumentException("tick must be positive and size at least 2");
+    }
+    this.tickMillis = tickMillis;
+    this.size = size;
+    this.currentTime = startTime - startTime % tickMillis;
+    levels.add(new Level<>(tickMillis, size));
+  }
+
+  /**
+   * Adds {@code value} to be returned by the first {@link #advance(long)} past {@code deadline}.
+   *
+   * @return false if that tick has already passed, the value is not added and due now
+   */
+  boolean add(T value, long deadline) {
+    return add(new Entry<>(value, (deadline / tickMillis + 1) * tickMillis));
+  }
+
+  /**
+   * Moves the wheel forward to {@code now}.
+   *
+   * @return the values whose deadline passed
+   */
+  List<T> advance(long now) {
+    var due = new ArrayList<T>();
+    while (currentTime + tickMillis <= now) {
+      if (pending == 0) {
+        // nothing to cascade, skip the idle ticks
+        currentTime = now - now % tickMillis;
+        break;
+      }
+      currentTime += tickMillis;
+      for (int i = levels.size() - 1; i >= 0; i--) {
+        var level = levels.get(i);
+        if (currentTime % level.tickMillis == 0) {
+          var bucket = level.drain(currentTime);
+          pending -= bucket.size();
+          for (var entry : bucket) {
+            if (!add(entry)) {
+              due.add(entry.value);
+            }
+          }
+        }
+      }
+    }
+    return due;
+  }
+
+  /**
+   * @return the number of values in the wheel
+   */
+  int size() {
+    return pending;
+  }
+
+  private boolean add(Entry<T> entry) {
+    if (entry.time <= currentTime) {
+      return false;
+    }
+    for (int i = 0; ; i++) {
+      if (i == levels.size()) {
+        levels.add(new Level<>(levels.get(i - 1).span(), size));
+      }
+      var level = levels.get(i);
+      if (entry.time < level.start(currentTime) + level.span()) {
+        level.bucket(entry.time).add(entry);
+        pending++;
+        return true;
+      }
+    }
+  }
+
+  private record Entry<T>(T value, long time) {
+
+  }
+
+  private static final class Level<T> {
+
+    private final long tickMillis;
+    private final List<List<Entry<T>>> buckets;
+
+    Level(long tickMillis, int size) {
+      this.tickMillis = tickMillis;
+      this.buckets = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        buckets.add(new ArrayList<>());
+      }
+    }
+
+    long span() {
+      return tickMillis * buckets.size();
+    }
+
+    long start(long time) {
+      return time - time % tickMillis;
+    }
+
+    List<Entry<T>> bucket(long time) {
+      return buckets.get((int) (time / tickMillis % buckets.size()));
+    }
+
+    List<Entry<T>> drain(long time) {
+      var index = (int) (time / tickMillis % buckets.size());
+      var bucket = buckets.get(index);
+      buckets.set(index, new ArrayList<>());
+      return bucket;
+    }
+  }
+}
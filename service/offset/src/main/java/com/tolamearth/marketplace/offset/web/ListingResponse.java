@@ -17,7 +17,13 @@
 package com.tolamearth.marketplace.offset.web;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.tolamearth.marketplace.offset.ListingTransactionState;
 
-public record ListingResponse(@JsonProperty ListingRequest request) {
+/**
+ * Echoes the request with the state of its transaction, CREATED while the contract call is still
+ * waiting for consensus.
+ */
+public record ListingResponse(@JsonProperty ListingRequest request,
+    @JsonProperty ListingTransactionState state) {
 
 }
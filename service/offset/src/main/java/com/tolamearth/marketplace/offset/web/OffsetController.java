@@ -16,6 +16,8 @@
 
 package com.tolamearth.marketplace.offset.web;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tolamearth.marketplace.common.HederaAccount;
 import com.tolamearth.marketplace.common.ListingOrder;
 import com.tolamearth.marketplace.common.error.HemErrorCode;
@@ -34,43 +36,62 @@ import io.micronaut.http.HttpStatus;
 import io.micronaut.http.annotation.*;
 import io.micronaut.scheduling.TaskExecutors;
 import io.micronaut.scheduling.annotation.ExecuteOn;
+import jakarta.inject.Named;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.StreamSupport;
 
+/**
+ * The account lookup runs on the event loop and waits for the mirror node without holding a
+ * thread, the endpoints that only talk to the database run on the IO executor.
+ */
 @Controller("/hem/v1/offsets")
-@ExecuteOn(TaskExecutors.IO)
 public class OffsetController {
 
   private static final Logger log = LoggerFactory.getLogger(OffsetController.class);
+  private static final String NDJSON = "application/x-ndjson";
 
   private final OffsetService offsetService;
   private final ListingRequestValidator listingRequestValidator;
   private final PurchaseRequestValidator purchaseRequestValidator;
   private final PurchasedTransactionRepo purchasedTransactionRepo;
   private final ListingTransactionRepo listingTransactionRepo;
+  private final ObjectMapper objectMapper;
+  private final ExecutorService executor;
 
   public OffsetController(OffsetService offsetService,
       ListingRequestValidator listingRequestValidator,
       PurchaseRequestValidator purchaseRequestValidator,
       PurchasedTransactionRepo purchasedTransactionRepo,
-      ListingTransactionRepo listingTransactionRepo) {
+      ListingTransactionRepo listingTransactionRepo,
+      ObjectMapper objectMapper,
+      @Named(TaskExecutors.IO) ExecutorService executor) {
     this.offsetService = offsetService;
     this.listingRequestValidator = listingRequestValidator;
     this.purchaseRequestValidator = purchaseRequestValidator;
     this.purchasedTransactionRepo = purchasedTransactionRepo;
     this.listingTransactionRepo = listingTransactionRepo;
+    this.objectMapper = objectMapper;
+    this.executor = executor;
   }
 
   @Get
-  OffsetListResponse loadOffsets(
+  CompletableFuture<OffsetListResponse> loadOffsets(
       @QueryValue("account_id") @Nullable String accountId,
       @Nullable String tokenId,
       @Nullable Integer limit,
       @Nullable ListingOrder order,
       @QueryValue(value = "list_state", defaultValue = "all") ListingState state) {
 
+    // without an account and a limit every listed offset is returned, as this endpoint always has
+    var everyListing = accountId == null && limit == null;
     if (limit == null || (limit != null && limit < 0)) {
       limit = 50;
     }
@@ -82,24 +103,31 @@ public class OffsetController {
     }
 
     var request = new OffsetListRequest(accountId, tokenId, order, limit, state);
+    HederaAccount account;
     try {
-      HederaAccount account = new HederaAccount(accountId);
-      return new OffsetListResponse(
-          offsetService.fetchOffsets(account, tokenId, limit, order, state),
-          request);
+      account = new HederaAccount(accountId);
     } catch (NullPointerException e) {
-      return new OffsetListResponse(offsetService.fetchOffsets(tokenId, limit, order, state),
-          request);
+      return CompletableFuture.supplyAsync(() -> {
+        var offsets = everyListing
+            ? StreamSupport.stream(offsetService.streamOffsets(null, null, request.order())
+                .spliterator(), false).toList()
+            : offsetService.fetchOffsets(tokenId, null, request.limit(), request.order(), state);
+        return new OffsetListResponse(offsets, request);
+      }, executor);
     }
+    return offsetService.fetchOffsets(account, tokenId, limit, order, state)
+        .thenApply(offsets -> new OffsetListResponse(offsets, request));
   }
 
   @Get("/all-listed")
+  @ExecuteOn(TaskExecutors.IO)
   OffsetListResponse loadOffsets(
       @Nullable String tokenId,
+      @QueryValue("serial_number") @Nullable Long serialNumber,
       @Nullable Integer limit,
       @Nullable ListingOrder order,
       @QueryValue(value = "list_state", defaultValue = "listed") ListingState state) {
-    if (limit == null) {
+    if (limit == null || limit < 0) {
       limit = 25;
     } else if (limit > 100) {
       limit = 100;
@@ -108,28 +136,57 @@ public class OffsetController {
       order = ListingOrder.ASC;
     }
 
-    return new OffsetListResponse(offsetService.fetchOffsets(tokenId, limit, order, state),
+    return new OffsetListResponse(
+        offsetService.fetchOffsets(tokenId, serialNumber, limit, order, state),
         new OffsetListRequest(null, tokenId, order, limit, state));
   }
 
+  /**
+   * Streams every listed offset after the cursor as newline delimited json, for bulk consumers
+   * that would otherwise page through all-listed. Offsets are read from the database a page at a
+   * time as the client consumes them.
+   */
+  @Get(value = "/all-listed/stream", produces = NDJSON)
+  Publisher<String> streamOffsets(
+      @Nullable String tokenId,
+      @QueryValue("serial_number") @Nullable Long serialNumber,
+      @Nullable ListingOrder order) {
+    var offsets = offsetService.streamOffsets(tokenId, serialNumber,
+        order == null ? ListingOrder.ASC : order);
+    return Flux.fromIterable(offsets)
+        .map(offset -> {
+          try {
+            return objectMapper.writeValueAsString(offset) + "\n";
+          } catch (JsonProcessingException e) {
+            throw new HemException(HemErrorCode.INVALID_DATA_FORMAT, e);
+          }
+        })
+        .subscribeOn(Schedulers.boundedElastic());
+  }
+
   @Post("/list")
   @Status(HttpStatus.CREATED)
+  @ExecuteOn(TaskExecutors.IO)
   ListingResponse createListing(@NonNull @Body ListingRequest request) {
     listingRequestValidator.validate(request);
-    offsetService.list(request.accountId(), request.transactionId(), request.pricedNfts());
-    return new ListingResponse(request);
+    var state = offsetService.list(request.accountId(), request.transactionId(),
+        request.pricedNfts());
+    return new ListingResponse(request, state);
   }
 
   @Post("/purchase")
   @Status(HttpStatus.OK)
+  @ExecuteOn(TaskExecutors.IO)
   PurchaseResponse purchaseNfts(@NonNull @Body PurchaseRequest request) {
     purchaseRequestValidator.validate(request);
-    offsetService.purchase(request.accountId(), request.transactionId(), request.nfts());
-    return new PurchaseResponse(request);//TODO should return HTTP response code 200 with Response status of PENDING?
+    var state = offsetService.purchase(request.accountId(), request.transactionId(),
+        request.nfts());
+    return new PurchaseResponse(request, state);
   }
 
   @Get("/txn")
   @Status(HttpStatus.OK)
+  @ExecuteOn(TaskExecutors.IO)
   RetrieveTransactionRecordInfoResponse retrieveTransactionRecordInfo(@QueryValue String txn_id, @QueryValue("txn_type") String txn_type) {
     TransactionTypeCode transactionTypeCode = TransactionTypeCode.valueOf(txn_type);
     ListingTransactionState transactionState = (transactionTypeCode == TransactionTypeCode.PURCHASE) ?
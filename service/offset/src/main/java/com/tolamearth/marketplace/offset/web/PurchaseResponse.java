@@ -17,6 +17,8 @@
 package com.tolamearth.marketplace.offset.web;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.tolamearth.marketplace.offset.ListingTransactionState;
 
-public record PurchaseResponse(@JsonProperty PurchaseRequest request) {
+public record PurchaseResponse(@JsonProperty PurchaseRequest request,
+    @JsonProperty ListingTransactionState state) {
 }
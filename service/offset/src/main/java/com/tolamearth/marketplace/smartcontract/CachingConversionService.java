@@ -0,0 +1,131 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.smartcontract;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.tolamearth.marketplace.common.util.FutureHelpers;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Primary;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.math.BigInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves the tinybar per cent rate from memory instead of paying for a contract query on every
+ * request. The first request loads the rate, concurrent first requests wait for that one query,
+ * and from then on it is refreshed every {@code hem.conversion.refresh-interval} whatever the
+ * traffic. A rate older than {@code hem.conversion.max-staleness-seconds}, because refreshes kept
+ * failing, is not served and is loaded again by the next request. Set
+ * {@code hem.conversion.cache.enabled} to false to query the contract every time.
+ */
+@Primary
+@Singleton
+@Requires(property = "hem.conversion.cache.enabled", value = "true", defaultValue = "true")
+class CachingConversionService implements ConversionService {
+
+  private static final Logger log = LoggerFactory.getLogger(CachingConversionService.class);
+
+  private final ConversionService delegate;
+  private final long maxStalenessNanos;
+  private final Ticker ticker;
+  private final Counter refreshFailures;
+  private final AtomicReference<CompletableFuture<Rate>> loading = new AtomicReference<>();
+  private volatile Rate current;
+
+  @Inject
+  public CachingConversionService(DefaultConversionService delegate, MeterRegistry meterRegistry,
+      @Value("${hem.conversion.max-staleness-seconds:300}") Long maxStalenessSeconds) {
+    this(delegate, meterRegistry, maxStalenessSeconds, Ticker.systemTicker());
+  }
+
+  CachingConversionService(ConversionService delegate, MeterRegistry meterRegistry,
+      Long maxStalenessSeconds, Ticker ticker) {
+    this.delegate = delegate;
+    this.maxStalenessNanos = TimeUnit.SECONDS.toNanos(maxStalenessSeconds);
+    this.ticker = ticker;
+    this.refreshFailures = Counter.builder("hem.conversion.refresh.failures")
+        .description("Failed queries for the tinybar per cent rate")
+        .register(meterRegistry);
+    Gauge.builder("hem.conversion.rate.age", this, CachingConversionService::ageSeconds)
+        .description("Seconds since the served tinybar per cent rate was queried")
+        .baseUnit("seconds")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public BigInteger getTinybarPerCent() {
+    var rate = current;
+    if (rate != null && ticker.read() - rate.queriedAt() <= maxStalenessNanos) {
+      return rate.tinybarPerCent();
+    }
+    return load().tinybarPerCent();
+  }
+
+  @Scheduled(fixedDelay = "${hem.conversion.refresh-interval:60s}")
+  void refresh() {
+    if (current == null) {
+      // nothing asked for the rate yet, the first request loads it
+      return;
+    }
+    try {
+      load();
+    } catch (RuntimeException e) {
+      log.warn("Could not refresh the tinybar per cent rate, serving one {}s old", ageSeconds(),
+          e);
+    }
+  }
+
+  double ageSeconds() {
+    var rate = current;
+    return rate == null ? Double.NaN
+        : (ticker.read() - rate.queriedAt()) / (double) TimeUnit.SECONDS.toNanos(1);
+  }
+
+  private Rate load() {
+    var query = new CompletableFuture<Rate>();
+    var inFlight = loading.compareAndExchange(null, query);
+    if (inFlight != null) {
+      return FutureHelpers.join(inFlight);
+    }
+    try {
+      var rate = new Rate(delegate.getTinybarPerCent(), ticker.read());
+      current = rate;
+      query.complete(rate);
+      return rate;
+    } catch (RuntimeException e) {
+      refreshFailures.increment();
+      query.completeExceptionally(e);
+      throw e;
+    } finally {
+      loading.set(null);
+    }
+  }
+
+  private record Rate(BigInteger tinybarPerCent, long queriedAt) {
+
+  }
+}
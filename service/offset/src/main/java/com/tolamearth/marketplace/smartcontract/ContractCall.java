@@ -14,28 +14,17 @@
  * limitations under the License.
  */
 
-package com.tolamearth.marketplace.offset.job;
+package com.tolamearth.marketplace.smartcontract;
 
-import com.tolamearth.marketplace.offset.ListingTransactionState;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * Checks for purchases that have expired and removes them from the database
+ * A contract transaction the network has accepted.
  *
- * Each implementation should check at most one PurchasedTransactionState.
- *
- * @author Jesse Elliott
+ * @param transactionId Hedera id of the contract transaction, to collect its receipt again later
+ * @param receipt       completes when the transaction reached consensus, fails if it did not
+ *                      succeed
  */
-public interface PurchasedExpiryChecker {
-
-  /**
-   * Runs check for purchases
-   *
-   * @return the number of records deleted
-   */
-  int run();
+public record ContractCall(String transactionId, CompletableFuture<Void> receipt) {
 
-  /**
-   * {@return the PurchasedTransactionState that this will check}
-   */
-  ListingTransactionState getState();
 }
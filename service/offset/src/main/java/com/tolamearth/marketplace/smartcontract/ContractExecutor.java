@@ -0,0 +1,39 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.smartcontract;
+
+import com.hedera.hashgraph.sdk.ContractExecuteTransaction;
+import com.hedera.hashgraph.sdk.Status;
+import com.hedera.hashgraph.sdk.TransactionId;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Submits contract transactions to the network and looks up their receipts, split so callers can
+ * return after precheck and collect the consensus outcome later.
+ */
+public interface ContractExecutor {
+
+  /**
+   * Freezes and submits the transaction, completing once a node has accepted it.
+   */
+  CompletableFuture<TransactionId> submit(ContractExecuteTransaction transaction);
+
+  /**
+   * Completes with the status of the transaction once it has reached consensus.
+   */
+  CompletableFuture<Status> receipt(TransactionId transactionId);
+}
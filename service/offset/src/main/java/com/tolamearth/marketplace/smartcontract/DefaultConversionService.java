@@ -24,7 +24,6 @@ import com.hedera.hashgraph.sdk.Hbar;
 import com.hedera.hashgraph.sdk.PrecheckStatusException;
 import com.tolamearth.marketplace.common.HederaConfigurationProperties;
 import com.tolamearth.marketplace.common.LogFormatter;
-import io.micronaut.context.annotation.Primary;
 import jakarta.inject.Singleton;
 import java.math.BigInteger;
 import java.util.concurrent.TimeoutException;
@@ -32,7 +31,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Singleton
-@Primary
 public class DefaultConversionService implements ConversionService {
   private static final Logger log = LoggerFactory.getLogger(DefaultConversionService.class);
 
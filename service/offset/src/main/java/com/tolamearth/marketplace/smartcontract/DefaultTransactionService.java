@@ -17,27 +17,29 @@
 package com.tolamearth.marketplace.smartcontract;
 
 import com.hedera.hashgraph.sdk.AccountId;
-import com.hedera.hashgraph.sdk.Client;
 import com.hedera.hashgraph.sdk.ContractExecuteTransaction;
 import com.hedera.hashgraph.sdk.ContractFunctionParameters;
 import com.hedera.hashgraph.sdk.ContractId;
-import com.hedera.hashgraph.sdk.PrecheckStatusException;
-import com.hedera.hashgraph.sdk.ReceiptStatusException;
+import com.hedera.hashgraph.sdk.Status;
 import com.hedera.hashgraph.sdk.TokenId;
-import com.hedera.hashgraph.sdk.Transaction;
-import com.hedera.hashgraph.sdk.TransactionResponse;
+import com.hedera.hashgraph.sdk.TransactionId;
 import com.tolamearth.marketplace.common.HederaConfigurationProperties;
 import com.tolamearth.marketplace.common.LogFormatter;
+import com.tolamearth.marketplace.common.util.FutureHelpers;
 import com.tolamearth.marketplace.offset.Nft;
 import com.tolamearth.marketplace.offset.PricedNft;
 import io.micronaut.context.annotation.Primary;
 import jakarta.inject.Singleton;
 import java.math.BigInteger;
 import java.util.List;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.CompletableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Sends every request as a single contract transaction, so the whitelist entries of a request are
+ * written on chain all together or not at all.
+ */
 @Singleton
 @Primary
 public class DefaultTransactionService implements TransactionService {
@@ -45,14 +47,16 @@ public class DefaultTransactionService implements TransactionService {
   private static final Logger log = LoggerFactory.getLogger(DefaultTransactionService.class);
 
   private final HederaConfigurationProperties hederaConfigurationProperties;
-  private final Client hederaClient;
+  private final ContractExecutor contractExecutor;
+  private final ReceiptPoller receiptPoller;
   private final LogFormatter logFormatter;
 
   public DefaultTransactionService(
-      HederaConfigurationProperties hederaConfigurationProperties, Client hederaClient,
-      LogFormatter logFormatter) {
+      HederaConfigurationProperties hederaConfigurationProperties,
+      ContractExecutor contractExecutor, ReceiptPoller receiptPoller, LogFormatter logFormatter) {
     this.hederaConfigurationProperties = hederaConfigurationProperties;
-    this.hederaClient = hederaClient;
+    this.contractExecutor = contractExecutor;
+    this.receiptPoller = receiptPoller;
     this.logFormatter = logFormatter;
   }
 
@@ -72,14 +76,15 @@ public class DefaultTransactionService implements TransactionService {
     return TokenId.fromString(tokenId).toSolidityAddress();
   }
 
-  public void allowList(String accountId, String transactionId, List<PricedNft> pricedNfts) {
+  public ContractCall allowList(String accountId, String transactionId,
+      List<PricedNft> pricedNfts) {
     var tokenIds = pricedNfts.stream().map(PricedNft::tokenId).map(this::toSolidityAddress)
         .toArray(String[]::new);
     var prices = pricedNfts.stream().map(PricedNft::price).map(BigInteger::valueOf)
         .toArray(BigInteger[]::new);
     var serialNumbers = pricedNfts.stream().mapToLong(PricedNft::serialNumber).toArray();
     var transaction = createContractExecuteTransaction("whitelist_list");
-    executeContract(transaction
+    return executeContract(transaction
         .setFunction("whitelist_list", new ContractFunctionParameters()
             .addAddress(AccountId.fromString(accountId).toSolidityAddress())
             .addAddressArray(tokenIds)
@@ -88,12 +93,13 @@ public class DefaultTransactionService implements TransactionService {
         ));
   }
 
-  public void purchaseList(String accountId, String transactionId, List<Nft> nfts) {
+  public ContractCall purchaseList(String accountId, String transactionId,
+      List<Nft> nfts) {
     var tokenIds = nfts.stream().map(Nft::tokenId).map(this::toSolidityAddress)
         .toArray(String[]::new);
     var serialNumbers = nfts.stream().mapToLong(Nft::serialNumber).toArray();
     var transaction = createContractExecuteTransaction("whitelist_purchase");
-    executeContract(transaction
+    return executeContract(transaction
         .setFunction("whitelist_purchase", new ContractFunctionParameters()
             .addAddress(AccountId.fromString(accountId).toSolidityAddress())
             .addAddressArray(tokenIds)
@@ -101,15 +107,28 @@ public class DefaultTransactionService implements TransactionService {
         ));
   }
 
-  <T extends Transaction<T>>void executeContract (Transaction < T > transaction) {
-      transaction.freezeWith(hederaClient);
-      log.info("Attempting to execute {}", transaction.getTransactionId());
-      try {
-        TransactionResponse response = transaction.execute(hederaClient);
-        log.info(response.getReceipt(hederaClient).toString());
-        log.info("Successfully executed {}", transaction.getTransactionId());
-      } catch (TimeoutException | PrecheckStatusException | ReceiptStatusException e) {
-        throw new RuntimeException(e);
+  @Override
+  public CompletableFuture<Void> receipt(String transactionId) {
+    return awaitSuccess(TransactionId.fromString(transactionId));
+  }
+
+  /**
+   * Returns once the transaction passed precheck, the receipt of the returned call completes when
+   * it reached consensus and fails if it did not succeed.
+   */
+  ContractCall executeContract(ContractExecuteTransaction transaction) {
+    var transactionId = FutureHelpers.join(contractExecutor.submit(transaction));
+    log.info("Submitted {}, awaiting its receipt", transactionId);
+    return new ContractCall(transactionId.toString(), awaitSuccess(transactionId));
+  }
+
+  private CompletableFuture<Void> awaitSuccess(TransactionId transactionId) {
+    return receiptPoller.await(transactionId).thenAccept(status -> {
+      if (status != Status.SUCCESS) {
+        throw new IllegalStateException(
+            "Transaction " + transactionId + " failed with status " + status);
       }
-    }
+      log.info("Successfully executed {}", transactionId);
+    });
   }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.smartcontract;
+
+import com.hedera.hashgraph.sdk.Client;
+import com.hedera.hashgraph.sdk.ContractExecuteTransaction;
+import com.hedera.hashgraph.sdk.Status;
+import com.hedera.hashgraph.sdk.TransactionId;
+import com.hedera.hashgraph.sdk.TransactionReceiptQuery;
+import jakarta.inject.Singleton;
+import java.util.concurrent.CompletableFuture;
+
+@Singleton
+public class HederaContractExecutor implements ContractExecutor {
+
+  private final Client hederaClient;
+
+  public HederaContractExecutor(Client hederaClient) {
+    this.hederaClient = hederaClient;
+  }
+
+  @Override
+  public CompletableFuture<TransactionId> submit(ContractExecuteTransaction transaction) {
+    transaction.freezeWith(hederaClient);
+    return transaction.executeAsync(hederaClient).thenApply(response -> response.transactionId);
+  }
+
+  @Override
+  public CompletableFuture<Status> receipt(TransactionId transactionId) {
+    // the receipt query retries on its own until the transaction reaches consensus
+    return new TransactionReceiptQuery()
+        .setTransactionId(transactionId)
+        .executeAsync(hederaClient)
+        .thenApply(receipt -> receipt.status);
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.smartcontract;
+
+import com.hedera.hashgraph.sdk.AccountId;
+import com.hedera.hashgraph.sdk.ContractExecuteTransaction;
+import com.hedera.hashgraph.sdk.Status;
+import com.hedera.hashgraph.sdk.TransactionId;
+import io.micronaut.context.annotation.Replaces;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.scheduling.TaskExecutors;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stand-in for the Hedera network when running offline, enabled with
+ * {@code hem.contract.executor=local}. Every transaction passes precheck and succeeds after a
+ * fixed consensus delay.
+ */
+@Singleton
+@Replaces(HederaContractExecutor.class)
+@Requires(property = "hem.contract.executor", value = "local")
+public class LocalContractExecutor implements ContractExecutor {
+
+  private static final AccountId OPERATOR = AccountId.fromString("0.0.2");
+
+  private final ScheduledExecutorService scheduler;
+  private final long receiptDelayMillis;
+
+  public LocalContractExecutor(
+      @Named(TaskExecutors.SCHEDULED) ScheduledExecutorService scheduler,
+      @Value("${hem.contract.local.receipt-delay-millis:0}") long receiptDelayMillis) {
+    this.scheduler = scheduler;
+    this.receiptDelayMillis = receiptDelayMillis;
+  }
+
+  @Override
+  public CompletableFuture<TransactionId> submit(ContractExecuteTransaction transaction) {
+    return CompletableFuture.completedFuture(TransactionId.generate(OPERATOR));
+  }
+
+  @Override
+  public CompletableFuture<Status> receipt(TransactionId transactionId) {
+    var status = new CompletableFuture<Status>();
+    scheduler.schedule(() -> status.complete(Status.SUCCESS), receiptDelayMillis,
+        TimeUnit.MILLISECONDS);
+    return status;
+  }
+}
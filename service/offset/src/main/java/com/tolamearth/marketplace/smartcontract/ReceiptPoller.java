@@ -0,0 +1,102 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.smartcontract;
+
+import com.hedera.hashgraph.sdk.Status;
+import com.hedera.hashgraph.sdk.TransactionId;
+import io.micronaut.context.annotation.Value;
+import jakarta.inject.Singleton;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects receipts for submitted contract transactions. Up to {@code maxInFlight} receipt
+ * queries are outstanding at once and none of them holds a thread while it waits, so a burst of
+ * submissions waits for consensus side by side instead of one after another. Further receipts
+ * queue and start as earlier ones complete.
+ */
+@Singleton
+public class ReceiptPoller {
+
+  private final ContractExecutor contractExecutor;
+  private final int maxInFlight;
+  private final Queue<PendingReceipt> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  public ReceiptPoller(ContractExecutor contractExecutor,
+      @Value("${hem.contract.receipts.max-in-flight:32}") int maxInFlight) {
+    this.contractExecutor = contractExecutor;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Completes with the consensus status of the transaction.
+   */
+  public CompletableFuture<Status> await(TransactionId transactionId) {
+    var receipt = new PendingReceipt(transactionId, new CompletableFuture<>());
+    pending.add(receipt);
+    drain();
+    return receipt.status();
+  }
+
+  int inFlight() {
+    return inFlight.get();
+  }
+
+  private void drain() {
+    while (!pending.isEmpty()) {
+      var current = inFlight.get();
+      if (current >= maxInFlight) {
+        // the completion of an outstanding query drains again
+        return;
+      }
+      if (!inFlight.compareAndSet(current, current + 1)) {
+        continue;
+      }
+      var next = pending.poll();
+      if (next == null) {
+        inFlight.decrementAndGet();
+        continue;
+      }
+      query(next);
+    }
+  }
+
+  private void query(PendingReceipt receipt) {
+    CompletableFuture<Status> query;
+    try {
+      query = contractExecutor.receipt(receipt.transactionId());
+    } catch (RuntimeException e) {
+      query = CompletableFuture.failedFuture(e);
+    }
+    query.whenComplete((status, error) -> {
+      inFlight.decrementAndGet();
+      if (error != null) {
+        receipt.status().completeExceptionally(error);
+      } else {
+        receipt.status().complete(status);
+      }
+      drain();
+    });
+  }
+
+  private record PendingReceipt(TransactionId transactionId, CompletableFuture<Status> status) {
+
+  }
+}
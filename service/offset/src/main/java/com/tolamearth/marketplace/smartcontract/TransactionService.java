@@ -19,10 +19,23 @@ package com.tolamearth.marketplace.smartcontract;
 import com.tolamearth.marketplace.offset.Nft;
 import com.tolamearth.marketplace.offset.PricedNft;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Calls the offsets contract. Both calls return once the network has accepted the transaction,
+ * the receipt of the returned call completes when it has reached consensus.
+ */
 public interface TransactionService {
 
-  void allowList(String accountId, String transactionId, List<PricedNft> nfts);
+  ContractCall allowList(String accountId, String transactionId, List<PricedNft> nfts);
+
+  ContractCall purchaseList(String accountId, String transactionId, List<Nft> nfts);
 
-  void purchaseList(String accountId, String transactionId, List<Nft> nfts);
+  /**
+   * Collects the receipt of a contract transaction submitted earlier, such as one still pending
+   * when the service restarted.
+   *
+   * @param transactionId Hedera id of the contract transaction
+   */
+  CompletableFuture<Void> receipt(String transactionId);
 }
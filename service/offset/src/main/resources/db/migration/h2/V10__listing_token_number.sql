@@ -0,0 +1,28 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+-- Numeric parts of the token id, so listings page in the order of SimpleOffset and the mirror node
+-- (0.0.9 before 0.0.10) rather than by text. Token ids that are not shard.realm.num are left null.
+ALTER TABLE ListedOffsets ADD COLUMN token_shard bigint
+    GENERATED ALWAYS AS (CAST(REGEXP_SUBSTR(token_id, '^(\d+)\.(\d+)\.(\d+)$', 1, 1, 'c', 1) AS bigint));
+ALTER TABLE ListedOffsets ADD COLUMN token_realm bigint
+    GENERATED ALWAYS AS (CAST(REGEXP_SUBSTR(token_id, '^(\d+)\.(\d+)\.(\d+)$', 1, 1, 'c', 2) AS bigint));
+ALTER TABLE ListedOffsets ADD COLUMN token_num bigint
+    GENERATED ALWAYS AS (CAST(REGEXP_SUBSTR(token_id, '^(\d+)\.(\d+)\.(\d+)$', 1, 1, 'c', 3) AS bigint));
+
+-- keyset pagination of current listings by (token, serial_number) in numeric order
+CREATE INDEX ListedOffsets_token_number_serial
+    ON ListedOffsets (token_shard, token_realm, token_num, serial_number);
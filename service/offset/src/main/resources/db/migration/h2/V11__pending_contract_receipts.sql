@@ -0,0 +1,20 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+-- Hedera id of the contract transaction submitted for a listing or purchase, set until its receipt
+-- is resolved so the receipt can be collected again after a restart
+ALTER TABLE ListedTransactions ADD COLUMN contract_txn_id varchar;
+ALTER TABLE PurchasedTransactions ADD COLUMN contract_txn_id varchar;
@@ -0,0 +1,26 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+-- Pending ESG loads, shared by every node when hem.esg.queue.store is jdbc
+CREATE TABLE EsgLoadQueue
+(
+    id            bigint generated always as identity primary key,
+    token_id      varchar not null,
+    serial_number bigint  not null,
+    creation_time bigint  not null,
+    locked_at     bigint,
+    CONSTRAINT EsgLoadQueue_nft UNIQUE (token_id, serial_number)
+);
@@ -0,0 +1,21 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+-- keyset pagination of current listings by (token_id, serial_number)
+CREATE INDEX ListedOffsets_token_serial ON ListedOffsets (token_id, serial_number);
+
+-- listing transaction lookups by id
+CREATE INDEX ListedTransactions_transaction_id ON ListedTransactions (transaction_id);
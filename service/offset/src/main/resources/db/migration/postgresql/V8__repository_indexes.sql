@@ -0,0 +1,31 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+-- ListingRepo: listings of a transaction, of a purchase and the current listings of an account
+CREATE INDEX ListedOffsets_txn_id ON ListedOffsets (txn_id);
+CREATE INDEX ListedOffsets_purchase_txn_id ON ListedOffsets (purchase_txn_id);
+CREATE INDEX ListedOffsets_account_purchase ON ListedOffsets (account_id, purchase_txn_id);
+
+-- ListingTransactionRepo: expiry checks and listing state lookups
+CREATE INDEX ListedTransactions_state_update ON ListedTransactions (listing_transaction_state, last_update_time);
+
+-- PurchasedTransactionRepo: purchase lookups and expiry checks
+CREATE INDEX PurchasedTransactions_txn_id ON PurchasedTransactions (txn_id);
+CREATE INDEX PurchasedTransactions_state_update ON PurchasedTransactions (purchased_state, last_update_time);
+
+-- EsgOffsetSearchRepo: attribute filters and facet counts by title. VALUE is unbounded and holds
+-- JSON arrays, too long for a btree entry, so it is filtered on the rows of the title instead
+CREATE INDEX ESGOFFSETATTRIBUTE_TITLE_INDEX ON ESGOFFSETATTRIBUTE (TITLE);
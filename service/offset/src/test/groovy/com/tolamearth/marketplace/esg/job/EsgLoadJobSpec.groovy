@@ -17,12 +17,17 @@
 package com.tolamearth.marketplace.esg.job
 
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.tolamearth.marketplace.esg.EsgAttributeLoader
 import com.tolamearth.marketplace.esg.EsgClient
 import com.tolamearth.marketplace.esg.EsgClient.EsgAttributes
+import com.tolamearth.marketplace.esg.EsgFacetIndex
 import com.tolamearth.marketplace.esg.EsgLoadQueue
 import com.tolamearth.marketplace.esg.db.EsgOffsetRepo
 import com.tolamearth.marketplace.offset.Nft
 import com.tolamearth.marketplace.esg.db.EsgOffset
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executors
 import spock.lang.Specification
 
 class EsgLoadJobSpec extends Specification {
@@ -31,7 +36,15 @@ class EsgLoadJobSpec extends Specification {
   EsgLoadQueue queue = Mock EsgLoadQueue
   EsgOffsetRepo repo = Mock EsgOffsetRepo
   ObjectMapper objectMapper = Mock ObjectMapper
-  EsgLoadJob job = new EsgLoadJob(client, queue, repo, objectMapper)
+  EsgFacetIndex facetIndex = Mock EsgFacetIndex
+  SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+  def executor = Executors.newFixedThreadPool(2)
+  EsgLoadJob job = new EsgLoadJob(new EsgAttributeLoader(client, objectMapper), queue, repo,
+      facetIndex, executor, meterRegistry, 2)
+
+  def cleanup() {
+    executor.shutdownNow()
+  }
 
   def "test that an empty queue is a no-op"() {
     given: "there are no actionable tokens in the queue"
@@ -40,8 +53,8 @@ class EsgLoadJobSpec extends Specification {
       job.run()
     then: "no operations are taken"
       0 * queue.lock(_)
-      0 * repo.findByTokenIdAndSerialNumber(_, _)
-      0 * repo.save(_)
+      0 * repo.findByTokenIdInAndSerialNumberIn(_, _)
+      0 * repo.saveAll(_)
       0 * queue.remove(_)
       0 * queue.unlock(_)
   }
@@ -53,54 +66,114 @@ class EsgLoadJobSpec extends Specification {
     when:
       job.run()
     then: "the nfts are locked"
-      nfts.size() * queue.lock(_)
-    and: "the existing records are looked up"
-      nfts.size() * repo.findByTokenIdAndSerialNumber(_, _) >> new EsgOffset()
-    and: "save is not called"
-      0 * repo.save(_)
+      nfts.size() * queue.lock(_) >> true
+    and: "the existing records are looked up in one query"
+      1 * repo.findByTokenIdInAndSerialNumberIn(_, _) >> nfts.collect { offset(it) }
+    and: "nothing is fetched or saved"
+      0 * client.getNftAttributes(_, _)
+      0 * repo.saveAll(_)
     and: "the nfts are removed from the queue"
       nfts.size() * queue.remove(_)
   }
 
   def "test that new data is saved when offset data does not already exist"() {
     given: "the following nfts are queued"
-      def nfts = [new Nft("0.0.1", 1), new Nft("0.0.1", 2)]
+      def nfts = [new Nft("0.0.1", 1), new Nft("0.0.1", 2), new Nft("0.0.2", 1)]
       queue.list() >> nfts
     when:
       job.run()
     then: "all nfts are locked"
-      nfts.size() * queue.lock(_)
-    and: "records are not found"
-      nfts.size() * repo.findByTokenIdAndSerialNumber(_, _) >> null
+      nfts.size() * queue.lock(_) >> true
+    and: "records are looked up once per batch and not found"
+      2 * repo.findByTokenIdInAndSerialNumberIn(_, _) >> []
     and: "attributes are returned from the client"
       nfts.size() * client.getNftAttributes(_, _) >> { tokenId, serialNumber ->
-        new EsgAttributes(tokenId, serialNumber, [])
+        CompletableFuture.completedFuture(new EsgAttributes(tokenId, serialNumber, []))
       }
-    and: "all tokens save"
-      nfts.size() * repo.save(_)
+    and: "each batch is saved at once"
+      1 * repo.saveAll({ it.size() == 2 })
+      1 * repo.saveAll({ it.size() == 1 })
+    and: "all tokens are added to the search index"
+      nfts.size() * facetIndex.add(_)
     and: "all tokens are removed from the queue"
       nfts.size() * queue.remove(_)
+    and: "the fetches are timed"
+      meterRegistry.timer("hem.esg.load.fetch").count() == nfts.size()
+  }
+
+  def "test that a record found in the same token is not mistaken for a queued nft"() {
+    given: "the following nfts are queued"
+      def nfts = [new Nft("0.0.1", 1), new Nft("0.0.2", 2)]
+      queue.list() >> nfts
+    when:
+      job.run()
+    then: "all nfts are locked"
+      nfts.size() * queue.lock(_) >> true
+    and: "the IN lookup also matches 0.0.1/2, which is not queued"
+      1 * repo.findByTokenIdInAndSerialNumberIn(_, _) >> [offset(nfts[0]), offset(new Nft("0.0.1", 2))]
+    and: "only the missing nft is fetched and saved"
+      1 * client.getNftAttributes("0.0.2", 2) >>
+          CompletableFuture.completedFuture(new EsgAttributes("0.0.2", 2, []))
+      1 * repo.saveAll({ it.size() == 1 && it[0].tokenId == "0.0.2" })
+    and: "both are removed from the queue"
+      1 * queue.remove(nfts[0])
+      1 * queue.remove(nfts[1])
   }
 
   def "test that unlock is called when something goes wrong"() {
     given: "the following tokens are queued"
       def nfts = [new Nft("0.0.1", 1), new Nft("0.0.1", 2)]
       queue.list() >> nfts
+      repo.findByTokenIdInAndSerialNumberIn(_, _) >> []
     and: "first token is successful"
-      repo.findByTokenIdAndSerialNumber(nfts[0].tokenId(), nfts[0].serialNumber()) >> new EsgOffset()
+      client.getNftAttributes(nfts[0].tokenId(), nfts[0].serialNumber()) >>
+          CompletableFuture.completedFuture(
+              new EsgAttributes(nfts[0].tokenId(), nfts[0].serialNumber(), []))
     and: "second token is not"
-      repo.findByTokenIdAndSerialNumber(nfts[1].tokenId(), nfts[1].serialNumber()) >> {
-        throw new Exception("something went wrong")
-      }
+      client.getNftAttributes(nfts[1].tokenId(), nfts[1].serialNumber()) >>
+          CompletableFuture.failedFuture(new RuntimeException("something went wrong"))
 
     when:
       job.run()
 
     then: "all tokens are locked"
-      nfts.size() * queue.lock(_)
-    and: "the successful one is removed"
+      nfts.size() * queue.lock(_) >> true
+    and: "the successful one is saved and removed"
+      1 * repo.saveAll({ it.size() == 1 })
       1 * queue.remove(nfts[0])
     and: "the unsuccessful one is unlocked to try again"
       1 * queue.unlock(nfts[1])
+      0 * queue.remove(nfts[1])
+    and: "the failure is counted"
+      meterRegistry.counter("hem.esg.load.failures").count() == 1
+  }
+
+  def "test that a failed save puts the whole batch back"() {
+    given: "the following tokens are queued"
+      def nfts = [new Nft("0.0.1", 1), new Nft("0.0.1", 2)]
+      queue.list() >> nfts
+      repo.findByTokenIdInAndSerialNumberIn(_, _) >> []
+      client.getNftAttributes(_, _) >> { tokenId, serialNumber ->
+        CompletableFuture.completedFuture(new EsgAttributes(tokenId, serialNumber, []))
+      }
+      repo.saveAll(_) >> { throw new RuntimeException("database is down") }
+
+    when:
+      job.run()
+
+    then: "all tokens are locked"
+      nfts.size() * queue.lock(_) >> true
+    and: "nothing is indexed or removed"
+      0 * facetIndex.add(_)
+      0 * queue.remove(_)
+    and: "every token is unlocked to try again"
+      nfts.size() * queue.unlock(_)
+  }
+
+  private static EsgOffset offset(Nft nft) {
+    def offset = new EsgOffset()
+    offset.tokenId = nft.tokenId()
+    offset.serialNumber = nft.serialNumber()
+    offset
   }
 }
@@ -20,6 +20,7 @@ import com.fasterxml.jackson.databind.ObjectMapper
 import com.tolamearth.marketplace.esg.db.EsgOffsetSearchRepo
 
 import static com.tolamearth.marketplace.common.CustomAssertions.assertContains
+import static com.tolamearth.marketplace.common.util.FutureHelpers.join
 import static com.tolamearth.marketplace.esg.db.KnownAttribute.PROJECT_CATEGORY
 import static com.tolamearth.marketplace.esg.db.KnownAttribute.PROJECT_COUNTRY
 import static com.tolamearth.marketplace.esg.db.KnownAttribute.PROJECT_NAME
@@ -35,9 +36,12 @@ import static org.mockito.Mockito.mock
 import static org.mockito.Mockito.times
 import static org.mockito.Mockito.verify
 import static org.mockito.Mockito.when
+import static java.util.concurrent.CompletableFuture.completedFuture
 
 import com.tolamearth.marketplace.common.error.HemException
+import com.tolamearth.marketplace.esg.EsgFacetIndex
 import com.tolamearth.marketplace.esg.EsgLoadQueue
+import com.tolamearth.marketplace.esg.EsgReadThrough
 import com.tolamearth.marketplace.esg.db.EsgOffsetRepo
 import com.tolamearth.marketplace.esg.db.KnownAttribute
 import com.tolamearth.marketplace.offset.Nft
@@ -47,6 +51,9 @@ import com.tolamearth.marketplace.armm.NftPrice
 import com.tolamearth.marketplace.esg.db.EsgOffset
 import com.tolamearth.marketplace.esg.db.EsgOffsetAttribute
 import com.tolamearth.marketplace.offset.db.OffsetRepo
+import java.util.concurrent.Executors
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
 
 class EsgControllerTest {
@@ -60,15 +67,29 @@ class EsgControllerTest {
   private final ArmmService armmService = mock(ArmmService)
   private final EsgLoadQueue queue = mock(EsgLoadQueue)
   private final EsgOffsetSearchRepo esgOffsetSearchRepo = mock(EsgOffsetSearchRepo)
+  private final EsgFacetIndex facetIndex = mock(EsgFacetIndex)
   private final ObjectMapper objectMapper = mock(ObjectMapper)
-  private final EsgController controller = new EsgController(offsetRepo, armmService, attributesRepo, queue, objectMapper, esgOffsetSearchRepo)
+  private final EsgReadThrough readThrough = mock(EsgReadThrough)
+  private final def executor = Executors.newCachedThreadPool()
+  private final EsgController controller = new EsgController(offsetRepo, armmService, attributesRepo, queue, objectMapper, esgOffsetSearchRepo, facetIndex, readThrough, executor)
+
+  @BeforeEach
+  void setup() {
+    when(readThrough.fetch(any())).thenReturn(completedFuture(null))
+    when(armmService.getPrices(any())).thenReturn(completedFuture([]))
+  }
+
+  @AfterEach
+  void cleanup() {
+    executor.shutdownNow()
+  }
 
   @Test
   void "test that an exception is thrown when esg record does not exist"() {
     when(attributesRepo.findByTokenIdAndSerialNumber(TOKEN_ID, SERIAL_NUMBER)).thenReturn(null)
 
     def exception = assertThrows(HemException,
-        () -> controller.load(new EsgRequest(TOKEN_ID, SERIAL_NUMBER)))
+        () -> join(controller.load(new EsgRequest(TOKEN_ID, SERIAL_NUMBER))))
     assertContains("ESG details", exception.message)
   }
 
@@ -77,7 +98,7 @@ class EsgControllerTest {
     when(attributesRepo.findByTokenIdAndSerialNumber(TOKEN_ID, SERIAL_NUMBER)).thenReturn(null)
 
     def exception = assertThrows(HemException,
-        () -> controller.load(new EsgRequest(TOKEN_ID, SERIAL_NUMBER)))
+        () -> join(controller.load(new EsgRequest(TOKEN_ID, SERIAL_NUMBER))))
 
     verify(queue).add(eq(NFT))
   }
@@ -88,28 +109,40 @@ class EsgControllerTest {
     when(queue.contains(eq(NFT))).thenReturn(true)
 
     def exception = assertThrows(HemException,
-        () -> controller.load(new EsgRequest(TOKEN_ID, SERIAL_NUMBER)))
+        () -> join(controller.load(new EsgRequest(TOKEN_ID, SERIAL_NUMBER))))
 
     verify(queue, times(0)).add(eq(NFT))
   }
 
+  @Test
+  void "test that a missing esg record is fetched through"() {
+    when(attributesRepo.findByTokenIdAndSerialNumber(TOKEN_ID, SERIAL_NUMBER)).thenReturn(null)
+    when(readThrough.fetch(eq(NFT))).thenReturn(completedFuture([:] as EsgOffset))
+
+    def exception = assertThrows(HemException,
+        () -> join(controller.load(new EsgRequest(TOKEN_ID, SERIAL_NUMBER))))
+
+    // got past the esg lookup
+    assertContains("ARMM", exception.message)
+    verify(queue).add(eq(NFT))
+  }
+
   @Test
   void "test that an exception is thrown when armm data does not return"() {
     when(attributesRepo.findByTokenIdAndSerialNumber(TOKEN_ID, SERIAL_NUMBER)).thenReturn([:] as EsgOffset)
-    when(armmService.getPrices(any())).thenReturn([])
     def exception = assertThrows(HemException,
-        () -> controller.load(new EsgRequest(TOKEN_ID, SERIAL_NUMBER)))
+        () -> join(controller.load(new EsgRequest(TOKEN_ID, SERIAL_NUMBER))))
     assertContains("ARMM", exception.message)
   }
 
   @Test
   void "test that an exception is thrown when offset data does not return"() {
     when(attributesRepo.findByTokenIdAndSerialNumber(TOKEN_ID, SERIAL_NUMBER)).thenReturn([:] as EsgOffset)
-    when(armmService.getPrices(any())).thenReturn([new NftPrice(NFT, 5, 10, null, null)])
+    when(armmService.getPrices(any())).thenReturn(completedFuture([new NftPrice(NFT, 5, 10, null, null)]))
     when(offsetRepo.findByTokenIdAndSerialNumber(eq(TOKEN_ID), eq(1))).thenReturn(null)
 
     def exception = assertThrows(HemException,
-        () -> controller.load(new EsgRequest(TOKEN_ID, 1)))
+        () -> join(controller.load(new EsgRequest(TOKEN_ID, 1))))
     assertContains("nft", exception.message)
   }
 
@@ -130,11 +163,11 @@ class EsgControllerTest {
     def offset = new Offset("0.0.5", nft, 5, null, null)
 
     when(attributesRepo.findByTokenIdAndSerialNumber(TOKEN_ID, SERIAL_NUMBER)).thenReturn(attributes)
-    when(armmService.getPrices([NFT])).thenReturn([nftPrice])
+    when(armmService.getPrices([NFT])).thenReturn(completedFuture([nftPrice]))
     when(offsetRepo.findByTokenIdAndSerialNumber(TOKEN_ID, 1)).thenReturn(offset)
 
     def request = new EsgRequest(TOKEN_ID, 1)
-    def result = controller.load(request)
+    def result = join(controller.load(request))
 
     def assertAttribute = {KnownAttribute attribute, String value ->
       return () -> assertEquals(attributes.getAttribute(attribute), value)
@@ -125,4 +125,44 @@ class TransactionMessageHandlerSpec extends Specification {
       }
   }
 
+  def "test that a validated transaction is published without calling the mirror node"() {
+    given: "a listing transaction that the validator already resolved"
+      def transaction = new PendingTransaction(5L, TXN_ID, TransactionTypeCode.LIST)
+      transaction.validated("12346.12346", ["consensus_timestamp": "12346.12346"])
+    and: "the transaction lists 600 nfts"
+      def offsets = (1..600).collect {
+        new Offset("0.0.1", new Nft("0.0.123", it), 5000, ListingState.LISTED, [])
+      }
+      repo.findAllByListingTransactionId(TXN_ID) >> offsets
+    and: "the event is passed"
+      MarketplaceEvent event
+
+    when: "handler is called"
+      handler.publish([transaction])
+
+    then: "the mirror node is never called"
+      0 * client.getTransaction(_)
+    and: "the event contains every nft with the validated timestamp"
+      1 * publisher.publish(_) >> { List<MarketplaceEvent> args ->
+        event = args[0];
+      }
+      event.transactionsCount == 600
+      event.transactionsList.every { it.transactionTime.seconds == 12346 && it.transactionTime.nanos == 12346 }
+  }
+
+  def "test that an unvalidated transaction fetches the timestamp once"() {
+    given: "a purchase transaction without a recorded timestamp"
+      def transaction = new PendingTransaction(5L, TXN_ID, TransactionTypeCode.PURCHASE)
+    and: "the transaction purchased several nfts"
+      def offsets = (1..3).collect {
+        new Offset("0.0.1", new Nft("0.0.123", it), null, ListingState.UNLISTED, [new OffsetListing(null, null, null, "0.0.2", null, 5000, null, TXN_ID, ListingTransactionState.PURCHASED, null, null)])
+      }
+      repo.findAllByPurchaseTransactionId(TXN_ID) >> offsets
+
+    when: "handler is called"
+      handler.publish([transaction])
+
+    then: "the mirror node is called once for the whole transaction"
+      1 * client.getTransaction(_) >> new MirrorNodeTransactionResponse([["consensus_timestamp": "12346.12346"]], null)
+  }
 }
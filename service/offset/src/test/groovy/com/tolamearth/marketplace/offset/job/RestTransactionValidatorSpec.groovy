@@ -75,4 +75,20 @@ class RestTransactionValidatorSpec extends Specification {
       [["consensus_timestamp": ""]]                 | 0
       [["consensus_timestamp": "123456789.012345"]] | 1
   }
+
+  def "test that the mirror node transaction is recorded on a valid transaction"() {
+    given: "transaction client responds with a consensus timestamp"
+      def mirrorNodeTransaction = ["consensus_timestamp": "123456789.012345"]
+      transactionClient.getTransaction(_) >> new MirrorNodeTransactionResponse([mirrorNodeTransaction], null)
+      listingTransactionRepo.updateById(_, _) >> 1
+    and: "a pending transaction"
+      def pendingTransaction = new PendingTransaction(5L, TXN_ID, TransactionTypeCode.LIST)
+
+    when: "validator is called"
+      validator.validate(pendingTransaction)
+
+    then: "the validation result is carried on the transaction"
+      pendingTransaction.consensusTimestamp == "123456789.012345"
+      pendingTransaction.mirrorNodeTransaction == mirrorNodeTransaction
+  }
 }
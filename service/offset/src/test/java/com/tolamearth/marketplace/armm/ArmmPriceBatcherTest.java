@@ -0,0 +1,91 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.armm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.tolamearth.marketplace.armm.ArmmPriceCacheTest.StubArmmClient;
+import com.tolamearth.marketplace.offset.Nft;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ArmmPriceBatcherTest {
+
+  private final StubArmmClient client = new StubArmmClient();
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+  @AfterEach
+  void cleanup() {
+    scheduler.shutdownNow();
+  }
+
+  @Test
+  void testLookupsInOneWindowShareOneCall() throws Exception {
+    var batcher = new ArmmPriceBatcher(client, scheduler, 200L, 600);
+
+    var futures = new ArrayList<CompletableFuture<Map<Nft, NftPrice>>>();
+    for (long serial = 1; serial <= 50; serial++) {
+      futures.add(batcher.getPrices(List.of(new Nft("0.0.1", serial))));
+    }
+    // the same nft requested twice in the window is only sent once
+    futures.add(batcher.getPrices(List.of(new Nft("0.0.1", 1L))));
+
+    for (int i = 0; i < 50; i++) {
+      var prices = futures.get(i).get();
+      assertEquals(1, prices.size());
+      assertEquals(10L, prices.get(new Nft("0.0.1", i + 1L)).maxPrice());
+    }
+    assertEquals(1, futures.get(50).get().size());
+    assertEquals(1, client.requests.size());
+    assertEquals(50, client.requests.get(0).size());
+  }
+
+  @Test
+  void testFullBatchIsSentWithoutWaiting() throws Exception {
+    var batcher = new ArmmPriceBatcher(client, scheduler, 50L, 2);
+
+    var nfts = LongStream.rangeClosed(1, 5).mapToObj(serial -> new Nft("0.0.1", serial)).toList();
+    var prices = batcher.getPrices(nfts).get();
+
+    assertEquals(5, prices.size());
+    assertEquals(List.of(2, 2, 1), client.requests.stream().map(List::size).toList());
+  }
+
+  @Test
+  void testFailureReachesEveryCaller() {
+    var batcher = new ArmmPriceBatcher(client, scheduler, 50L, 600);
+    client.down = true;
+
+    var first = batcher.getPrices(List.of(new Nft("0.0.1", 1L)));
+    var second = batcher.getPrices(List.of(new Nft("0.0.1", 2L)));
+
+    var exception = assertThrows(ExecutionException.class, first::get);
+    assertInstanceOf(IllegalStateException.class, exception.getCause());
+    assertThrows(ExecutionException.class, second::get);
+    assertEquals(1, client.requests.size());
+  }
+}
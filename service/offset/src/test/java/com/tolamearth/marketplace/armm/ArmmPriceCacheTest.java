@@ -0,0 +1,139 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.armm;
+
+import static com.tolamearth.marketplace.common.util.FutureHelpers.join;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.tolamearth.marketplace.armm.ArmmPriceResponse.ArmmNftPrice;
+import com.tolamearth.marketplace.offset.Nft;
+import com.tolamearth.marketplace.offset.NftIdCodec;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ArmmPriceCacheTest {
+
+  private static final Nft NFT_1 = new Nft("0.0.1", 1L);
+  private static final Nft NFT_2 = new Nft("0.0.1", 2L);
+  private static final Nft NFT_3 = new Nft("0.0.2", 1L);
+
+  private final StubArmmClient client = new StubArmmClient();
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  // without a window the batcher sends straight from the calling thread
+  private final ArmmPriceCache cache = new ArmmPriceCache(
+      new ArmmPriceBatcher(client, null, 0L, 600), meterRegistry, 100L, 300L);
+
+  @Test
+  void testOnlyMissesAreFetchedInOneCall() {
+    assertEquals(List.of(NFT_1, NFT_2), nfts(join(cache.getPrices(List.of(NFT_1, NFT_2)))));
+    assertEquals(List.of(NFT_3, NFT_1, NFT_2),
+        nfts(join(cache.getPrices(List.of(NFT_3, NFT_1, NFT_2)))));
+    assertEquals(List.of(NFT_2, NFT_3), nfts(join(cache.getPrices(List.of(NFT_2, NFT_3)))));
+
+    assertEquals(List.of(List.of(NFT_1, NFT_2), List.of(NFT_3)), client.sortedRequests());
+    assertEquals(4.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+    assertEquals(3.0, meterRegistry.get("cache.gets").tag("result", "miss").functionCounter().count());
+  }
+
+  @Test
+  void testErrorPricesAreNotCached() {
+    client.failing = NFT_2;
+
+    var prices = join(cache.getPrices(List.of(NFT_1, NFT_2)));
+    assertEquals("NOT_FOUND", prices.get(1).code());
+    client.failing = null;
+    var retried = join(cache.getPrices(List.of(NFT_1, NFT_2)));
+    assertNull(retried.get(1).code());
+
+    assertEquals(List.of(List.of(NFT_1, NFT_2), List.of(NFT_2)), client.sortedRequests());
+  }
+
+  @Test
+  void testUpstreamFailureIsRethrown() {
+    client.down = true;
+    assertThrows(IllegalStateException.class, () -> join(cache.getPrices(List.of(NFT_1))));
+    client.down = false;
+    assertEquals(List.of(NFT_1), nfts(join(cache.getPrices(List.of(NFT_1)))));
+  }
+
+  @Test
+  void testConcurrentMissesAreCoalesced() throws Exception {
+    client.release = new CompletableFuture<>();
+    var results = new ArrayList<CompletableFuture<List<NftPrice>>>();
+    // every request finds the pending fetch, none of them waits on a thread for ARMM
+    for (int i = 0; i < 4; i++) {
+      results.add(cache.getPrices(List.of(NFT_1)));
+    }
+    assertTrue(results.stream().noneMatch(CompletableFuture::isDone));
+
+    client.release.complete(null);
+    for (var result : results) {
+      assertEquals(List.of(NFT_1), nfts(result.get(5, TimeUnit.SECONDS)));
+    }
+    assertEquals(List.of(List.of(NFT_1)), client.sortedRequests());
+  }
+
+  private static List<Nft> nfts(List<NftPrice> prices) {
+    return prices.stream().map(NftPrice::nftId).toList();
+  }
+
+  /**
+   * Local ARMM that answers with fixed prices and records every request it receives
+   */
+  static class StubArmmClient implements ArmmClient {
+
+    final List<List<Nft>> requests = new CopyOnWriteArrayList<>();
+    volatile Nft failing;
+    volatile boolean down;
+    volatile CompletableFuture<Void> release;
+
+    @Override
+    public CompletableFuture<ArmmPriceResponse> getPrices(PriceRequest request) {
+      requests.add(request.actualNfts());
+      if (down) {
+        return CompletableFuture.failedFuture(new IllegalStateException("armm is down"));
+      }
+      var prices = request.actualNfts().stream()
+          .map(nft -> nft.equals(failing)
+              ? new ArmmNftPrice(NftIdCodec.format(nft), null, null, "NOT_FOUND",
+                  "unknown nft")
+              : new ArmmNftPrice(NftIdCodec.format(nft), 5L, 10L, null, null))
+          .toList();
+      var response = new ArmmPriceResponse(request.getNfts(), prices);
+      return release == null
+          ? CompletableFuture.completedFuture(response)
+          : release.thenApply(ignored -> response);
+    }
+
+    List<List<Nft>> sortedRequests() {
+      return requests.stream()
+          .map(nfts -> nfts.stream()
+              .sorted((a, b) -> (a.tokenId() + "-" + a.serialNumber())
+                  .compareTo(b.tokenId() + "-" + b.serialNumber()))
+              .toList())
+          .toList();
+    }
+  }
+}
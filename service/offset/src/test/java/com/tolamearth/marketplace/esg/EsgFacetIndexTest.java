@@ -0,0 +1,261 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.esg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.tolamearth.marketplace.esg.db.EsgOffset;
+import com.tolamearth.marketplace.esg.db.EsgOffsetAttribute;
+import com.tolamearth.marketplace.esg.db.EsgOffsetRepo;
+import com.tolamearth.marketplace.offset.Nft;
+import com.tolamearth.marketplace.offset.db.Listing;
+import com.tolamearth.marketplace.offset.db.ListingRepo;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class EsgFacetIndexTest {
+
+  private static final String TOKEN_ID = "0.0.100";
+  private static final String OWNER_ID = "0.0.5";
+
+  private final EsgOffsetRepo esgOffsetRepo = mock(EsgOffsetRepo.class);
+  private final ListingRepo listingRepo = mock(ListingRepo.class);
+  private final EsgFacetIndex index = new EsgFacetIndex(esgOffsetRepo, listingRepo, true);
+
+  @BeforeEach
+  void setup() {
+    var offsets = new ArrayList<EsgOffset>();
+    var listings = new ArrayList<Listing>();
+    offsets.add(esgOffset(1, "USA", "Solar", "2020"));
+    offsets.add(esgOffset(2, "USA", "Wind", "2021"));
+    offsets.add(esgOffset(3, "Kenya", "Solar", "2020"));
+    offsets.add(esgOffset(4, "USA", "Solar", "2021"));
+    for (long serialNumber = 1; serialNumber <= 4; serialNumber++) {
+      listings.add(new Listing(TOKEN_ID, serialNumber, OWNER_ID, "0.0.5@1660578633.201321688",
+          serialNumber * 100, 1L, null));
+    }
+    when(esgOffsetRepo.list()).thenReturn(offsets);
+    when(listingRepo.findByPurchaseTxnIdIsNull()).thenReturn(listings);
+    index.rebuild();
+  }
+
+  @Test
+  void testNotReadyUntilBuilt() {
+    var unbuilt = new EsgFacetIndex(esgOffsetRepo, listingRepo, true);
+    assertFalse(unbuilt.isReady());
+    assertTrue(index.isReady());
+  }
+
+  @Test
+  void testFailedBuildIsNotReady() {
+    when(esgOffsetRepo.list()).thenThrow(new RuntimeException("database unavailable"));
+    index.rebuild();
+    assertFalse(index.isReady());
+  }
+
+  @Test
+  void testEmptyParametersReturnAllListed() {
+    var results = index.search(Map.of(), null, null);
+    assertEquals(List.of(1L, 2L, 3L, 4L), serials(results));
+    var first = results.get(0);
+    assertEquals(OWNER_ID, first.ownerId());
+    assertEquals(100L, first.price());
+    assertEquals("USA", first.projectCountry());
+    assertEquals("Solar", first.projectType());
+    assertEquals("2020", first.vintage());
+  }
+
+  @Test
+  void testConjunctionAndDisjunction() {
+    assertEquals(List.of(1L, 4L), serials(index.search(Map.of(
+        "Project Country", List.of("USA"),
+        "Project Type", List.of("Solar")), null, null)));
+    assertEquals(List.of(1L, 3L), serials(index.search(Map.of(
+        "Project Country", List.of("USA", "Kenya"),
+        "Vintage", List.of("2020")), null, null)));
+    assertTrue(index.search(Map.of("Project Country", List.of("Peru")), null, null).isEmpty());
+    assertTrue(index.search(Map.of("Unknown Title", List.of("USA")), null, null).isEmpty());
+  }
+
+  @Test
+  void testPagination() {
+    var parameters = Map.of("Project Country", List.of("USA"));
+    assertEquals(List.of(1L, 2L), serials(index.search(parameters, 2, 0)));
+    assertEquals(List.of(4L), serials(index.search(parameters, 2, 2)));
+    assertTrue(index.search(parameters, 2, 4).isEmpty());
+  }
+
+  @Test
+  void testFacetCounts() {
+    var response = index.search(Map.of("Project Type", List.of("Solar")), 1, 0,
+        List.of("Project Country", "Vintage", "Project Region"));
+    assertEquals(List.of(1L), serials(response.offsetSummaries()));
+    assertEquals(Map.of(
+        "Project Country", Map.of("USA", 2, "Kenya", 1),
+        "Vintage", Map.of("2020", 2, "2021", 1),
+        "Project Region", Map.of()), response.facets());
+  }
+
+  @Test
+  void testNoFacetsRequested() {
+    assertNull(index.search(Map.of(), null, null, List.of()).facets());
+  }
+
+  @Test
+  void testListingChanges() {
+    var parameters = Map.of("Project Type", List.of("Solar"));
+    index.unlisted(new Nft(TOKEN_ID, 1L));
+    assertEquals(List.of(3L, 4L), serials(index.search(parameters, null, null)));
+
+    index.listed(new Nft(TOKEN_ID, 1L), "0.0.6", 500L);
+    var results = index.search(parameters, null, null);
+    assertEquals(List.of(1L, 3L, 4L), serials(results));
+    assertEquals("0.0.6", results.get(0).ownerId());
+    assertEquals(500L, results.get(0).price());
+  }
+
+  @Test
+  void testOffsetsWithoutAttributesAreNotReturned() {
+    index.listed(new Nft(TOKEN_ID, 5L), OWNER_ID, 100L);
+    assertEquals(List.of(1L, 2L, 3L, 4L), serials(index.search(Map.of(), null, null)));
+
+    index.add(esgOffset(5, "Peru", "Solar", "2022"));
+    assertEquals(List.of(5L),
+        serials(index.search(Map.of("Project Country", List.of("Peru")), null, null)));
+  }
+
+  @Test
+  void testRefreshListings() {
+    when(listingRepo.findByPurchaseTxnIdIsNull()).thenReturn(List.of(
+        new Listing(TOKEN_ID, 2L, OWNER_ID, "0.0.5@1660578633.201321688", 200L, 1L, null)));
+    index.refreshListings();
+    assertEquals(List.of(2L), serials(index.search(Map.of(), null, null)));
+  }
+
+  @Test
+  void testRefreshListingsReadsOutsideLock() {
+    when(listingRepo.findByPurchaseTxnIdIsNull()).thenAnswer(invocation -> {
+      // searches and listing changes go ahead while the listings are read
+      var search = CompletableFuture.supplyAsync(() -> index.search(Map.of(), null, null));
+      assertEquals(4, search.get(1, TimeUnit.SECONDS).size());
+      CompletableFuture.runAsync(() -> index.unlisted(new Nft(TOKEN_ID, 2L)))
+          .get(1, TimeUnit.SECONDS);
+      return List.of(
+          new Listing(TOKEN_ID, 2L, OWNER_ID, "0.0.5@1660578633.201321688", 200L, 1L, null),
+          new Listing(TOKEN_ID, 3L, OWNER_ID, "0.0.5@1660578633.201321688", 300L, 1L, null));
+    });
+
+    index.refreshListings();
+
+    assertEquals(List.of(3L), serials(index.search(Map.of(), null, null)));
+  }
+
+  @Test
+  void testRebuildOrdersOffsets() {
+    var offsets = new ArrayList<EsgOffset>();
+    var listings = new ArrayList<Listing>();
+    for (long serialNumber = 100; serialNumber > 0; serialNumber--) {
+      offsets.add(esgOffset(serialNumber, "USA", "Solar", "2020"));
+      listings.add(new Listing(TOKEN_ID, serialNumber, OWNER_ID, "0.0.5@1660578633.201321688",
+          100L, 1L, null));
+    }
+    when(esgOffsetRepo.list()).thenReturn(offsets);
+    when(listingRepo.findByPurchaseTxnIdIsNull()).thenReturn(listings);
+
+    index.rebuild();
+
+    assertEquals(LongStream.rangeClosed(1, 100).boxed().toList(),
+        serials(index.search(Map.of(), null, null)));
+  }
+
+  @Test
+  void testResultsOrderedLikeDatabase() {
+    index.add(esgOffset("0.0.99", 1, "USA", "Solar", "2020"));
+    index.add(esgOffset(TOKEN_ID, 0, "USA", "Solar", "2020"));
+    index.listed(new Nft("0.0.99", 1L), OWNER_ID, 100L);
+    index.listed(new Nft(TOKEN_ID, 0L), OWNER_ID, 100L);
+
+    var results = index.search(Map.of("Project Type", List.of("Solar")), null, null);
+    assertEquals(List.of(new Nft(TOKEN_ID, 0L), new Nft(TOKEN_ID, 1L), new Nft(TOKEN_ID, 3L),
+            new Nft(TOKEN_ID, 4L), new Nft("0.0.99", 1L)),
+        results.stream().map(EsgOffsetSummary::nft).toList());
+  }
+
+  @Test
+  void testRefreshPicksUpOtherInstances() {
+    var loadedElsewhere = esgOffset(5, "Peru", "Solar", "2022");
+    loadedElsewhere.setId(42L);
+    when(esgOffsetRepo.findByIdGreaterThan(0L)).thenReturn(List.of(loadedElsewhere));
+    when(listingRepo.findByPurchaseTxnIdIsNull()).thenReturn(List.of(
+        new Listing(TOKEN_ID, 5L, OWNER_ID, "0.0.5@1660578633.201321688", 500L, 1L, null)));
+
+    index.refresh();
+
+    assertEquals(List.of(5L), serials(index.search(Map.of(), null, null)));
+  }
+
+  @Test
+  void testRefreshRebuildsFailedIndex() {
+    when(esgOffsetRepo.list()).thenThrow(new RuntimeException("database unavailable"));
+    index.rebuild();
+    assertFalse(index.isReady());
+
+    doReturn(List.of(esgOffset(1, "USA", "Solar", "2020"))).when(esgOffsetRepo).list();
+    index.refresh();
+    assertTrue(index.isReady());
+  }
+
+  private static EsgOffset esgOffset(long serialNumber, String country, String type,
+      String vintage) {
+    return esgOffset(TOKEN_ID, serialNumber, country, type, vintage);
+  }
+
+  private static EsgOffset esgOffset(String tokenId, long serialNumber, String country,
+      String type, String vintage) {
+    var offset = new EsgOffset();
+    offset.setTokenId(tokenId);
+    offset.setSerialNumber(serialNumber);
+    offset.setAttributes(List.of(
+        attribute("Project Country", country),
+        attribute("Project Type", type),
+        attribute("Vintage", vintage)));
+    return offset;
+  }
+
+  private static EsgOffsetAttribute attribute(String title, String value) {
+    var attribute = new EsgOffsetAttribute();
+    attribute.setTitle(title);
+    attribute.setValue(value);
+    return attribute;
+  }
+
+  private static List<Long> serials(List<EsgOffsetSummary> summaries) {
+    return summaries.stream().map(summary -> summary.nft().serialNumber()).toList();
+  }
+}
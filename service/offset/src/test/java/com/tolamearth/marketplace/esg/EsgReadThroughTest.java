@@ -0,0 +1,129 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.esg;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tolamearth.marketplace.esg.db.EsgOffset;
+import com.tolamearth.marketplace.esg.db.EsgOffsetRepo;
+import com.tolamearth.marketplace.offset.Nft;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class EsgReadThroughTest {
+
+  private static final Nft NFT = new Nft("0.0.1", 1L);
+
+  private final EsgAttributeLoader loader = mock(EsgAttributeLoader.class);
+  private final EsgOffsetRepo attributesRepo = mock(EsgOffsetRepo.class);
+  private final EsgLoadQueue queue = mock(EsgLoadQueue.class);
+  private final EsgFacetIndex facetIndex = mock(EsgFacetIndex.class);
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @AfterEach
+  void cleanup() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void testConcurrentMissesShareOneFetch() throws Exception {
+    var readThrough = new EsgReadThrough(loader, attributesRepo, queue, facetIndex, executor,
+        true, 5000L);
+    var offset = new EsgOffset();
+    var release = new CompletableFuture<EsgOffset>();
+    when(queue.lock(NFT)).thenReturn(true);
+    when(loader.fetchAsync(NFT)).thenReturn(release);
+
+    var results = new ArrayList<CompletableFuture<EsgOffset>>();
+    for (int i = 0; i < 4; i++) {
+      results.add(readThrough.fetch(NFT));
+    }
+    release.complete(offset);
+    for (var result : results) {
+      assertSame(offset, result.get(5, TimeUnit.SECONDS));
+    }
+
+    verify(loader, timeout(1000).times(1)).fetchAsync(NFT);
+    verify(attributesRepo, timeout(1000)).save(offset);
+    verify(facetIndex, timeout(1000)).add(offset);
+    verify(queue, timeout(1000)).remove(NFT);
+  }
+
+  @Test
+  void testNotStoredWhenLoadJobHoldsTheLock() {
+    var readThrough = new EsgReadThrough(loader, attributesRepo, queue, facetIndex, executor,
+        true, 5000L);
+    var offset = new EsgOffset();
+    when(queue.lock(NFT)).thenReturn(false);
+    when(loader.fetchAsync(NFT)).thenReturn(CompletableFuture.completedFuture(offset));
+
+    assertSame(offset, readThrough.fetch(NFT).join());
+
+    verify(attributesRepo, never()).save(any());
+    verify(queue, never()).remove(any());
+  }
+
+  @Test
+  void testFailedFetchIsUnlocked() {
+    var readThrough = new EsgReadThrough(loader, attributesRepo, queue, facetIndex, executor,
+        true, 5000L);
+    when(queue.lock(NFT)).thenReturn(true);
+    when(loader.fetchAsync(NFT)).thenReturn(
+        CompletableFuture.failedFuture(new IllegalStateException("esg api is down")));
+
+    assertNull(readThrough.fetch(NFT).join());
+
+    verify(queue, timeout(1000)).unlock(NFT);
+    verify(attributesRepo, never()).save(any());
+  }
+
+  @Test
+  void testTimeoutReturnsNull() {
+    var readThrough = new EsgReadThrough(loader, attributesRepo, queue, facetIndex, executor,
+        true, 50L);
+    var release = new CompletableFuture<EsgOffset>();
+    when(queue.lock(NFT)).thenReturn(true);
+    when(loader.fetchAsync(NFT)).thenReturn(release);
+
+    assertNull(readThrough.fetch(NFT).join());
+    release.complete(new EsgOffset());
+    // the fetch is still stored once it completes
+    verify(attributesRepo, timeout(1000)).save(any());
+  }
+
+  @Test
+  void testDisabled() {
+    var readThrough = new EsgReadThrough(loader, attributesRepo, queue, facetIndex, executor,
+        false, 5000L);
+
+    assertNull(readThrough.fetch(NFT).join());
+
+    verify(loader, never()).fetchAsync(any());
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.esg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.tolamearth.marketplace.offset.Nft;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class InMemoryEsgLoadQueueTest {
+
+  private static final Nft NFT = new Nft("0.0.1", 1L);
+
+  private final InMemoryEsgLoadQueue queue = new InMemoryEsgLoadQueue();
+
+  @Test
+  void testLockLifecycle() {
+    assertTrue(queue.add(NFT));
+    assertFalse(queue.add(NFT));
+    assertTrue(queue.lock(NFT));
+    assertFalse(queue.lock(NFT));
+    assertEquals(List.of(), queue.list());
+    assertEquals(List.of(NFT), queue.list(false));
+    assertTrue(queue.unlock(NFT));
+    assertFalse(queue.unlock(NFT));
+    assertEquals(List.of(NFT), queue.list());
+    assertTrue(queue.remove(NFT));
+    assertFalse(queue.remove(NFT));
+    assertFalse(queue.lock(NFT));
+  }
+
+  @Test
+  void testConcurrentAddsAndLocks() throws InterruptedException {
+    var threads = 8;
+    var perThread = 1000;
+    var executor = Executors.newFixedThreadPool(threads);
+    var start = new CountDownLatch(1);
+    var added = new AtomicInteger();
+    var locked = new AtomicInteger();
+    for (int t = 0; t < threads; t++) {
+      executor.execute(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        // every thread races for the same nfts
+        for (long serial = 0; serial < perThread; serial++) {
+          var nft = new Nft("0.0.1", serial);
+          if (queue.add(nft)) {
+            added.incrementAndGet();
+          }
+          if (queue.lock(nft)) {
+            locked.incrementAndGet();
+          }
+        }
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+    assertEquals(perThread, added.get());
+    assertEquals(perThread, locked.get());
+    assertEquals(perThread, queue.list(false).size());
+    assertEquals(0, queue.list().size());
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.esg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.tolamearth.marketplace.common.IntegrationTest;
+import com.tolamearth.marketplace.esg.db.EsgLoadQueueRepo;
+import com.tolamearth.marketplace.offset.Nft;
+import io.micronaut.context.annotation.Property;
+import jakarta.inject.Inject;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+@Property(name = "hem.esg.queue.store", value = "jdbc")
+class JdbcEsgLoadQueueTest extends IntegrationTest {
+
+  private static final Nft NFT = new Nft("0.0.1", 1L);
+  private static final Nft OTHER_NFT = new Nft("0.0.2", 1L);
+
+  @Inject
+  EsgLoadQueue queue;
+  @Inject
+  EsgLoadQueueRepo repo;
+
+  @Test
+  void testJdbcQueueIsSelected() {
+    assertTrue(queue instanceof JdbcEsgLoadQueue);
+  }
+
+  @Test
+  void testLockLifecycle() {
+    assertTrue(queue.add(NFT));
+    assertFalse(queue.add(NFT));
+    assertTrue(queue.add(OTHER_NFT));
+    assertTrue(queue.contains(NFT));
+
+    assertTrue(queue.lock(NFT));
+    assertFalse(queue.lock(NFT));
+    assertEquals(List.of(OTHER_NFT), queue.list());
+    assertEquals(List.of(NFT, OTHER_NFT), queue.list(false));
+
+    assertTrue(queue.unlock(NFT));
+    assertFalse(queue.unlock(NFT));
+    assertEquals(List.of(NFT, OTHER_NFT), queue.list());
+
+    assertTrue(queue.remove(NFT));
+    assertFalse(queue.remove(NFT));
+    assertFalse(queue.contains(NFT));
+    assertFalse(queue.lock(NFT));
+  }
+
+  @Test
+  void testAbandonedLockCanBeClaimed() {
+    queue.add(NFT);
+    assertEquals(1, repo.updateLockIfAvailable(NFT.tokenId(), NFT.serialNumber(), 1L, 0L));
+    // locked at 1ms after the epoch, far beyond the lock timeout
+    assertEquals(List.of(NFT), queue.list());
+    assertTrue(queue.lock(NFT));
+    assertFalse(queue.lock(NFT));
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.esg.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.tolamearth.marketplace.common.IntegrationTest;
+import com.tolamearth.marketplace.esg.EsgOffsetSummary;
+import com.tolamearth.marketplace.offset.db.Listing;
+import com.tolamearth.marketplace.offset.db.ListingRepo;
+import jakarta.inject.Inject;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class EsgOffsetSearchRepoTest extends IntegrationTest {
+
+  private static final String TOKEN_ID = "0.0.100";
+
+  @Inject
+  EsgOffsetSearchRepo searchRepo;
+  @Inject
+  EsgOffsetRepo esgOffsetRepo;
+  @Inject
+  ListingRepo listingRepo;
+
+  @BeforeEach
+  void setup() {
+    save(1, "USA", "Solar", "2020", null);
+    save(2, "USA", "Wind", "2021", null);
+    save(3, "Kenya", "Solar", "2020", null);
+    save(4, "USA", "Solar", "2021", null);
+    save(5, "USA", "Solar", "2020", "0.0.9@1660578633.201321688"); // purchased
+  }
+
+  @Test
+  void testEmptyParametersReturnAllListed() {
+    var results = searchRepo.findByParameters(Map.of());
+    assertEquals(List.of(1L, 2L, 3L, 4L), serials(results));
+  }
+
+  @Test
+  void testConjunctionOfTitles() {
+    var results = searchRepo.findByParameters(Map.of(
+        "Project Country", List.of("USA"),
+        "Project Type", List.of("Solar")));
+    assertEquals(List.of(1L, 4L), serials(results));
+    results.forEach(summary -> {
+      assertEquals("USA", summary.projectCountry());
+      assertEquals("Solar", summary.projectType());
+    });
+  }
+
+  @Test
+  void testDisjunctionOfValues() {
+    var results = searchRepo.findByParameters(Map.of(
+        "Project Country", List.of("USA", "Kenya"),
+        "Vintage", List.of("2020")));
+    assertEquals(List.of(1L, 3L), serials(results));
+  }
+
+  @Test
+  void testNoMatch() {
+    assertTrue(searchRepo.findByParameters(Map.of("Project Country", List.of("Peru"))).isEmpty());
+  }
+
+  @Test
+  void testPagination() {
+    var parameters = Map.of("Project Country", List.of("USA"));
+    assertEquals(List.of(1L, 2L), serials(searchRepo.findByParameters(parameters, 2, 0)));
+    assertEquals(List.of(4L), serials(searchRepo.findByParameters(parameters, 2, 2)));
+    assertTrue(searchRepo.findByParameters(parameters, 2, 4).isEmpty());
+  }
+
+  @Test
+  void testFacetCounts() {
+    var response = searchRepo.findWithFacetCounts(Map.of("Project Type", List.of("Solar")),
+        null, null, List.of("Project Country", "Vintage", "Project Region"));
+    assertEquals(List.of(1L, 3L, 4L), serials(response.offsetSummaries()));
+    assertEquals(Map.of(
+        "Project Country", Map.of("USA", 2, "Kenya", 1),
+        "Vintage", Map.of("2020", 2, "2021", 1),
+        "Project Region", Map.of()), response.facets());
+  }
+
+  @Test
+  void testFacetCountsCoverAllPages() {
+    var response = searchRepo.findWithFacetCounts(Map.of("Project Country", List.of("USA")),
+        2, 2, List.of("Vintage"));
+    assertEquals(List.of(4L), serials(response.offsetSummaries()));
+    assertEquals("Solar", response.offsetSummaries().get(0).projectType());
+    assertEquals(Map.of("Vintage", Map.of("2020", 1, "2021", 2)), response.facets());
+  }
+
+  private void save(long serialNumber, String country, String type, String vintage,
+      String purchaseTxnId) {
+    listingRepo.save(new Listing(TOKEN_ID, serialNumber, "0.0.5", "0.0.5@1660578633.201321688",
+        100L, 1L, purchaseTxnId));
+    var offset = new EsgOffset();
+    offset.setTokenId(TOKEN_ID);
+    offset.setSerialNumber(serialNumber);
+    offset.setAttributes(List.of(
+        attribute("Project Country", country),
+        attribute("Project Type", type),
+        attribute("Vintage", vintage)));
+    esgOffsetRepo.save(offset);
+  }
+
+  private static EsgOffsetAttribute attribute(String title, String value) {
+    var attribute = new EsgOffsetAttribute();
+    attribute.setTitle(title);
+    attribute.setDescription(title);
+    attribute.setValue(value);
+    attribute.setType("string");
+    attribute.setSchemaId("schema");
+    attribute.setSchemaName("schema");
+    return attribute;
+  }
+
+  private static List<Long> serials(List<EsgOffsetSummary> summaries) {
+    return summaries.stream().map(summary -> summary.nft().serialNumber()).toList();
+  }
+}
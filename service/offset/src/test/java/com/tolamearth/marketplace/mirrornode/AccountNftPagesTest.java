@@ -0,0 +1,105 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.mirrornode;
+
+import static com.tolamearth.marketplace.common.util.FutureHelpers.join;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tolamearth.marketplace.mirrornode.MirrorNodeClient.MirrorNodeTokenResponse;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class AccountNftPagesTest {
+
+  private static final String SECOND = "/accounts/0.0.1/nfts?limit=2&serialnumber=gt:2";
+  private static final String THIRD = "/accounts/0.0.1/nfts?limit=2&serialnumber=gt:4";
+
+  private final MirrorNodeClient client = mock(MirrorNodeClient.class);
+
+  @BeforeEach
+  void setup() {
+    when(client.getTokens(SECOND)).thenReturn(completedFuture(page(3, 2, "/api/v1" + THIRD)));
+    when(client.getTokens(THIRD)).thenReturn(completedFuture(page(5, 1, null)));
+  }
+
+  @Test
+  @DisplayName("The next page is only requested when the walk asks for it")
+  void testNextPageIsLazy() {
+    var first = join(
+        AccountNftPages.first(client, completedFuture(page(1, 2, "/api/v1" + SECOND))));
+
+    assertEquals(List.of(1L, 2L), serials(first.nfts()));
+    assertTrue(first.hasNext());
+    verify(client, never()).getTokens(anyString());
+
+    var second = join(first.next());
+    assertEquals(List.of(3L, 4L), serials(second.nfts()));
+    verify(client).getTokens(SECOND);
+    verify(client, never()).getTokens(THIRD);
+
+    var third = join(second.next());
+    assertEquals(List.of(5L), serials(third.nfts()));
+    assertFalse(third.hasNext());
+  }
+
+  @Test
+  @DisplayName("Collecting without a limit follows links.next to the last page")
+  void testCollectFollowsNextLinks() {
+    var serials = join(AccountNftPages.collect(client,
+        completedFuture(page(1, 2, "/api/v1" + SECOND)), null, MirrorNodeNft::serialNumber));
+
+    assertEquals(List.of(1L, 2L, 3L, 4L, 5L), serials);
+    verify(client).getTokens(SECOND);
+    verify(client).getTokens(THIRD);
+  }
+
+  @Test
+  @DisplayName("Collecting stops requesting pages once the limit is covered")
+  void testCollectStopsAtLimit() {
+    var serials = join(AccountNftPages.collect(client,
+        completedFuture(page(1, 2, "/api/v1" + SECOND)), 3, MirrorNodeNft::serialNumber));
+
+    assertEquals(List.of(1L, 2L, 3L), serials);
+    verify(client).getTokens(SECOND);
+    verify(client, never()).getTokens(THIRD);
+  }
+
+  private static List<Long> serials(List<MirrorNodeNft> nfts) {
+    return nfts.stream().map(MirrorNodeNft::serialNumber).toList();
+  }
+
+  private static MirrorNodeTokenResponse page(long firstSerial, int size, String next) {
+    var nfts = LongStream.range(firstSerial, firstSerial + size)
+        .mapToObj(serial -> new MirrorNodeNft("0.0.1", null, null, null, null, serial, "0.0.2"))
+        .toList();
+    var links = new HashMap<String, String>();
+    links.put("next", next);
+    return new MirrorNodeTokenResponse(nfts, links);
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.mirrornode;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.failedFuture;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tolamearth.marketplace.common.HederaAccount;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class CachingAccountServiceTests {
+
+  private static final HederaAccount ACCOUNT = new HederaAccount("0.0.1");
+
+  private final AccountService delegate = mock(AccountService.class);
+  private final AtomicLong nanos = new AtomicLong();
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final AccountService service = new CachingAccountService(delegate, meterRegistry, 100L,
+      3600L, 30L, nanos::get);
+
+  @Test
+  @DisplayName("A valid account is only looked up once within the ttl")
+  void testValidAccountIsCached() {
+    when(delegate.isAccountValidAsync(any())).thenReturn(completedFuture(true));
+
+    assertTrue(service.isAccountValid(ACCOUNT));
+    advanceSeconds(3599);
+    assertTrue(service.isAccountValid(new HederaAccount("0.0.1")));
+    verify(delegate, times(1)).isAccountValidAsync(any());
+
+    advanceSeconds(2);
+    assertTrue(service.isAccountValid(ACCOUNT));
+    verify(delegate, times(2)).isAccountValidAsync(any());
+    assertEquals(1.0 / 3, meterRegistry.get("hem.accounts.valid.hit.ratio").gauge().value(),
+        0.001);
+  }
+
+  @Test
+  @DisplayName("An unknown account is asked for again after the short negative ttl")
+  void testUnknownAccountIsCachedBriefly() {
+    when(delegate.isAccountValidAsync(any()))
+        .thenReturn(completedFuture(false), completedFuture(true));
+
+    assertFalse(service.isAccountValid(ACCOUNT));
+    advanceSeconds(29);
+    assertFalse(service.isAccountValid(ACCOUNT));
+    verify(delegate, times(1)).isAccountValidAsync(any());
+
+    advanceSeconds(2);
+    assertTrue(service.isAccountValid(ACCOUNT));
+    verify(delegate, times(2)).isAccountValidAsync(any());
+  }
+
+  @Test
+  @DisplayName("A failed lookup is not cached")
+  void testFailureIsNotCached() {
+    when(delegate.isAccountValidAsync(any())).thenReturn(
+        failedFuture(new IllegalStateException("mirror node is down")), completedFuture(true));
+
+    assertThrows(IllegalStateException.class, () -> service.isAccountValid(ACCOUNT));
+    assertTrue(service.isAccountValid(ACCOUNT));
+    verify(delegate, times(2)).isAccountValidAsync(any());
+  }
+
+  private void advanceSeconds(long seconds) {
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+  }
+}
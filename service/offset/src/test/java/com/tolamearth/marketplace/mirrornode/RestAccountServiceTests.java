@@ -18,14 +18,21 @@ package com.tolamearth.marketplace.mirrornode;
 
 
 import static com.tolamearth.marketplace.common.ListingOrder.ASC;
+import static com.tolamearth.marketplace.common.util.FutureHelpers.join;
 import static java.util.Collections.emptyList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.failedFuture;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.tolamearth.marketplace.common.HederaAccount;
@@ -33,8 +40,10 @@ import com.tolamearth.marketplace.mirrornode.MirrorNodeClient.MirrorNodeAccountR
 import com.tolamearth.marketplace.mirrornode.MirrorNodeClient.MirrorNodeTokenResponse;
 
 import io.micronaut.http.client.exceptions.HttpClientException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.LongStream;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
@@ -47,7 +56,7 @@ public class RestAccountServiceTests {
   @DisplayName("isAccountValid returns false on an empty response")
   void testIsAccountValidWithNoResults() {
     when(mockClient.getAccount(any())).thenReturn(
-        new MirrorNodeAccountResponse(emptyList(), null));
+        completedFuture(new MirrorNodeAccountResponse(emptyList(), null)));
     assertFalse(service.isAccountValid(new HederaAccount("0.0.1")));
   }
 
@@ -56,14 +65,14 @@ public class RestAccountServiceTests {
   void testIsAccountValidWithResults() {
     var account = Map.of("accountId", "0.0.1");
     when(mockClient.getAccount(any())).thenReturn(
-        new MirrorNodeAccountResponse(List.of(account), null));
+        completedFuture(new MirrorNodeAccountResponse(List.of(account), null)));
     assertTrue(service.isAccountValid(new HederaAccount("0.0.1")));
   }
 
   @Test
   @DisplayName("isAccountValid lets exception bubble up")
   void testIsAccountValidWithException() {
-    when(mockClient.getAccount(any())).thenThrow(new HttpClientException("test"));
+    when(mockClient.getAccount(any())).thenReturn(failedFuture(new HttpClientException("test")));
     try {
       service.isAccountValid(new HederaAccount("0.0.1"));
       fail("Exception should bubble up");
@@ -76,8 +85,8 @@ public class RestAccountServiceTests {
   @DisplayName("fetchOffsets returns empty list on an empty response")
   void testFetchOffsetsWithNoResults() {
     when(mockClient.getTokens(any(), any(), any(), any())).thenReturn(
-        new MirrorNodeTokenResponse(emptyList(), null));
-    var result = service.fetchOffsets(new HederaAccount("0.0.1"), null, 25, ASC);
+        completedFuture(new MirrorNodeTokenResponse(emptyList(), null)));
+    var result = join(service.fetchOffsets(new HederaAccount("0.0.1"), null, 25, ASC));
     assertNotNull(result);
     assertTrue(result.isEmpty());
   }
@@ -86,8 +95,8 @@ public class RestAccountServiceTests {
   @DisplayName("fetchOffsets returns offsets when there's something in the list")
   void testFetchOffsetsWithResults() {
     when(mockClient.getTokens(any(),any(), any(), any())).thenReturn(
-        new MirrorNodeTokenResponse(List.of(new MirrorNodeNft("0.0.1", null, null, null, null, 2L, "0.0.2")), null));
-    var result = service.fetchOffsets(new HederaAccount("0.0.1"), null, 25, ASC);
+        completedFuture(new MirrorNodeTokenResponse(List.of(new MirrorNodeNft("0.0.1", null, null, null, null, 2L, "0.0.2")), null)));
+    var result = join(service.fetchOffsets(new HederaAccount("0.0.1"), null, 25, ASC));
     assertNotNull(result);
     assertFalse(result.isEmpty());
     assertEquals("0.0.2", result.get(0).nft().tokenId());
@@ -97,10 +106,10 @@ public class RestAccountServiceTests {
   @Test
   @DisplayName("fetchOffsets lets exception bubble up")
   void testFetchOffsetsWithException() {
-    when(mockClient.getTokens(any(),any(), any(), any())).thenThrow(
-        new HttpClientException("test"));
+    when(mockClient.getTokens(any(),any(), any(), any())).thenReturn(
+        failedFuture(new HttpClientException("test")));
     try {
-      service.fetchOffsets(new HederaAccount("0.0.1"), null, 25, ASC);
+      join(service.fetchOffsets(new HederaAccount("0.0.1"), null, 25, ASC));
       fail("Exception should bubble up");
     } catch (Exception e) {
       assertEquals(HttpClientException.class, e.getClass());
@@ -111,10 +120,81 @@ public class RestAccountServiceTests {
   @DisplayName("fetchOffsets lets exception bubble up")
   void testFetchOffsetsWithInvalidTokenId() {
     try {
-      service.fetchOffsets(new HederaAccount("0.0.1"), "0.0.1", 25, ASC);
+      join(service.fetchOffsets(new HederaAccount("0.0.1"), "0.0.1", 25, ASC));
       fail("Exception should bubble up");
     } catch (Exception e) {
       assertEquals(IllegalArgumentException.class, e.getClass());
     }
   }
+
+  @Test
+  @DisplayName("fetchOffsets follows the next links until the limit is reached")
+  void testFetchOffsetsFollowsNextLinks() {
+    var firstNext =
+        "/api/v1/accounts/0.0.1/nfts?limit=100&order=asc&token.id=lte:0.0.2&serialnumber=lt:101";
+    when(mockClient.getTokens(any(), any(), eq(100), any()))
+        .thenReturn(completedFuture(page(1, 100, firstNext)));
+    when(mockClient.getTokens(firstNext.substring("/api/v1".length())))
+        .thenReturn(
+            completedFuture(page(101, 100, "/api/v1/accounts/0.0.1/nfts?serialnumber=lt:201")));
+    when(mockClient.getTokens("/accounts/0.0.1/nfts?serialnumber=lt:201"))
+        .thenReturn(
+            completedFuture(page(201, 100, "/api/v1/accounts/0.0.1/nfts?serialnumber=lt:301")));
+
+    var result = join(service.fetchOffsets(new HederaAccount("0.0.1"), null, 250, ASC));
+
+    assertEquals(250, result.size());
+    assertEquals(1L, result.get(0).nft().serialNumber());
+    assertEquals(250L, result.get(249).nft().serialNumber());
+    verify(mockClient, never()).getTokens("/accounts/0.0.1/nfts?serialnumber=lt:301");
+  }
+
+  @Test
+  @DisplayName("fetchOffsets does not request another page when the first one covers the limit")
+  void testFetchOffsetsStopsAtLimit() {
+    when(mockClient.getTokens(any(), any(), eq(25), any())).thenReturn(
+        completedFuture(page(1, 25, "/api/v1/accounts/0.0.1/nfts?serialnumber=lt:26")));
+
+    var result = join(service.fetchOffsets(new HederaAccount("0.0.1"), null, 25, ASC));
+
+    assertEquals(25, result.size());
+    verify(mockClient, never()).getTokens(anyString());
+  }
+
+  @Test
+  @DisplayName("fetchOffsets stops when there is no next link")
+  void testFetchOffsetsStopsWithoutNextLink() {
+    when(mockClient.getTokens(any(), any(), any(), any())).thenReturn(
+        completedFuture(page(1, 100, "/api/v1/accounts/0.0.1/nfts?serialnumber=lt:101")));
+    when(mockClient.getTokens("/accounts/0.0.1/nfts?serialnumber=lt:101"))
+        .thenReturn(completedFuture(page(101, 10, null)));
+
+    var result = join(service.fetchOffsets(new HederaAccount("0.0.1"), null, 500, ASC));
+
+    assertEquals(110, result.size());
+  }
+
+  @Test
+  @DisplayName("fetchOffsets lets exception of a later page bubble up")
+  void testFetchOffsetsWithExceptionOnLaterPage() {
+    when(mockClient.getTokens(any(), any(), any(), any())).thenReturn(
+        completedFuture(page(1, 100, "/api/v1/accounts/0.0.1/nfts?serialnumber=lt:101")));
+    when(mockClient.getTokens(anyString())).thenReturn(
+        failedFuture(new HttpClientException("test")));
+    try {
+      join(service.fetchOffsets(new HederaAccount("0.0.1"), null, 200, ASC));
+      fail("Exception should bubble up");
+    } catch (Exception e) {
+      assertEquals(HttpClientException.class, e.getClass());
+    }
+  }
+
+  private static MirrorNodeTokenResponse page(long firstSerial, int size, String next) {
+    var nfts = LongStream.range(firstSerial, firstSerial + size)
+        .mapToObj(serial -> new MirrorNodeNft("0.0.1", null, null, null, null, serial, "0.0.2"))
+        .toList();
+    var links = new HashMap<String, String>();
+    links.put("next", next);
+    return new MirrorNodeTokenResponse(nfts, links);
+  }
 }
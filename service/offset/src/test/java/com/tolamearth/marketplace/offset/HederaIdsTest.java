@@ -0,0 +1,130 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.tolamearth.marketplace.offset.HederaIds.ConsensusTime;
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class HederaIdsTest {
+
+  /**
+   * The expression PendingTransaction used before, kept as the reference grammar
+   */
+  private static final Pattern HEDERA_TXN_ID = Pattern.compile(
+      "(\\d+\\.\\d+\\.\\d+)@(\\d+\\.\\d+)(?:/\\d+)?(?:/?\\?schedule)?", Pattern.CASE_INSENSITIVE);
+
+  private static final String[] FRAGMENTS = {"0", "1", "42", "0.0.2252", ".", "@", "/", "?",
+      "schedule", "SCHEDULE", "sChEdUlE", "?schedule", "/?schedule", "x", "-", "ſ", " "};
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "0.0.2252@1640075693.891386528",
+      "0.0.2252@1640075693.891386528/1",
+      "0.0.2252@1640075693.891386528/12?schedule",
+      "0.0.2252@1640075693.891386528/12/?schedule",
+      "0.0.9401@1602138343.335616988?SCHEDULE",
+      "0.0.9401@1602138343.335616988/?schedule"})
+  void testAccepted(String txnId) {
+    assertEquals(reference(txnId), HederaIds.toMirrorNodeTxnId(txnId));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "0.0.2252", "0.0.2252@", "0.0.2252@1640075693",
+      "0.0.2252@1640075693.", "0.0@1640075693.891386528", "0.0.2252@1640075693.891386528/",
+      "0.0.2252@1640075693.891386528/1/2", "0.0.2252@1640075693.891386528?schedule/1",
+      "0.0.2252@1640075693.891386528?schedulex", "0.0.2252@1640075693.891386528//?schedule",
+      "0.0.2252@1640075693.891386528?ſchedule", "0.0.2252@1640075693.891386528 "})
+  void testRejected(String txnId) {
+    assertThrows(IllegalArgumentException.class, () -> HederaIds.toMirrorNodeTxnId(txnId));
+  }
+
+  @Test
+  void testFuzzAgainstReferenceGrammar() {
+    // fixed seed so a failure can be reproduced
+    var random = new Random(20221018L);
+    for (int i = 0; i < 50_000; i++) {
+      var txnId = random.nextInt(3) == 0 ? randomFragments(random) : mutatedValidId(random);
+      var expected = reference(txnId);
+      if (expected == null) {
+        assertThrows(IllegalArgumentException.class, () -> HederaIds.toMirrorNodeTxnId(txnId),
+            txnId);
+      } else {
+        assertEquals(expected, HederaIds.toMirrorNodeTxnId(txnId), txnId);
+      }
+    }
+  }
+
+  @Test
+  void testConsensusTime() {
+    assertEquals(new ConsensusTime(1640075693L, 891386528),
+        HederaIds.parseConsensusTime("1640075693.891386528"));
+    assertEquals(new ConsensusTime(12346L, 12346), HederaIds.parseConsensusTime("12346.12346"));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "1640075693", "1640075693.", ".891386528", "1.2.3", "1.1000000000",
+      "-1.5", "1.x"})
+  void testInvalidConsensusTime(String timestamp) {
+    assertThrows(IllegalArgumentException.class, () -> HederaIds.parseConsensusTime(timestamp));
+  }
+
+  private static String reference(String txnId) {
+    var matcher = HEDERA_TXN_ID.matcher(txnId);
+    return matcher.matches() ? matcher.group(1) + "-" + matcher.group(2).replace('.', '-') : null;
+  }
+
+  private static String randomFragments(Random random) {
+    var builder = new StringBuilder();
+    int count = random.nextInt(8);
+    for (int i = 0; i < count; i++) {
+      builder.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * A valid id with one fragment inserted, or a character removed, at a random position
+   */
+  private static String mutatedValidId(Random random) {
+    var builder = new StringBuilder()
+        .append(random.nextInt(3)).append('.').append(random.nextInt(3)).append('.')
+        .append(random.nextInt(100_000)).append('@')
+        .append(random.nextInt(Integer.MAX_VALUE)).append('.').append(random.nextInt(1_000_000_000));
+    if (random.nextBoolean()) {
+      builder.append('/').append(random.nextInt(10));
+    }
+    if (random.nextBoolean()) {
+      builder.append(random.nextBoolean() ? "/?schedule" : "?Schedule");
+    }
+    switch (random.nextInt(3)) {
+      case 0 -> builder.insert(random.nextInt(builder.length() + 1),
+          FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+      case 1 -> builder.deleteCharAt(random.nextInt(builder.length()));
+      default -> {
+        // left valid
+      }
+    }
+    return builder.toString();
+  }
+}
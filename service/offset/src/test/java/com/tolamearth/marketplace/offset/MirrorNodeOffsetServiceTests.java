@@ -17,22 +17,35 @@
 package com.tolamearth.marketplace.offset;
 
 import static com.tolamearth.marketplace.common.ListingOrder.ASC;
+import static com.tolamearth.marketplace.common.ListingOrder.DESC;
+import static com.tolamearth.marketplace.common.util.FutureHelpers.join;
 import static java.util.Collections.emptyList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.tolamearth.marketplace.common.HederaAccount;
 import com.tolamearth.marketplace.common.error.HemException;
 import com.tolamearth.marketplace.mirrornode.AccountService;
 import com.tolamearth.marketplace.offset.db.OffsetRepo;
+import com.tolamearth.marketplace.offset.db.OffsetRepo.PendingReceipt;
+import com.tolamearth.marketplace.smartcontract.ContractCall;
 import com.tolamearth.marketplace.smartcontract.TransactionService;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
@@ -42,6 +55,10 @@ class MirrorNodeOffsetServiceTests {
   private final OffsetRepo offsetRepo = mock(OffsetRepo.class);
     private final TransactionService transactionService = mock(TransactionService.class);
 
+  private static final String TRANSACTION_ID = "0.0.1@1658439475.570410603";
+  private static final String CONTRACT_TXN_ID = "0.0.2@1658439475.570410604";
+  private static final List<PricedNft> PRICED_NFTS = List.of(new PricedNft("0.0.2", 2L, 100L));
+
   private final HederaAccount account = new HederaAccount("0.0.1");
   private final Integer limit = 3;
 
@@ -54,15 +71,27 @@ class MirrorNodeOffsetServiceTests {
           OffsetTestUtil.createOffset(account.getId(), 10, 100L))
  );
 
+  private final ExecutorService executor = Executors.newCachedThreadPool();
   private final MirrorNodeOffsetService service =
-      new MirrorNodeOffsetService(mockAccountService, offsetRepo, transactionService);
+      new MirrorNodeOffsetService(mockAccountService, offsetRepo, transactionService,
+          500, false, executor);
+  private final MirrorNodeOffsetService asyncService =
+      new MirrorNodeOffsetService(mockAccountService, offsetRepo, transactionService,
+          500, true, executor);
+
+  @AfterEach
+  void cleanup() {
+    executor.shutdownNow();
+  }
 
   @Test
   @DisplayName("An invalid account will throw an error")
   void testInvalidAccountThrowsException() {
-    when(mockAccountService.isAccountValid(any())).thenReturn(false);
+    when(mockAccountService.isAccountValidAsync(any())).thenReturn(completedFuture(false));
+    when(mockAccountService.fetchOffsets(any(), any(), any(), any()))
+        .thenReturn(completedFuture(emptyList()));
     try {
-      service.fetchOffsets(account, null, limit, ASC, ListingState.ALL);
+      join(service.fetchOffsets(account, null, limit, ASC, ListingState.ALL));
       fail("Exception should have been thrown");
     } catch (Exception e) {
       assertEquals(HemException.class, e.getClass());
@@ -74,14 +103,143 @@ class MirrorNodeOffsetServiceTests {
   @Test
   @DisplayName("A valid account with no nfts will return an empty list")
   void testNoTokensReturned() {
-    when(mockAccountService.isAccountValid(any())).thenReturn(true);
-    when(mockAccountService.fetchOffsets(any(), any(), any(), any())).thenReturn(emptyList());
+    when(mockAccountService.isAccountValidAsync(any())).thenReturn(completedFuture(true));
+    when(mockAccountService.fetchOffsets(any(), any(), any(), any()))
+        .thenReturn(completedFuture(emptyList()));
 
-    List<ListingStateOffset> result = service.fetchOffsets(account, null, limit, ASC, ListingState.ALL);
+    List<ListingStateOffset> result =
+        join(service.fetchOffsets(account, null, limit, ASC, ListingState.ALL));
     assertNotNull(result);
     assertTrue(result.isEmpty());
   }
 
+  @Test
+  @DisplayName("Listed and unlisted offsets are merged in order without duplicates")
+  void testListedAndUnlistedAreMerged() {
+    when(mockAccountService.isAccountValidAsync(any())).thenReturn(completedFuture(true));
+    when(mockAccountService.fetchOffsets(any(), any(), any(), any())).thenReturn(
+        completedFuture(List.of(
+            OffsetTestUtil.createOffset(account.getId(), 2, null),
+            OffsetTestUtil.createOffset(account.getId(), 3, null),
+            OffsetTestUtil.createOffset(account.getId(), 10, null))));
+    when(offsetRepo.findCurrentlyListedByOwnerId(account.getId())).thenReturn(List.of(
+        listed(10), listed(3)));
+
+    var result = join(service.fetchOffsets(account, null, 10, ASC, ListingState.ALL));
+
+    assertEquals(List.of("0.0.2/UNLISTED", "0.0.3/LISTED", "0.0.10/LISTED"), describe(result));
+  }
+
+  @Test
+  @DisplayName("Merging stops at the limit and follows the order")
+  void testMergeLimitAndOrder() {
+    var listed = List.of(state(ListingState.LISTED, 4), state(ListingState.LISTED, 1));
+    var unlisted = List.of(state(ListingState.UNLISTED, 5), state(ListingState.UNLISTED, 4),
+        state(ListingState.UNLISTED, 2));
+
+    assertEquals(List.of("0.0.1/LISTED", "0.0.2/UNLISTED", "0.0.4/LISTED"),
+        describe(MirrorNodeOffsetService.merge(listed, unlisted, ASC, 3)));
+    assertEquals(List.of("0.0.5/UNLISTED", "0.0.4/LISTED", "0.0.2/UNLISTED", "0.0.1/LISTED"),
+        describe(MirrorNodeOffsetService.merge(listed, unlisted, DESC, 10)));
+  }
+
+  @Test
+  @DisplayName("A listing is approved before the request returns by default")
+  void testListingApprovedOnConsensus() {
+    when(offsetRepo.findByNft(any())).thenReturn(offset(ListingState.UNLISTED, 2));
+    when(transactionService.allowList(any(), any(), any())).thenReturn(
+        new ContractCall(CONTRACT_TXN_ID, completedFuture(null)));
+
+    assertEquals(ListingTransactionState.APPROVED,
+        service.list(account.getId(), TRANSACTION_ID, PRICED_NFTS));
+    verify(offsetRepo).receiptPending(TransactionTypeCode.LIST, TRANSACTION_ID, CONTRACT_TXN_ID);
+    verify(offsetRepo).approveListing(TRANSACTION_ID);
+  }
+
+  @Test
+  @DisplayName("With async receipts a listing returns after precheck and is approved later")
+  void testListingApprovedAfterReturning() {
+    var receipt = new CompletableFuture<Void>();
+    when(offsetRepo.findByNft(any())).thenReturn(offset(ListingState.UNLISTED, 2));
+    when(transactionService.allowList(any(), any(), any())).thenReturn(
+        new ContractCall(CONTRACT_TXN_ID, receipt));
+
+    assertEquals(ListingTransactionState.CREATED,
+        asyncService.list(account.getId(), TRANSACTION_ID, PRICED_NFTS));
+    verify(offsetRepo, never()).approveListing(any());
+
+    receipt.complete(null);
+    verify(offsetRepo, timeout(1000)).approveListing(TRANSACTION_ID);
+  }
+
+  @Test
+  @DisplayName("With async receipts a failed purchase is handed to the expiry checker")
+  void testFailedPurchaseNotApproved() {
+    var receipt = new CompletableFuture<Void>();
+    when(offsetRepo.findByNft(any())).thenReturn(offset(ListingState.LISTED, 2));
+    when(mockAccountService.isAccountValid(any())).thenReturn(true);
+    when(transactionService.purchaseList(any(), any(), any())).thenReturn(
+        new ContractCall(CONTRACT_TXN_ID, receipt));
+
+    assertEquals(ListingTransactionState.CREATED,
+        asyncService.purchase(account.getId(), TRANSACTION_ID, List.of(new Nft("0.0.2", 2L))));
+    receipt.completeExceptionally(new IllegalStateException("CONTRACT_REVERT_EXECUTED"));
+
+    verify(offsetRepo).updateListings(any(), any());
+    verify(offsetRepo, timeout(1000))
+        .receiptFailed(TransactionTypeCode.PURCHASE, TRANSACTION_ID);
+    verify(offsetRepo, never()).updatePurchasedTransactionState(any(), any());
+  }
+
+  @Test
+  @DisplayName("A failed contract call no longer holds back the expiry of its listing")
+  void testFailedListingReleasesReceipt() {
+    when(offsetRepo.findByNft(any())).thenReturn(offset(ListingState.UNLISTED, 2));
+    when(transactionService.allowList(any(), any(), any())).thenReturn(new ContractCall(
+        CONTRACT_TXN_ID, CompletableFuture.failedFuture(new IllegalStateException("REVERT"))));
+
+    assertThrows(IllegalStateException.class,
+        () -> service.list(account.getId(), TRANSACTION_ID, PRICED_NFTS));
+    verify(offsetRepo).receiptFailed(TransactionTypeCode.LIST, TRANSACTION_ID);
+    verify(offsetRepo, never()).approveListing(any());
+  }
+
+  @Test
+  @DisplayName("Receipts still pending at startup are collected and approve their transactions")
+  void testPendingReceiptsResumedOnStartup() {
+    var failed = "0.0.1@1658439476.000000001";
+    when(offsetRepo.findPendingReceipts()).thenReturn(List.of(
+        new PendingReceipt(TransactionTypeCode.LIST, TRANSACTION_ID, CONTRACT_TXN_ID),
+        new PendingReceipt(TransactionTypeCode.PURCHASE, failed, "0.0.2@2.2")));
+    when(transactionService.receipt(CONTRACT_TXN_ID)).thenReturn(completedFuture(null));
+    when(transactionService.receipt("0.0.2@2.2")).thenReturn(
+        CompletableFuture.failedFuture(new IllegalStateException("CONTRACT_REVERT_EXECUTED")));
+
+    asyncService.onStartup(null);
+
+    verify(offsetRepo, timeout(1000)).approveListing(TRANSACTION_ID);
+    verify(offsetRepo, timeout(1000)).receiptFailed(TransactionTypeCode.PURCHASE, failed);
+    verify(offsetRepo, never()).updatePurchasedTransactionState(any(), any());
+  }
+
+  private Offset listed(long number) {
+    return offset(ListingState.LISTED, number);
+  }
+
+  private Offset offset(ListingState state, long number) {
+    var offset = OffsetTestUtil.createOffset(account.getId(), number, 100L);
+    return new Offset(offset.ownerId(), offset.nft(), offset.price(), state, List.of());
+  }
+
+  private ListingStateOffset state(ListingState state, long number) {
+    return new ListingStateOffset(state, OffsetTestUtil.createOffset(account.getId(), number, null));
+  }
+
+  private static List<String> describe(List<ListingStateOffset> offsets) {
+    return offsets.stream().map(offset -> offset.offset().nft().tokenId() + "/" + offset.state())
+        .toList();
+  }
+
   // TODO: Rewrite the following tests to fit refactored service
 //  @ParameterizedTest(name = "A valid account with nfts but no listings will return {0} results when state is {1}")
 //  @CsvSource({"3,ALL", "0,LISTED", "3,UNLISTED"})
@@ -161,12 +319,12 @@ class MirrorNodeOffsetServiceTests {
 //  }
 
   private void setupTokenCalls() {
-    when(mockAccountService.isAccountValid(any())).thenReturn(true);
+    when(mockAccountService.isAccountValidAsync(any())).thenReturn(completedFuture(true));
     when(mockAccountService.fetchOffsets(any(), any(), any(), any())).thenReturn(
-        mirrorNodeResponses.get(0),
-        mirrorNodeResponses.get(1),
-        mirrorNodeResponses.get(2),
-        new ArrayList<>());
+        completedFuture(mirrorNodeResponses.get(0)),
+        completedFuture(mirrorNodeResponses.get(1)),
+        completedFuture(mirrorNodeResponses.get(2)),
+        completedFuture(new ArrayList<>()));
   }
 
   private void setupListingReturns() {
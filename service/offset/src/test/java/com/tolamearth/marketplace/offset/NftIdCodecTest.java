@@ -0,0 +1,80 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class NftIdCodecTest {
+
+  @Test
+  void testParse() {
+    assertEquals(new Nft("0.0.48123", 7L), NftIdCodec.parse("0.0.48123-7"));
+    assertEquals(new Nft("1.22.333", 0L), NftIdCodec.parse("1.22.333-0"));
+    assertEquals(new Nft("0.0.1", Long.MAX_VALUE), NftIdCodec.parse("0.0.1-" + Long.MAX_VALUE));
+  }
+
+  @Test
+  void testChecksumIsDropped() {
+    // used to come back as token id "0.0.123vfmkw"
+    assertEquals(new Nft("0.0.123", 5L), NftIdCodec.parse("0.0.123-vfmkw-5"));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "-1", "0.0.1", "0.0.1-", "0.0-123", "0.0-123-5", "0.0.1.2-3",
+      "0.0.a-1", "0.0.1-x", "0.0.1-1a", "0.0.1--1", "0.0.1-abcd-1", "0.0.1-abcdef-1",
+      "0.0.1-ABCDE-1", "0.0.1-9223372036854775808", " 0.0.1-1", "0.0.1-1 "})
+  void testInvalid(String nftId) {
+    assertThrows(IllegalArgumentException.class, () -> NftIdCodec.parse(nftId));
+  }
+
+  @Test
+  void testFormat() {
+    assertEquals("0.0.48123-7", NftIdCodec.format(new Nft("0.0.48123", 7L)));
+  }
+
+  @Test
+  void testRoundTrip() {
+    // fixed seed so a failure can be reproduced
+    var random = new Random(20221018L);
+    for (int i = 0; i < 10_000; i++) {
+      var tokenId = number(random) + "." + number(random) + "." + number(random);
+      var serialNumber = random.nextBoolean()
+          ? random.nextInt(1000)
+          : random.nextLong() & Long.MAX_VALUE;
+      var nft = new Nft(tokenId, serialNumber);
+      assertEquals(nft, NftIdCodec.parse(NftIdCodec.format(nft)), tokenId + "/" + serialNumber);
+    }
+  }
+
+  @Test
+  void testEntityIdEnd() {
+    assertEquals(9, NftIdCodec.entityIdEnd("0.0.48123@1640075693.891386528", 0));
+    assertEquals(8, NftIdCodec.entityIdEnd("id=0.0.1", 3));
+    assertEquals(-1, NftIdCodec.entityIdEnd("0.0@1", 0));
+    assertEquals(-1, NftIdCodec.entityIdEnd("0..1", 0));
+  }
+
+  private static long number(Random random) {
+    return random.nextInt(4) == 0 ? random.nextLong() & Long.MAX_VALUE : random.nextInt(100_000);
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset.db;
+
+import static com.tolamearth.marketplace.common.ListingOrder.ASC;
+import static com.tolamearth.marketplace.common.ListingOrder.DESC;
+import static com.tolamearth.marketplace.offset.ListingTransactionState.LISTED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.tolamearth.marketplace.common.IntegrationTest;
+import com.tolamearth.marketplace.common.error.HemException;
+import com.tolamearth.marketplace.offset.ListingTransactionState;
+import com.tolamearth.marketplace.offset.SimpleOffset;
+import jakarta.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ListedOffsetPageRepoTest extends IntegrationTest {
+
+  private static final String LISTED_TXN = "0.0.5@1660578633.000000001";
+  private static final String CREATED_TXN = "0.0.5@1660578633.000000002";
+
+  @Inject
+  ListedOffsetPageRepo pageRepo;
+  @Inject
+  ListingRepo listingRepo;
+  @Inject
+  OffsetRepo offsetRepo;
+  @Inject
+  ListingTransactionRepo listingTransactionRepo;
+
+  @BeforeEach
+  void setup() {
+    listingTransactionRepo.save(new ListingTransaction(LISTED_TXN, LISTED, 1L, 1L));
+    listingTransactionRepo.save(
+        new ListingTransaction(CREATED_TXN, ListingTransactionState.CREATED, 1L, 1L));
+    save("0.0.1", 1L, LISTED_TXN, null);
+    save("0.0.1", 2L, LISTED_TXN, null);
+    save("0.0.2", 1L, LISTED_TXN, null);
+    save("0.0.2", 2L, LISTED_TXN, "0.0.9@1660578633.000000003"); // purchased
+    save("0.0.2", 3L, LISTED_TXN, null);
+    save("0.0.3", 1L, CREATED_TXN, null); // not yet listed
+    save("0.0.4", 1L, LISTED_TXN, null);
+  }
+
+  @Test
+  void testFirstPage() {
+    assertEquals(List.of("0.0.1/1", "0.0.1/2", "0.0.2/1"),
+        keys(pageRepo.findPage(LISTED, null, null, 3, ASC)));
+    assertEquals(List.of("0.0.4/1", "0.0.2/3", "0.0.2/1"),
+        keys(pageRepo.findPage(LISTED, null, null, 3, DESC)));
+  }
+
+  @Test
+  void testKeysetContinuesWithinToken() {
+    assertEquals(List.of("0.0.2/3", "0.0.4/1"),
+        keys(pageRepo.findPage(LISTED, "gt:0.0.2", 1L, 3, ASC)));
+    assertEquals(List.of("0.0.1/2", "0.0.1/1"),
+        keys(pageRepo.findPage(LISTED, "lt:0.0.2", 1L, 3, DESC)));
+  }
+
+  @Test
+  void testTokenCursor() {
+    assertEquals(List.of("0.0.4/1"), keys(pageRepo.findPage(LISTED, "gt:0.0.2", null, 3, ASC)));
+    assertEquals(List.of("0.0.1/2", "0.0.1/1"),
+        keys(pageRepo.findPage(LISTED, "lt:0.0.2", null, 3, DESC)));
+  }
+
+  @Test
+  void testExactToken() {
+    assertEquals(List.of("0.0.2/1", "0.0.2/3"),
+        keys(pageRepo.findPage(LISTED, "0.0.2", null, 3, ASC)));
+    assertEquals(List.of("0.0.2/3"), keys(pageRepo.findPage(LISTED, "eq:0.0.2", 1L, 3, ASC)));
+    assertEquals(List.of("0.0.2/1"), keys(pageRepo.findPage(LISTED, "eq:0.0.2", 3L, 3, DESC)));
+  }
+
+  @Test
+  void testTokensOrderedNumerically() {
+    save("0.0.10", 1L, LISTED_TXN, null);
+    save("0.0.9", 1L, LISTED_TXN, null);
+
+    assertEquals(List.of("0.0.9/1", "0.0.10/1"),
+        keys(pageRepo.findPage(LISTED, "gt:0.0.4", null, 3, ASC)));
+    assertEquals(List.of("0.0.9/1", "0.0.4/1"),
+        keys(pageRepo.findPage(LISTED, "lt:0.0.10", null, 2, DESC)));
+    assertEquals(List.of("0.0.10/1"), keys(pageRepo.findPage(LISTED, "gt:0.0.9", 1L, 3, ASC)));
+  }
+
+  @Test
+  void testBoundLimitsPage() {
+    assertEquals(List.of("0.0.2/1", "0.0.2/3"),
+        keys(pageRepo.findPage(LISTED, "gt:0.0.1", 2L, "lt:0.0.4", 3, ASC)));
+    assertEquals(List.of("0.0.2/3", "0.0.2/1"),
+        keys(pageRepo.findPage(LISTED, "lt:0.0.4", 1L, "gt:0.0.1", 3, DESC)));
+  }
+
+  @Test
+  void testStreamHonoursFilterAgainstOrder() {
+    assertEquals(List.of("0.0.1/1", "0.0.1/2", "0.0.2/1", "0.0.2/3"),
+        streamed(offsetRepo.streamListed(LISTED, "lt:0.0.4", null, 2, ASC)));
+    assertEquals(List.of("0.0.4/1", "0.0.2/3", "0.0.2/1"),
+        streamed(offsetRepo.streamListed(LISTED, "gt:0.0.1", null, 2, DESC)));
+  }
+
+  @Test
+  void testStreamExactToken() {
+    assertEquals(List.of("0.0.2/1", "0.0.2/3"),
+        streamed(offsetRepo.streamListed(LISTED, "eq:0.0.2", null, 1, ASC)));
+  }
+
+  @Test
+  void testInvalidCursor() {
+    assertThrows(HemException.class, () -> pageRepo.findPage(LISTED, "ge:0.0.2", null, 3, ASC));
+    assertThrows(HemException.class, () -> pageRepo.findPage(LISTED, null, 1L, 3, ASC));
+    assertThrows(HemException.class, () -> pageRepo.findPage(LISTED, "gt:0.0", null, 3, ASC));
+  }
+
+  private void save(String tokenId, Long serialNumber, String txnId, String purchaseTxnId) {
+    listingRepo.save(new Listing(tokenId, serialNumber, "0.0.5", txnId, 100L, 1L, purchaseTxnId));
+  }
+
+  private static List<String> streamed(Iterable<SimpleOffset> offsets) {
+    var keys = new ArrayList<String>();
+    offsets.forEach(offset -> keys.add(
+        offset.nft().tokenId() + "/" + offset.nft().serialNumber()));
+    return keys;
+  }
+
+  private static List<String> keys(List<Listing> listings) {
+    return listings.stream()
+        .map(listing -> listing.getTokenId() + "/" + listing.getSerialNumber())
+        .toList();
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.tolamearth.marketplace.common.IntegrationTest;
+import com.tolamearth.marketplace.mirrornode.MirrorNodeNft;
+import com.tolamearth.marketplace.mirrornode.TokenClient;
+import com.tolamearth.marketplace.offset.ListingState;
+import com.tolamearth.marketplace.offset.ListingTransactionState;
+import com.tolamearth.marketplace.offset.Offset;
+import io.micronaut.context.annotation.Property;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import io.micronaut.test.annotation.MockBean;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Loads the offsets of a transaction over a history of several listings per nft and counts the
+ * statements that actually reach the database, which must not grow with the number of nfts.
+ */
+@Property(name = "hem.test.count-statements", value = "true")
+class OffsetRepoStatementsTest extends IntegrationTest {
+
+  private static final ThreadLocal<List<String>> STATEMENTS = new ThreadLocal<>();
+  private static final int NFTS = 25;
+  private static final String TOKEN_ID = "0.0.10";
+  private static final String OLD_TXN_ID = "0.0.3@1658439475.570410603";
+  private static final String TXN_ID = "0.0.4@1658439475.570410603";
+  private static final String PURCHASE_TXN_ID = "0.0.9@1658439475.570410603";
+
+  @Inject
+  OffsetRepo offsetRepo;
+  @Inject
+  ListingRepo listingRepo;
+  @Inject
+  ListingTransactionRepo listingTransactionRepo;
+
+  @MockBean(TokenClient.class)
+  TokenClient tokenClient() {
+    var tokenClient = mock(TokenClient.class);
+    when(tokenClient.getNft(anyString(), anyLong())).then(invocation -> new MirrorNodeNft(
+        "0.0.9", null, false, null, null, invocation.getArgument(1), invocation.getArgument(0)));
+    return tokenClient;
+  }
+
+  @BeforeEach
+  void setup() {
+    // every nft was listed by 0.0.3, bought by 0.0.9, and the ones of the first half listed again
+    for (long serial = 1; serial <= NFTS; serial++) {
+      listingRepo.save(new Listing(TOKEN_ID, serial, "0.0.3", OLD_TXN_ID, 50L, 1L,
+          PURCHASE_TXN_ID));
+      if (serial <= NFTS / 2) {
+        listingRepo.save(new Listing(TOKEN_ID, serial, "0.0.9", TXN_ID, 100L, 2L, null));
+      }
+    }
+    listingTransactionRepo.save(
+        new ListingTransaction(OLD_TXN_ID, ListingTransactionState.LISTED, 1L, 1L));
+    listingTransactionRepo.save(
+        new ListingTransaction(TXN_ID, ListingTransactionState.LISTED, 2L, 2L));
+  }
+
+  @AfterEach
+  void cleanup() {
+    listingRepo.deleteAll();
+    listingTransactionRepo.deleteAll();
+  }
+
+  @Test
+  @DisplayName("The offsets of a listing transaction are loaded with two statements")
+  void testListingTransactionStatements() {
+    var offsets = counted(2, () -> offsetRepo.findAllByListingTransactionId(TXN_ID));
+
+    assertEquals(NFTS / 2, offsets.size());
+    offsets.forEach(offset -> {
+      assertEquals(ListingState.LISTED, offset.state());
+      assertEquals(2, offset.listings().size());
+      offset.listings().forEach(listing ->
+          assertEquals(ListingTransactionState.LISTED, listing.transactionState()));
+    });
+  }
+
+  @Test
+  @DisplayName("The offsets of a purchase transaction are loaded with two statements")
+  void testPurchaseTransactionStatements() {
+    var offsets = counted(2, () -> offsetRepo.findAllByPurchaseTransactionId(PURCHASE_TXN_ID));
+
+    assertEquals(NFTS, offsets.size());
+    assertEquals(NFTS / 2,
+        offsets.stream().filter(offset -> offset.state() == ListingState.LISTED).count());
+    offsets.forEach(offset -> assertEquals(PURCHASE_TXN_ID,
+        offset.listings().get(0).purchaseTxnId()));
+  }
+
+  private static List<Offset> counted(int expected, Supplier<List<Offset>> call) {
+    var statements = new ArrayList<String>();
+    STATEMENTS.set(statements);
+    try {
+      var offsets = call.get();
+      assertEquals(expected, statements.size(), "statements sent: " + statements);
+      return offsets;
+    } finally {
+      STATEMENTS.remove();
+    }
+  }
+
+  /**
+   * Wraps the data source so every statement executed on a thread that is counting is recorded.
+   */
+  @Singleton
+  @Requires(property = "hem.test.count-statements", value = "true")
+  static class CountingDataSource implements BeanCreatedEventListener<DataSource> {
+
+    @Override
+    public DataSource onCreated(BeanCreatedEvent<DataSource> event) {
+      return proxy(DataSource.class, event.getBean(), (dataSource, method, args) -> {
+        var result = method.invoke(dataSource, args);
+        return method.getName().equals("getConnection") ? counting((Connection) result)
+            : result;
+      });
+    }
+
+    private static Connection counting(Connection connection) {
+      return proxy(Connection.class, connection, (target, method, args) -> {
+        var result = method.invoke(target, args);
+        if (method.getName().equals("prepareStatement")) {
+          return counting(PreparedStatement.class, (PreparedStatement) result, (String) args[0]);
+        }
+        if (method.getName().equals("createStatement")) {
+          return counting(Statement.class, (Statement) result, null);
+        }
+        return result;
+      });
+    }
+
+    private static <T extends Statement> T counting(Class<T> type, T statement, String sql) {
+      return proxy(type, statement, (target, method, args) -> {
+        if (method.getName().startsWith("execute") && STATEMENTS.get() != null) {
+          STATEMENTS.get().add(sql != null ? sql : String.valueOf(args[0]));
+        }
+        return method.invoke(target, args);
+      });
+    }
+
+    private static <T> T proxy(Class<T> type, T target, Interceptor<T> interceptor) {
+      return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "equals":
+                return proxy == args[0];
+              case "hashCode":
+                return System.identityHashCode(proxy);
+              default:
+                try {
+                  return interceptor.invoke(target, method, args);
+                } catch (InvocationTargetException e) {
+                  throw e.getCause();
+                }
+            }
+          }));
+    }
+
+    private interface Interceptor<T> {
+
+      Object invoke(T target, Method method, Object[] args) throws Throwable;
+    }
+  }
+}
@@ -21,15 +21,28 @@ import static java.time.ZoneId.systemDefault;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import com.tolamearth.marketplace.common.ListingOrder;
+import com.tolamearth.marketplace.esg.EsgFacetIndex;
+import com.tolamearth.marketplace.mirrornode.MirrorNodeNft;
 import com.tolamearth.marketplace.mirrornode.TokenClient;
+import com.tolamearth.marketplace.offset.ListingState;
 import com.tolamearth.marketplace.offset.ListingTransactionState;
+import com.tolamearth.marketplace.offset.TransactionTypeCode;
+import com.tolamearth.marketplace.offset.job.ExpiryScheduler;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -39,14 +52,21 @@ public class OffsetRepoTest {
   private final ListingRepo listingRepo = mock(ListingRepo.class);
   private final ListingTransactionRepo transactionRepo = mock(ListingTransactionRepo.class);
   private final PurchasedTransactionRepo purchasedTransactionRepo = mock(PurchasedTransactionRepo.class);
+  private final ListedOffsetPageRepo listedOffsetPageRepo = mock(ListedOffsetPageRepo.class);
   private final TokenClient tokenClient = mock(TokenClient.class);
+  private final EsgFacetIndex facetIndex = mock(EsgFacetIndex.class);
+  private final ExpiryScheduler expiryScheduler = mock(ExpiryScheduler.class);
   private final LocalDateTime testDateTime = LocalDateTime.of(2022, 7, 1, 12, 0);
   private final Instant testInstant = testDateTime
       .atZone(systemDefault())
       .toInstant();
   private final Clock clock = Clock.fixed(testInstant, systemDefault());
   private final OffsetRepo repo = new OffsetRepo(transactionRepo, purchasedTransactionRepo, listingRepo,
-      tokenClient, clock);
+      listedOffsetPageRepo, tokenClient, facetIndex, expiryScheduler, clock);
+
+  private static final int LARGE_LISTING_SIZE = 600;
+  private static final String TXN_ID = "0.0.4@1656676800.000000001";
+  private static final String OLD_TXN_ID = "0.0.3@1656590400.000000001";
 
 
   @Test
@@ -73,6 +93,8 @@ public class OffsetRepoTest {
         "lastUpdateTime not updated");
     assertEquals(testInstant.toEpochMilli(), transaction.getLastUpdateTime(),
         "lastUpdateTime updated not using clock");
+    verify(expiryScheduler).scheduled(TransactionTypeCode.LIST, "", APPROVED,
+        testInstant.toEpochMilli());
 
 
     /*verify(transactionRepo).update(argThat(transaction -> {
@@ -89,4 +111,73 @@ public class OffsetRepoTest {
     ));*/
 
   }
+
+  @Test
+  void testListingTransactionOffsetsUseFixedNumberOfStatements() {
+    var history = new ArrayList<Listing>();
+    for (long serial = 1; serial <= LARGE_LISTING_SIZE; serial++) {
+      history.add(new Listing("0.0.10", serial, "0.0.3", OLD_TXN_ID, 50L, 1L, "0.0.9@1.1"));
+      history.add(new Listing("0.0.10", serial, "0.0.4", TXN_ID, 100L, 2L, null));
+    }
+    when(listingRepo.findHistoryByTxnId(TXN_ID)).thenReturn(history);
+    when(transactionRepo.findByTransactionIdIn(any())).thenReturn(List.of(
+        new ListingTransaction(OLD_TXN_ID, ListingTransactionState.LISTED, 1L, 1L),
+        new ListingTransaction(TXN_ID, ListingTransactionState.LISTED, 2L, 2L)));
+
+    var offsets = repo.findAllByListingTransactionId(TXN_ID);
+
+    assertEquals(LARGE_LISTING_SIZE, offsets.size());
+    offsets.forEach(offset -> {
+      assertEquals(ListingState.LISTED, offset.state());
+      assertEquals("0.0.4", offset.ownerId());
+      assertEquals(100L, offset.price());
+      assertEquals(2, offset.listings().size());
+    });
+    verify(listingRepo, times(1)).findHistoryByTxnId(TXN_ID);
+    verify(transactionRepo, times(1)).findByTransactionIdIn(any());
+    verifyNoMoreInteractions(listingRepo, transactionRepo, tokenClient);
+  }
+
+  @Test
+  void testPurchaseTransactionOffsetsUseFixedNumberOfStatements() {
+    var history = new ArrayList<Listing>();
+    for (long serial = 1; serial <= LARGE_LISTING_SIZE; serial++) {
+      history.add(new Listing("0.0.10", serial, "0.0.4", OLD_TXN_ID, 100L, 2L, TXN_ID));
+    }
+    when(listingRepo.findHistoryByPurchaseTxnId(TXN_ID)).thenReturn(history);
+    when(transactionRepo.findByTransactionIdIn(any())).thenReturn(List.of(
+        new ListingTransaction(OLD_TXN_ID, ListingTransactionState.LISTED, 1L, 1L)));
+    when(tokenClient.getNft(anyString(), anyLong())).then(invocation -> new MirrorNodeNft("0.0.5",
+        null, false, null, null, invocation.getArgument(1), invocation.getArgument(0)));
+
+    var offsets = repo.findAllByPurchaseTransactionId(TXN_ID);
+
+    assertEquals(LARGE_LISTING_SIZE, offsets.size());
+    offsets.forEach(offset -> {
+      assertEquals(ListingState.UNLISTED, offset.state());
+      assertEquals(TXN_ID, offset.listings().get(0).purchaseTxnId());
+      assertEquals(ListingTransactionState.LISTED, offset.listings().get(0).transactionState());
+    });
+    verify(listingRepo, times(1)).findHistoryByPurchaseTxnId(TXN_ID);
+    verify(transactionRepo, times(1)).findByTransactionIdIn(any());
+    verifyNoMoreInteractions(listingRepo, transactionRepo);
+  }
+
+  @Test
+  void testStreamListedLoadsOnePageAtATime() {
+    when(listedOffsetPageRepo.findPage(APPROVED, null, null, null, 2, ListingOrder.ASC))
+        .thenReturn(List.of(new Listing("0.0.10", 1L, "0.0.4", TXN_ID, 100L, 1L, null),
+            new Listing("0.0.10", 2L, "0.0.4", TXN_ID, 100L, 1L, null)));
+    when(listedOffsetPageRepo.findPage(APPROVED, "gt:0.0.10", 2L, null, 2, ListingOrder.ASC))
+        .thenReturn(List.of(new Listing("0.0.11", 1L, "0.0.4", TXN_ID, 100L, 1L, null)));
+
+    var offsets = repo.streamListed(APPROVED, null, null, 2, ListingOrder.ASC).iterator();
+
+    verify(listedOffsetPageRepo, times(1)).findPage(any(), any(), any(), any(), anyInt(), any());
+    var serials = new ArrayList<String>();
+    offsets.forEachRemaining(offset -> serials.add(
+        offset.nft().tokenId() + "/" + offset.nft().serialNumber()));
+    assertEquals(List.of("0.0.10/1", "0.0.10/2", "0.0.11/1"), serials);
+    verify(listedOffsetPageRepo, times(2)).findPage(any(), any(), any(), any(), anyInt(), any());
+  }
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset.db;
+
+import static com.tolamearth.marketplace.offset.ListingTransactionState.CREATED;
+import static com.tolamearth.marketplace.offset.ListingTransactionState.LISTED;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import com.tolamearth.marketplace.common.IntegrationTest;
+import com.tolamearth.marketplace.common.ListingOrder;
+import com.tolamearth.marketplace.esg.db.EsgOffsetRepo;
+import com.tolamearth.marketplace.esg.db.EsgOffsetSearchRepo;
+import io.micronaut.context.annotation.Property;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.condition.DisabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Calls the repository methods used on hot paths and runs EXPLAIN on every statement they send to
+ * the database, failing when any of them falls back to a table scan. The statements are captured
+ * from the data source, so this checks the SQL Micronaut Data derives from the method names and
+ * the SQL the JDBC repositories build, not a copy of it. A new finder method should get an entry
+ * here together with its index. {@code EsgOffsetRepo.list()} is left out on purpose, it loads the
+ * whole table at startup. The plans are read in the format of H2, so the PostgreSQL run skips it.
+ */
+@DisabledIfSystemProperty(named = "micronaut.environments", matches = ".*postgres.*")
+@Property(name = "hem.test.explain-statements", value = "true")
+class QueryPlanTest extends IntegrationTest {
+
+  private static final ThreadLocal<List<String>> PLANS = new ThreadLocal<>();
+  private static final Map<String, List<String>> ESG_FILTER =
+      Map.of("Project Country", List.of("USA"));
+
+  @Inject
+  ListingRepo listingRepo;
+  @Inject
+  ListedOffsetPageRepo listedOffsetPageRepo;
+  @Inject
+  ListingTransactionRepo listingTransactionRepo;
+  @Inject
+  PurchasedTransactionRepo purchasedTransactionRepo;
+  @Inject
+  ExpiryRepo expiryRepo;
+  @Inject
+  EsgOffsetRepo esgOffsetRepo;
+  @Inject
+  EsgOffsetSearchRepo esgOffsetSearchRepo;
+
+  static Stream<Arguments> queries() {
+    return Stream.of(
+        // ListingRepo
+        query("ListingRepo.findByAccountIdAndPurchaseTxnIdIsNull",
+            test -> test.listingRepo.findByAccountIdAndPurchaseTxnIdIsNull("0.0.5")),
+        query("ListingRepo.findByPurchaseTxnIdIsNull",
+            test -> test.listingRepo.findByPurchaseTxnIdIsNull()),
+        query("ListingRepo.findByTokenIdIn",
+            test -> test.listingRepo.findByTokenIdIn(List.of("0.0.1", "0.0.2"))),
+        query("ListingRepo.findByTokenIdAndSerialNumber",
+            test -> test.listingRepo.findByTokenIdAndSerialNumber("0.0.1", 1L)),
+        query("ListingRepo.findByAccountIdAndTokenIdAndSerialNumber",
+            test -> test.listingRepo.findByAccountIdAndTokenIdAndSerialNumber("0.0.5", "0.0.1",
+                1L)),
+        query("ListingRepo.findByTxnId", test -> test.listingRepo.findByTxnId("txn")),
+        query("ListingRepo.findByPurchaseTxnId",
+            test -> test.listingRepo.findByPurchaseTxnId("txn")),
+        query("ListingRepo.findByTxnIdIn",
+            test -> test.listingRepo.findByTxnIdIn(List.of("txn1", "txn2"))),
+        query("ListingRepo.findByAccountIdAndTxnId",
+            test -> test.listingRepo.findByAccountIdAndTxnId("0.0.5", "txn")),
+        query("ListingRepo.findHistoryByTxnId",
+            test -> test.listingRepo.findHistoryByTxnId("txn")),
+        query("ListingRepo.findHistoryByPurchaseTxnId",
+            test -> test.listingRepo.findHistoryByPurchaseTxnId("txn")),
+        // ListedOffsetPageRepo
+        query("ListedOffsetPageRepo.findPage",
+            test -> test.listedOffsetPageRepo.findPage(LISTED, "gt:0.0.1", 1L, 25,
+                ListingOrder.ASC)),
+        // ExpiryRepo
+        query("ExpiryRepo.lockExpiredListings",
+            test -> test.expiryRepo.lockExpiredListings(CREATED, 1L, 1L, 1000)),
+        query("ExpiryRepo.deleteExpiredListings",
+            test -> test.expiryRepo.deleteExpiredListings(CREATED, 1L, 1L, 1000)),
+        query("ExpiryRepo.deleteExpiredListingTransactions",
+            test -> test.expiryRepo.deleteExpiredListingTransactions(CREATED, 1L, 1L, 1000)),
+        query("ExpiryRepo.lockExpiredPurchases",
+            test -> test.expiryRepo.lockExpiredPurchases(CREATED, 1L, 1L, 1000)),
+        query("ExpiryRepo.resetExpiredPurchases",
+            test -> test.expiryRepo.resetExpiredPurchases(CREATED, 1L, 1L, 1000)),
+        query("ExpiryRepo.deleteExpiredPurchaseTransactions",
+            test -> test.expiryRepo.deleteExpiredPurchaseTransactions(CREATED, 1L, 1L, 1000)),
+        // ListingTransactionRepo
+        query("ListingTransactionRepo.deleteByListingTransactionStateAndLastUpdateTimeLessThan",
+            test -> test.listingTransactionRepo
+                .deleteByListingTransactionStateAndLastUpdateTimeLessThan(CREATED, 1L)),
+        query("ListingTransactionRepo.findByListingTransactionState",
+            test -> test.listingTransactionRepo.findByListingTransactionState(LISTED)),
+        query("ListingTransactionRepo.getByTransactionId",
+            test -> test.listingTransactionRepo.getByTransactionId("txn")),
+        query("ListingTransactionRepo.findByTransactionIdIn",
+            test -> test.listingTransactionRepo.findByTransactionIdIn(List.of("txn1", "txn2"))),
+        // PurchasedTransactionRepo
+        query("PurchasedTransactionRepo.getByTxnId",
+            test -> test.purchasedTransactionRepo.getByTxnId("txn")),
+        query("PurchasedTransactionRepo.findByPurchasedState",
+            test -> test.purchasedTransactionRepo.findByPurchasedState(CREATED)),
+        // EsgOffsetRepo / EsgOffsetSearchRepo
+        query("EsgOffsetRepo.findByTokenIdAndSerialNumber",
+            test -> test.esgOffsetRepo.findByTokenIdAndSerialNumber("0.0.1", 1L)),
+        query("EsgOffsetRepo.findByIdGreaterThan",
+            test -> test.esgOffsetRepo.findByIdGreaterThan(1L)),
+        query("EsgOffsetSearchRepo.findByParameters",
+            test -> test.esgOffsetSearchRepo.findByParameters(ESG_FILTER, 25, 0)),
+        query("EsgOffsetSearchRepo.findWithFacetCounts",
+            test -> test.esgOffsetSearchRepo.findWithFacetCounts(ESG_FILTER, 25, 0,
+                List.of("Vintage")))
+    );
+  }
+
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("queries")
+  void testQueryUsesIndex(String method, Consumer<QueryPlanTest> call) {
+    var plans = new ArrayList<String>();
+    PLANS.set(plans);
+    try {
+      call.accept(this);
+    } finally {
+      PLANS.remove();
+    }
+    assertFalse(plans.isEmpty(), method + " sent no statement");
+    plans.forEach(plan -> assertFalse(plan.contains(".tableScan"),
+        method + " scans a table:\n" + plan));
+  }
+
+  private static Arguments query(String method, Consumer<QueryPlanTest> call) {
+    return Arguments.of(method, call);
+  }
+
+  /**
+   * Wraps the data source so every SELECT, UPDATE and DELETE executed on a thread that is running
+   * one of the queries above is first explained with the same parameters.
+   */
+  @Singleton
+  @Requires(property = "hem.test.explain-statements", value = "true")
+  static class ExplainingDataSource implements BeanCreatedEventListener<DataSource> {
+
+    @Override
+    public DataSource onCreated(BeanCreatedEvent<DataSource> event) {
+      return proxy(DataSource.class, event.getBean(), (dataSource, method, args) -> {
+        var result = method.invoke(dataSource, args);
+        return method.getName().equals("getConnection") ? explaining((Connection) result)
+            : result;
+      });
+    }
+
+    private static Connection explaining(Connection connection) {
+      return proxy(Connection.class, connection, (target, method, args) -> {
+        var result = method.invoke(target, args);
+        if (method.getName().equals("prepareStatement")) {
+          return explaining(target, (String) args[0], (PreparedStatement) result);
+        }
+        return result;
+      });
+    }
+
+    private static PreparedStatement explaining(Connection connection, String sql,
+        PreparedStatement statement) {
+      var parameters = new ArrayList<Object[]>();
+      return proxy(PreparedStatement.class, statement, (target, method, args) -> {
+        if (method.getName().startsWith("set") && args != null && args.length > 1
+            && args[0] instanceof Integer) {
+          parameters.add(new Object[]{method, args});
+        } else if (method.getName().startsWith("execute") && PLANS.get() != null
+            && sql.trim().matches("(?is)(SELECT|UPDATE|DELETE)\\b.*")) {
+          PLANS.get().add(explain(connection, sql, parameters));
+        }
+        return method.invoke(target, args);
+      });
+    }
+
+    private static String explain(Connection connection, String sql, List<Object[]> parameters)
+        throws SQLException, ReflectiveOperationException {
+      try (var statement = connection.prepareStatement("EXPLAIN " + sql)) {
+        for (var parameter : parameters) {
+          ((Method) parameter[0]).invoke(statement, (Object[]) parameter[1]);
+        }
+        var rs = statement.executeQuery();
+        var sbuf = new StringBuilder();
+        while (rs.next()) {
+          sbuf.append(rs.getString(1));
+        }
+        return sbuf.toString();
+      }
+    }
+
+    private static <T> T proxy(Class<T> type, T target, Interceptor<T> interceptor) {
+      return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "equals":
+                return proxy == args[0];
+              case "hashCode":
+                return System.identityHashCode(proxy);
+              default:
+                try {
+                  return interceptor.invoke(target, method, args);
+                } catch (InvocationTargetException e) {
+                  throw e.getCause();
+                }
+            }
+          }));
+    }
+
+    private interface Interceptor<T> {
+
+      Object invoke(T target, Method method, Object[] args) throws Throwable;
+    }
+  }
+}
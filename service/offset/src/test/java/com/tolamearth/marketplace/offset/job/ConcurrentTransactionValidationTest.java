@@ -0,0 +1,124 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset.job;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.tolamearth.marketplace.offset.TransactionTypeCode;
+import com.tolamearth.marketplace.offset.job.PendingTransactions.PendingTransaction;
+import java.time.Clock;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentTransactionValidationTest {
+
+  private static final int CONCURRENCY = 4;
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+  private final Clock clock = Clock.systemUTC();
+
+  @AfterEach
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void testValidationsRunConcurrently() {
+    // every validation waits for all others to start, which only succeeds if they run in parallel
+    var allStarted = new CountDownLatch(CONCURRENCY);
+    TransactionValidator validator = transaction -> {
+      allStarted.countDown();
+      try {
+        return allStarted.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        return false;
+      }
+    };
+    var validation = new ConcurrentTransactionValidation(validator, executor, clock, 10_000L, 0);
+
+    var transactions = createTransactions(CONCURRENCY);
+    assertEquals(transactions, validation.validate(transactions));
+  }
+
+  @Test
+  void testOnlyValidTransactionsAreReturnedInOrder() {
+    TransactionValidator validator = transaction -> transaction.getInternalId() % 2 == 0;
+    var validation = new ConcurrentTransactionValidation(validator, executor, clock, 10_000L, 0);
+
+    var transactions = createTransactions(10);
+    var validated = validation.validate(transactions);
+
+    assertEquals(5, validated.size());
+    assertEquals(List.of(2L, 4L, 6L, 8L, 10L),
+        validated.stream().map(PendingTransaction::getInternalId).toList());
+  }
+
+  @Test
+  void testFailingValidationDoesNotAbortBatch() {
+    TransactionValidator validator = transaction -> {
+      if (transaction.getInternalId() == 1) {
+        throw new IllegalStateException("mirror node unavailable");
+      }
+      return true;
+    };
+    var validation = new ConcurrentTransactionValidation(validator, executor, clock, 10_000L, 0);
+
+    assertEquals(2, validation.validate(createTransactions(3)).size());
+  }
+
+  @Test
+  void testNothingStartsOnceBudgetIsSpent() {
+    var calls = new AtomicInteger();
+    TransactionValidator validator = transaction -> {
+      calls.incrementAndGet();
+      return true;
+    };
+    var validation = new ConcurrentTransactionValidation(validator, executor, clock, 0L, 0);
+
+    assertTrue(validation.validate(createTransactions(10)).isEmpty());
+    assertEquals(0, calls.get());
+  }
+
+  @Test
+  void testRateLimiterDefersRequestsBeyondBudget() {
+    var calls = new AtomicInteger();
+    TransactionValidator validator = transaction -> {
+      calls.incrementAndGet();
+      return true;
+    };
+    // one request per second with a half second budget lets exactly one request through
+    var validation = new ConcurrentTransactionValidation(validator, executor, clock, 500L, 1);
+
+    assertEquals(1, validation.validate(createTransactions(5)).size());
+    assertEquals(1, calls.get());
+  }
+
+  private static List<PendingTransaction> createTransactions(int count) {
+    return LongStream.rangeClosed(1, count)
+        .mapToObj(id -> new PendingTransaction(id, "0.0." + id + "@1660578633.201321688",
+            TransactionTypeCode.LIST))
+        .toList();
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset.job;
+
+import static com.tolamearth.marketplace.offset.ListingTransactionState.APPROVED;
+import static com.tolamearth.marketplace.offset.ListingTransactionState.CREATED;
+import static com.tolamearth.marketplace.offset.ListingTransactionState.LISTED;
+import static com.tolamearth.marketplace.offset.TransactionTypeCode.LIST;
+import static com.tolamearth.marketplace.offset.TransactionTypeCode.PURCHASE;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.tolamearth.marketplace.esg.EsgFacetIndex;
+import com.tolamearth.marketplace.offset.ListingTransactionState;
+import com.tolamearth.marketplace.offset.db.ListingTransaction;
+import com.tolamearth.marketplace.offset.db.ListingTransactionRepo;
+import com.tolamearth.marketplace.offset.db.PurchasedTransaction;
+import com.tolamearth.marketplace.offset.db.PurchasedTransactionRepo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ExpirySchedulerTest {
+
+  private static final long TIMEOUT = 30_000;
+
+  private final ExpirySweep expirySweep = mock(ExpirySweep.class);
+  private final ListingTransactionRepo listingTransactionRepo = mock(ListingTransactionRepo.class);
+  private final PurchasedTransactionRepo purchasedTransactionRepo =
+      mock(PurchasedTransactionRepo.class);
+  private final EsgFacetIndex facetIndex = mock(EsgFacetIndex.class);
+  private final AtomicLong now = new AtomicLong(1_000_000);
+  private final Clock clock = mock(Clock.class);
+  private ExpiryScheduler scheduler;
+
+  @BeforeEach
+  void setup() {
+    when(clock.millis()).thenAnswer(invocation -> now.get());
+    when(expirySweep.deadline(any(), any(), anyLong(), anyBoolean())).thenAnswer(invocation -> {
+      ListingTransactionState state = invocation.getArgument(1);
+      long lastUpdateTime = invocation.getArgument(2);
+      return state == CREATED || state == APPROVED ? OptionalLong.of(lastUpdateTime + TIMEOUT)
+          : OptionalLong.empty();
+    });
+    when(expirySweep.run()).thenReturn(new ExpirySweep.Result(0, 0, false));
+    scheduler = new ExpiryScheduler(expirySweep, listingTransactionRepo, purchasedTransactionRepo,
+        facetIndex, clock, new SimpleMeterRegistry(), Duration.ofSeconds(1));
+  }
+
+  @Test
+  @DisplayName("Nothing is swept until a scheduled transaction expires")
+  void testSweepsAtDeadline() {
+    scheduler.scheduled(LIST, "txn", CREATED, now.get());
+
+    tickAt(now.get() + TIMEOUT - 1000);
+    verify(expirySweep, never()).run();
+
+    tickAt(now.get() + 2000);
+    verify(expirySweep).run();
+
+    tickAt(now.get() + 60_000);
+    verify(expirySweep).run();
+  }
+
+  @Test
+  @DisplayName("A transaction that moved on is swept at its new deadline only")
+  void testRescheduled() {
+    var created = now.get();
+    scheduler.scheduled(PURCHASE, "txn", CREATED, created);
+    scheduler.scheduled(PURCHASE, "txn", APPROVED, created + 20_000);
+
+    tickAt(created + TIMEOUT + 1000);
+    verify(expirySweep, never()).run();
+
+    tickAt(created + 20_000 + TIMEOUT + 1000);
+    verify(expirySweep).run();
+  }
+
+  @Test
+  @DisplayName("Completed transactions are not swept")
+  void testCompleted() {
+    scheduler.scheduled(LIST, "listed", CREATED, now.get());
+    scheduler.scheduled(LIST, "listed", LISTED, now.get());
+    scheduler.scheduled(PURCHASE, "purchased", APPROVED, now.get());
+    scheduler.completed(PURCHASE, "purchased");
+
+    tickAt(now.get() + TIMEOUT + 1000);
+    verify(expirySweep, never()).run();
+  }
+
+  @Test
+  @DisplayName("Pending transactions are reloaded and overdue ones swept on the next tick")
+  void testRebuild() {
+    var overdue = now.get() - 2 * TIMEOUT;
+    when(listingTransactionRepo.findByListingTransactionState(CREATED)).thenReturn(
+        List.of(new ListingTransaction("overdue", CREATED, overdue, overdue)));
+    when(purchasedTransactionRepo.findByPurchasedState(APPROVED)).thenReturn(
+        List.of(new PurchasedTransaction("pending", "XXXXXXX", APPROVED, now.get(), now.get())));
+
+    scheduler.rebuild();
+
+    tickAt(now.get());
+    verify(expirySweep).run();
+
+    tickAt(now.get() + TIMEOUT + 1000);
+    verify(expirySweep, times(2)).run();
+  }
+
+  @Test
+  @DisplayName("The search index is refreshed only when the sweep removed something")
+  void testRefreshesIndex() {
+    scheduler.sweep();
+    verify(facetIndex, never()).refreshListings();
+
+    when(expirySweep.run()).thenReturn(new ExpirySweep.Result(1, 0, false));
+    scheduler.sweep();
+    verify(facetIndex).refreshListings();
+  }
+
+  @Test
+  @DisplayName("A sweep that hits the batch size runs again until the backlog is gone")
+  void testSweepsBacklog() {
+    when(expirySweep.run()).thenReturn(new ExpirySweep.Result(2, 0, true),
+        new ExpirySweep.Result(0, 2, true), new ExpirySweep.Result(1, 0, false));
+
+    scheduler.sweep();
+
+    verify(expirySweep, times(3)).run();
+    verify(facetIndex).refreshListings();
+  }
+
+  @Test
+  @DisplayName("A sweep asked for while one runs is skipped and taken up by the next tick")
+  void testSingleSweep() throws Exception {
+    var running = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    when(expirySweep.run()).thenAnswer(invocation -> {
+      running.countDown();
+      release.await(5, TimeUnit.SECONDS);
+      return new ExpirySweep.Result(0, 0, false);
+    }).thenReturn(new ExpirySweep.Result(0, 0, false));
+    var first = CompletableFuture.runAsync(scheduler::sweep);
+    assertTrue(running.await(5, TimeUnit.SECONDS));
+
+    scheduler.sweep();
+    verify(expirySweep).run();
+
+    release.countDown();
+    first.get(5, TimeUnit.SECONDS);
+    scheduler.tick();
+    verify(expirySweep, times(2)).run();
+  }
+
+  private void tickAt(long time) {
+    now.set(time);
+    scheduler.tick();
+  }
+}
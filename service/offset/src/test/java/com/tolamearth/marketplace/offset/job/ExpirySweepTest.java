@@ -0,0 +1,172 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset.job;
+
+import static com.tolamearth.marketplace.offset.ListingTransactionState.APPROVED;
+import static com.tolamearth.marketplace.offset.ListingTransactionState.CREATED;
+import static com.tolamearth.marketplace.offset.ListingTransactionState.LISTED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import com.tolamearth.marketplace.common.IntegrationTest;
+import com.tolamearth.marketplace.offset.ListingTransactionState;
+import com.tolamearth.marketplace.offset.db.Listing;
+import com.tolamearth.marketplace.offset.db.ListingRepo;
+import com.tolamearth.marketplace.offset.db.ListingTransaction;
+import com.tolamearth.marketplace.offset.db.ListingTransactionRepo;
+import com.tolamearth.marketplace.offset.db.PurchasedTransaction;
+import com.tolamearth.marketplace.offset.db.PurchasedTransactionRepo;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.context.annotation.Property;
+import io.micronaut.test.annotation.MockBean;
+import jakarta.inject.Inject;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@Property(name = "hem.txn.expiry.batch-size", value = "2")
+class ExpirySweepTest extends IntegrationTest {
+
+  private static final long EXPIRED = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+  private static final long FRESH = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+
+  @Inject
+  ExpirySweep sweep;
+  @Inject
+  ListingRepo listingRepo;
+  @Inject
+  ListingTransactionRepo listingTransactionRepo;
+  @Inject
+  PurchasedTransactionRepo purchasedTransactionRepo;
+  @Inject
+  MeterRegistry meterRegistry;
+
+  // keeps the scheduled job from sweeping in between
+  @MockBean(ExpiryScheduler.class)
+  ExpiryScheduler expiryScheduler() {
+    return mock(ExpiryScheduler.class);
+  }
+
+  @AfterEach
+  void cleanup() {
+    listingRepo.deleteAll();
+    listingTransactionRepo.deleteAll();
+    purchasedTransactionRepo.deleteAll();
+  }
+
+  @Test
+  @DisplayName("Expired listing transactions are removed with their listings")
+  void testExpiredListingsRemoved() {
+    listing("created", CREATED, EXPIRED, null);
+    listing("approved", APPROVED, EXPIRED, null);
+    listing("fresh", CREATED, FRESH, null);
+    listing("listed", LISTED, EXPIRED, null);
+
+    var result = sweep.run();
+
+    assertEquals(2, result.listings());
+    assertNull(listingTransactionRepo.getByTransactionId("created"));
+    assertNull(listingTransactionRepo.getByTransactionId("approved"));
+    assertTrue(listingRepo.findByTxnId("created").isEmpty());
+    assertTrue(listingRepo.findByTxnId("approved").isEmpty());
+    assertEquals(1, listingRepo.findByTxnId("fresh").size());
+    assertEquals(1, listingRepo.findByTxnId("listed").size());
+    assertEquals(1, meterRegistry.get("hem.txn.expiry.sweep").tag("phase", "listings.created")
+        .timer().count());
+  }
+
+  @Test
+  @DisplayName("Expired purchases are removed and their listings are for sale again")
+  void testExpiredPurchasesReset() {
+    listing("listing", LISTED, FRESH, "expired-purchase");
+    listing("other-listing", LISTED, FRESH, "fresh-purchase");
+    purchase("expired-purchase", APPROVED, EXPIRED);
+    purchase("fresh-purchase", CREATED, FRESH);
+
+    var result = sweep.run();
+
+    assertEquals(1, result.purchases());
+    assertNull(purchasedTransactionRepo.getByTxnId("expired-purchase"));
+    assertNotNull(purchasedTransactionRepo.getByTxnId("fresh-purchase"));
+    assertNull(listingRepo.findByTxnId("listing").get(0).getPurchaseTxnId());
+    assertEquals("fresh-purchase",
+        listingRepo.findByTxnId("other-listing").get(0).getPurchaseTxnId());
+  }
+
+  @Test
+  @DisplayName("A backlog larger than the batch size is removed over several runs")
+  void testBatchSizeBoundsRun() {
+    listing("first", CREATED, EXPIRED, null);
+    listing("second", CREATED, EXPIRED, null);
+    listing("third", CREATED, EXPIRED, null);
+
+    var first = sweep.run();
+    assertEquals(2, first.listings());
+    assertTrue(first.full());
+    assertEquals(1, listingTransactionRepo.count());
+    assertEquals(1, listingRepo.count());
+    var second = sweep.run();
+    assertEquals(1, second.listings());
+    assertFalse(second.full());
+    assertEquals(0, sweep.run().total());
+  }
+
+  @Test
+  @DisplayName("A created transaction awaiting its receipt expires after the receipt timeout")
+  void testPendingReceiptKeepsCreated() {
+    var awaiting = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(1);
+    listing("awaiting", CREATED, awaiting, null);
+    listing("abandoned", CREATED, EXPIRED, null);
+    for (var txnId : new String[]{"awaiting", "abandoned"}) {
+      var transaction = listingTransactionRepo.getByTransactionId(txnId);
+      transaction.setContractTxnId("0.0.2@1658439475.570410604");
+      listingTransactionRepo.update(transaction);
+    }
+    listing("released", CREATED, awaiting, null);
+    purchase("awaiting-purchase", CREATED, awaiting);
+    var purchase = purchasedTransactionRepo.getByTxnId("awaiting-purchase");
+    purchase.setContractTxnId("0.0.2@1658439475.570410605");
+    purchasedTransactionRepo.update(purchase);
+
+    var result = sweep.run();
+
+    assertEquals(2, result.listings());
+    assertEquals(0, result.purchases());
+    assertNotNull(listingTransactionRepo.getByTransactionId("awaiting"));
+    assertNull(listingTransactionRepo.getByTransactionId("abandoned"));
+    assertNull(listingTransactionRepo.getByTransactionId("released"));
+    assertNotNull(purchasedTransactionRepo.getByTxnId("awaiting-purchase"));
+  }
+
+  private void listing(String txnId, ListingTransactionState state, long lastUpdateTime,
+      String purchaseTxnId) {
+    listingRepo.save(new Listing("0.0." + txnId.hashCode(), 1L, "0.0.5", txnId, 100L,
+        lastUpdateTime, purchaseTxnId));
+    listingTransactionRepo.save(
+        new ListingTransaction(txnId, state, lastUpdateTime, lastUpdateTime));
+  }
+
+  private void purchase(String txnId, ListingTransactionState state, long lastUpdateTime) {
+    purchasedTransactionRepo.save(
+        new PurchasedTransaction(txnId, "XXXXXXX", state, lastUpdateTime, lastUpdateTime));
+  }
+}
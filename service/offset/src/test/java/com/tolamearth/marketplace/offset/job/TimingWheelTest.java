@@ -0,0 +1,87 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset.job;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class TimingWheelTest {
+
+  private final TimingWheel<String> wheel = new TimingWheel<>(10, 4, 0);
+
+  @Test
+  @DisplayName("A value is returned on the first tick after its deadline")
+  void testFiresAfterDeadline() {
+    assertTrue(wheel.add("a", 25));
+
+    assertEquals(List.of(), wheel.advance(25));
+    assertEquals(List.of("a"), wheel.advance(30));
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  @DisplayName("A deadline beyond the first level cascades down and is never returned early")
+  void testCascadesThroughLevels() {
+    assertTrue(wheel.add("far", 1000));
+    assertTrue(wheel.add("near", 35));
+
+    for (long now = 0; now <= 1000; now += 5) {
+      var due = wheel.advance(now);
+      if (now == 40) {
+        assertEquals(List.of("near"), due);
+      } else {
+        assertEquals(List.of(), due, "at " + now);
+      }
+    }
+    assertEquals(List.of("far"), wheel.advance(1010));
+  }
+
+  @Test
+  @DisplayName("A late advance returns everything that passed in between")
+  void testLateAdvance() {
+    wheel.add("a", 15);
+    wheel.add("b", 200);
+    wheel.add("c", 5000);
+
+    assertEquals(List.of("a", "b"), wheel.advance(2000));
+    assertEquals(1, wheel.size());
+  }
+
+  @Test
+  @DisplayName("A deadline that already passed is not added")
+  void testPastDeadline() {
+    wheel.advance(100);
+
+    assertFalse(wheel.add("a", 95));
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  @DisplayName("Idle time is skipped without losing the position of later values")
+  void testIdleSkip() {
+    assertEquals(List.of(), wheel.advance(1_000_000));
+    assertTrue(wheel.add("a", 1_000_050));
+
+    assertEquals(List.of(), wheel.advance(1_000_050));
+    assertEquals(List.of("a"), wheel.advance(1_000_060));
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.tolamearth.marketplace.common.IntegrationTest;
+import com.tolamearth.marketplace.mirrornode.MirrorNodeNft;
+import com.tolamearth.marketplace.mirrornode.TokenClient;
+import com.tolamearth.marketplace.offset.ListingTransactionState;
+import com.tolamearth.marketplace.offset.PricedNft;
+import com.tolamearth.marketplace.offset.db.ListingRepo;
+import io.micronaut.context.annotation.Property;
+import io.micronaut.context.annotation.Replaces;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.annotation.Client;
+import io.micronaut.test.annotation.MockBean;
+import jakarta.inject.Inject;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Lists an offset against the local contract executor with async receipts, so the listing is
+ * approved after the request has returned.
+ */
+@Property(name = "hem.contract.executor", value = "local")
+@Property(name = "hem.contract.local.receipt-delay-millis", value = "500")
+@Property(name = "hem.contract.receipts.async", value = "true")
+class AsyncListingTest extends IntegrationTest {
+
+  private static final String BASE_URI = "/hem/v1/offsets/";
+  private static final String ACCOUNT_ID = "0.0.34750426";
+  private static final String TRANSACTION_ID = ACCOUNT_ID + "@1658439475.570410603";
+  private static final String TOKEN_ID = "0.0.47767226";
+  private static final Long SERIAL_NUMBER = 3L;
+
+  @Inject
+  @Client("/")
+  HttpClient client;
+
+  @Inject
+  ListingRepo listingRepo;
+
+  @MockBean
+  @Replaces(TokenClient.class)
+  TokenClient tokenClient = mock(TokenClient.class);
+
+  @AfterEach
+  void cleanup() {
+    listingRepo.deleteAll();
+  }
+
+  @Test
+  @DisplayName("A listing returns CREATED and is approved once its receipt arrives")
+  void testListingApprovedAfterReceipt() throws InterruptedException {
+    when(tokenClient.getNft(any(), any())).thenReturn(
+        new MirrorNodeNft(ACCOUNT_ID, null, null, null, null, SERIAL_NUMBER, TOKEN_ID));
+    var request = new ListingRequest(TRANSACTION_ID, ACCOUNT_ID,
+        List.of(new PricedNft(TOKEN_ID, SERIAL_NUMBER, 1L)));
+
+    var response = client.toBlocking()
+        .exchange(HttpRequest.POST(BASE_URI + "list", request), ListingResponse.class);
+
+    assertEquals(HttpStatus.CREATED, response.getStatus());
+    assertEquals(ListingTransactionState.CREATED, response.body().state());
+    assertEquals(ListingTransactionState.CREATED, transactionState());
+
+    var deadline = System.currentTimeMillis() + 5_000;
+    while (transactionState() != ListingTransactionState.APPROVED
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(100);
+    }
+    assertEquals(ListingTransactionState.APPROVED, transactionState());
+  }
+
+  private ListingTransactionState transactionState() {
+    return client.toBlocking().retrieve(
+        HttpRequest.GET(BASE_URI + "txn?txn_id=" + TRANSACTION_ID + "&txn_type=LIST"),
+        RetrieveTransactionRecordInfoResponse.class).state();
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.offset.web;
+
+import static io.micronaut.http.HttpRequest.GET;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tolamearth.marketplace.common.IntegrationTest;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.annotation.Client;
+import io.micronaut.test.support.TestPropertyProvider;
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import reactor.core.publisher.Flux;
+
+/**
+ * Points the mirror node client at a slow local stub and checks that account lookups waiting on
+ * it do not each pin a thread of a deliberately small IO pool.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class NonBlockingOffsetLoadTest extends IntegrationTest implements TestPropertyProvider {
+
+  private static final int IO_THREADS = 4;
+  private static final int REQUESTS = 40;
+  private static final long UPSTREAM_DELAY_MILLIS = 300;
+
+  private final ScheduledExecutorService responder = Executors.newSingleThreadScheduledExecutor();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger peakInFlight = new AtomicInteger();
+  private HttpServer mirrorNode;
+
+  @Inject
+  @Client("/")
+  HttpClient client;
+
+  @Override
+  public Map<String, String> getProperties() {
+    mirrorNode = startMirrorNode();
+    return Map.of(
+        "micronaut.http.services.mirror-node.url",
+        "http://localhost:" + mirrorNode.getAddress().getPort(),
+        "micronaut.executors.io.type", "fixed",
+        "micronaut.executors.io.number-of-threads", String.valueOf(IO_THREADS));
+  }
+
+  @AfterAll
+  void stopMirrorNode() {
+    mirrorNode.stop(0);
+    responder.shutdownNow();
+  }
+
+  @Test
+  @DisplayName("Concurrent offset requests wait on the mirror node without holding IO threads")
+  void testUpstreamConcurrencyExceedsIoPool() {
+    // warm up the client and server so the timing below only covers the upstream waits
+    fetchUnlisted(0).blockLast(Duration.ofSeconds(30));
+    peakInFlight.set(0);
+
+    var started = System.nanoTime();
+    var responses = Flux.range(1, REQUESTS)
+        .flatMap(this::fetchUnlisted, REQUESTS)
+        .collectList()
+        .block(Duration.ofSeconds(30));
+    var elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+    assertEquals(REQUESTS, responses.size());
+    // a blocking controller would cap the upstream calls at the size of the IO pool ...
+    assertTrue(peakInFlight.get() > IO_THREADS, "peak upstream calls: " + peakInFlight.get());
+    // ... and need REQUESTS / IO_THREADS rounds of the upstream delay
+    assertTrue(elapsedMillis < REQUESTS / IO_THREADS * UPSTREAM_DELAY_MILLIS,
+        "elapsed: " + elapsedMillis + "ms");
+  }
+
+  private Flux<OffsetListResponse> fetchUnlisted(int account) {
+    // distinct accounts so the account validity cache cannot absorb the calls
+    return Flux.from(client.retrieve(
+        GET("/hem/v1/offsets?list_state=unlisted&account_id=0.0." + (1000 + account)),
+        OffsetListResponse.class));
+  }
+
+  private HttpServer startMirrorNode() {
+    try {
+      var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+      server.createContext("/", exchange -> {
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        var body = exchange.getRequestURI().getPath().endsWith("/nfts")
+            ? "{\"nfts\":[],\"links\":{\"next\":null}}"
+            : "{\"accounts\":[{\"account\":\"0.0.1\"}],\"links\":{\"next\":null}}";
+        // answer later without holding the stub's dispatcher thread, like a slow upstream
+        responder.schedule(() -> respond(exchange, body), UPSTREAM_DELAY_MILLIS,
+            TimeUnit.MILLISECONDS);
+      });
+      server.start();
+      return server;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void respond(HttpExchange exchange, String body) {
+    try {
+      var bytes = body.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, bytes.length);
+      exchange.getResponseBody().write(bytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      exchange.close();
+      inFlight.decrementAndGet();
+    }
+  }
+}
@@ -20,12 +20,14 @@ import static com.tolamearth.marketplace.common.ListingOrder.DESC;
 import static com.tolamearth.marketplace.common.error.HemErrorCode.INVALID_DATA;
 import static com.tolamearth.marketplace.common.error.HemErrorCode.UNKNOWN_RESOURCE;
 import static io.micronaut.http.HttpRequest.GET;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -46,6 +48,7 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -76,6 +79,8 @@ class OffsetEndpointTests extends IntegrationTest implements ApiErrorTest {
     URI uri = UriBuilder.of(endpoint)
         .queryParam(ACCOUNT_ID_PARAMETER, "0.0.1")
         .build();
+    when(offsetService.fetchOffsets(eq(new HederaAccount("0.0.1")), any(), any(), any(), any()))
+        .thenReturn(completedFuture(List.of()));
 
     OffsetListResponse body = client.toBlocking().retrieve(GET(uri), OffsetListResponse.class);
 
@@ -93,7 +98,7 @@ class OffsetEndpointTests extends IntegrationTest implements ApiErrorTest {
         .build();
     when(offsetService.fetchOffsets(eq(new HederaAccount(accountId)), any(), any(), any(),
         eq(ListingState.ALL)))
-        .then(invocation -> definedOffsets);
+        .then(invocation -> completedFuture(definedOffsets));
 
     OffsetListResponse body = client.toBlocking().retrieve(GET(uri), OffsetListResponse.class);
 
@@ -113,7 +118,7 @@ class OffsetEndpointTests extends IntegrationTest implements ApiErrorTest {
 
     when(offsetService.fetchOffsets(eq(new HederaAccount(accountId)), any(), eq(3), any(),
         eq(ListingState.ALL)))
-        .then(invocation -> definedOffsets.subList(0, 3));
+        .then(invocation -> completedFuture(definedOffsets.subList(0, 3)));
 
     OffsetListResponse body = client.toBlocking().retrieve(GET(uri), OffsetListResponse.class);
     assertNotNull(body);
@@ -136,7 +141,7 @@ class OffsetEndpointTests extends IntegrationTest implements ApiErrorTest {
         .then(invocation -> {
           var list = new ArrayList<>(definedOffsets);
           Collections.reverse(list);
-          return list;
+          return completedFuture(list);
         });
 
     OffsetListResponse body = client.toBlocking().retrieve(GET(uri), OffsetListResponse.class);
@@ -168,10 +173,41 @@ class OffsetEndpointTests extends IntegrationTest implements ApiErrorTest {
 
     when(offsetService.fetchOffsets(eq(new HederaAccount(accountId)), any(), any(), any(),
         eq(ListingState.ALL)))
-        .thenThrow(new HemException(UNKNOWN_RESOURCE));
+        .thenReturn(CompletableFuture.supplyAsync(() -> {
+          // fails the way a chained stage does, wrapped in a CompletionException
+          throw new HemException(UNKNOWN_RESOURCE);
+        }));
     assertErrorCode(uri, UNKNOWN_RESOURCE);
   }
 
+  @Test
+  @DisplayName("Without an account or a limit every listed offset is returned")
+  void testEveryListingWithoutAccount() {
+    URI uri = UriBuilder.of(endpoint).build();
+    when(offsetService.streamOffsets(any(), any(), any())).thenReturn(definedOffsets);
+
+    OffsetListResponse body = client.toBlocking().retrieve(GET(uri), OffsetListResponse.class);
+
+    assertNotNull(body);
+    assertEquals(5, body.offsets().size());
+  }
+
+  @Test
+  @DisplayName("Without an account the limit parameter pages the listed offsets")
+  void testLimitedListingsWithoutAccount() {
+    URI uri = UriBuilder.of(endpoint)
+        .queryParam("limit", 2)
+        .build();
+    when(offsetService.fetchOffsets(nullable(String.class), nullable(Long.class), eq(2), any(),
+        any()))
+        .thenReturn(definedOffsets.subList(0, 2));
+
+    OffsetListResponse body = client.toBlocking().retrieve(GET(uri), OffsetListResponse.class);
+
+    assertNotNull(body);
+    assertEquals(2, body.offsets().size());
+  }
+
   @Test
   @DisplayName("An incorrectly formatted order throws the appropriate error")
   void testMalformedOrder() {
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.smartcontract;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.math.BigInteger;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class CachingConversionServiceTests {
+
+  private static final BigInteger RATE = BigInteger.valueOf(1_000_000);
+  private static final BigInteger NEW_RATE = BigInteger.valueOf(1_100_000);
+
+  private final ConversionService delegate = mock(ConversionService.class);
+  private final AtomicLong nanos = new AtomicLong();
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final CachingConversionService service = new CachingConversionService(delegate,
+      meterRegistry, 300L, nanos::get);
+
+  @Test
+  @DisplayName("Requests are served from memory and only the refresh queries the contract")
+  void testRateIsServedFromMemory() {
+    when(delegate.getTinybarPerCent()).thenReturn(RATE, NEW_RATE);
+
+    IntStream.range(0, 100).forEach(i -> assertEquals(RATE, service.getTinybarPerCent()));
+    verify(delegate, times(1)).getTinybarPerCent();
+
+    advanceSeconds(60);
+    assertEquals(60, meterRegistry.get("hem.conversion.rate.age").gauge().value(), 0.001);
+    service.refresh();
+    assertEquals(NEW_RATE, service.getTinybarPerCent());
+    assertEquals(0, meterRegistry.get("hem.conversion.rate.age").gauge().value(), 0.001);
+    verify(delegate, times(2)).getTinybarPerCent();
+  }
+
+  @Test
+  @DisplayName("The refresh waits for the first request instead of querying at startup")
+  void testNoRefreshBeforeFirstRequest() {
+    service.refresh();
+    verifyNoInteractions(delegate);
+  }
+
+  @Test
+  @DisplayName("A failed refresh is counted and the previous rate served until it is too old")
+  void testFailedRefresh() {
+    when(delegate.getTinybarPerCent()).thenReturn(RATE)
+        .thenThrow(new RuntimeException("PLATFORM_TRANSACTION_NOT_CREATED"))
+        .thenThrow(new RuntimeException("PLATFORM_TRANSACTION_NOT_CREATED"))
+        .thenReturn(NEW_RATE);
+
+    assertEquals(RATE, service.getTinybarPerCent());
+    advanceSeconds(300);
+    service.refresh();
+    assertEquals(RATE, service.getTinybarPerCent());
+    assertEquals(1, meterRegistry.get("hem.conversion.refresh.failures").counter().count());
+
+    advanceSeconds(1);
+    assertThrows(RuntimeException.class, service::getTinybarPerCent);
+    assertEquals(NEW_RATE, service.getTinybarPerCent());
+    assertEquals(2, meterRegistry.get("hem.conversion.refresh.failures").counter().count());
+  }
+
+  @Test
+  @DisplayName("Concurrent requests on a cold cache wait for a single query")
+  void testColdStartIsSingleFlight() throws InterruptedException {
+    var queries = new AtomicInteger();
+    var release = new CountDownLatch(1);
+    when(delegate.getTinybarPerCent()).thenAnswer(invocation -> {
+      queries.incrementAndGet();
+      release.await();
+      return RATE;
+    });
+    var executor = Executors.newFixedThreadPool(8);
+    var done = new CountDownLatch(8);
+    var served = new AtomicInteger();
+    try {
+      IntStream.range(0, 8).forEach(i -> executor.execute(() -> {
+        if (RATE.equals(service.getTinybarPerCent())) {
+          served.incrementAndGet();
+        }
+        done.countDown();
+      }));
+      // let every thread reach the in-flight query before it completes
+      Thread.sleep(200);
+      release.countDown();
+      done.await(5, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(8, served.get());
+    assertEquals(1, queries.get());
+  }
+
+  private void advanceSeconds(long seconds) {
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.smartcontract;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.hedera.hashgraph.sdk.AccountId;
+import com.hedera.hashgraph.sdk.ContractExecuteTransaction;
+import com.hedera.hashgraph.sdk.Status;
+import com.hedera.hashgraph.sdk.TransactionId;
+import com.tolamearth.marketplace.common.HederaConfigurationProperties;
+import com.tolamearth.marketplace.common.LogFormatter;
+import com.tolamearth.marketplace.offset.Nft;
+import com.tolamearth.marketplace.offset.PricedNft;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs contract calls against a stub of the network that records every submission.
+ */
+class DefaultTransactionServiceTest {
+
+  private static final long GAS_AMOUNT = 1_000_000;
+  private static final String ACCOUNT_ID = "0.0.1234";
+
+  private final RecordingContractExecutor contractExecutor = new RecordingContractExecutor();
+  private final DefaultTransactionService service = new DefaultTransactionService(
+      new HederaConfigurationProperties("testnet", "0.0.2", "private-key", "0.0.3", GAS_AMOUNT,
+          2L),
+      contractExecutor, new ReceiptPoller(contractExecutor, 4),
+      new LogFormatter(new LogFormatter.Config()));
+
+  @Test
+  @DisplayName("A large listing is submitted as one transaction with the configured gas")
+  void testListingIsOneTransaction() {
+    var receipt = service.allowList(ACCOUNT_ID, ACCOUNT_ID + "@1658439475.570410603",
+        LongStream.rangeClosed(1, 40).mapToObj(i -> new PricedNft("0.0." + i, i, 100L))
+            .toList()).receipt();
+
+    assertEquals(List.of(GAS_AMOUNT), contractExecutor.gas);
+    assertFalse(receipt.isDone());
+
+    contractExecutor.receipts.get(0).complete(Status.SUCCESS);
+    receipt.join();
+  }
+
+  @Test
+  @DisplayName("A purchase fails when its transaction does not succeed")
+  void testFailedPurchase() {
+    var receipt = service.purchaseList(ACCOUNT_ID, ACCOUNT_ID + "@1658439475.570410603",
+        LongStream.rangeClosed(1, 20).mapToObj(i -> new Nft("0.0." + i, i)).toList()).receipt();
+
+    assertEquals(1, contractExecutor.gas.size());
+    contractExecutor.receipts.get(0).complete(Status.INSUFFICIENT_GAS);
+
+    var failure = assertThrows(CompletionException.class, receipt::join);
+    assertTrue(failure.getCause().getMessage().contains("INSUFFICIENT_GAS"));
+  }
+
+  @Test
+  @DisplayName("The receipt of a stored contract transaction can be collected again")
+  void testReceiptByTransactionId() {
+    var call = service.allowList(ACCOUNT_ID, ACCOUNT_ID + "@1658439475.570410603",
+        List.of(new PricedNft("0.0.1", 1L, 100L)));
+
+    var receipt = service.receipt(call.transactionId());
+    assertEquals(List.of(call.transactionId(), call.transactionId()), contractExecutor.ids);
+    assertFalse(receipt.isDone());
+
+    contractExecutor.receipts.get(1).complete(Status.SUCCESS);
+    receipt.join();
+  }
+
+  private static class RecordingContractExecutor implements ContractExecutor {
+
+    private final List<Long> gas = new ArrayList<>();
+    private final List<CompletableFuture<Status>> receipts = new ArrayList<>();
+    private final List<String> ids = new ArrayList<>();
+
+    @Override
+    public CompletableFuture<TransactionId> submit(ContractExecuteTransaction transaction) {
+      gas.add(transaction.getGas());
+      return CompletableFuture.completedFuture(new TransactionId(AccountId.fromString("0.0.2"),
+          Instant.ofEpochSecond(gas.size())));
+    }
+
+    @Override
+    public CompletableFuture<Status> receipt(TransactionId transactionId) {
+      var receipt = new CompletableFuture<Status>();
+      receipts.add(receipt);
+      ids.add(transactionId.toString());
+      return receipt;
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2022 Tolam Earth
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tolamearth.marketplace.smartcontract;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.hedera.hashgraph.sdk.AccountId;
+import com.hedera.hashgraph.sdk.ContractExecuteTransaction;
+import com.hedera.hashgraph.sdk.Status;
+import com.hedera.hashgraph.sdk.TransactionId;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ReceiptPollerTest {
+
+  private final StubContractExecutor contractExecutor = new StubContractExecutor();
+  private final ReceiptPoller poller = new ReceiptPoller(contractExecutor, 2);
+
+  @Test
+  @DisplayName("Receipts beyond the in-flight limit wait for earlier ones to complete")
+  void testInFlightLimit() {
+    var ids = IntStream.range(0, 4).mapToObj(ReceiptPollerTest::transactionId).toList();
+    var statuses = ids.stream().map(poller::await).toList();
+
+    assertEquals(2, contractExecutor.queries.size());
+    assertEquals(2, poller.inFlight());
+
+    contractExecutor.queries.get(ids.get(1)).complete(Status.SUCCESS);
+    assertEquals(Status.SUCCESS, statuses.get(1).join());
+    assertTrue(contractExecutor.queries.containsKey(ids.get(2)));
+    assertFalse(contractExecutor.queries.containsKey(ids.get(3)));
+
+    // completing a query starts the next queued one
+    contractExecutor.queries.get(ids.get(0)).complete(Status.SUCCESS);
+    contractExecutor.queries.get(ids.get(2)).complete(Status.SUCCESS);
+    contractExecutor.queries.get(ids.get(3)).complete(Status.SUCCESS);
+    statuses.forEach(status -> assertEquals(Status.SUCCESS, status.join()));
+    assertEquals(0, poller.inFlight());
+  }
+
+  @Test
+  @DisplayName("A failed receipt query fails only its own transaction")
+  void testFailedQuery() {
+    var failing = transactionId(0);
+    var succeeding = transactionId(1);
+    var failed = poller.await(failing);
+    var succeeded = poller.await(succeeding);
+
+    contractExecutor.queries.get(failing).completeExceptionally(new IllegalStateException("busy"));
+    contractExecutor.queries.get(succeeding).complete(Status.CONTRACT_REVERT_EXECUTED);
+
+    assertTrue(failed.isCompletedExceptionally());
+    assertEquals(IllegalStateException.class,
+        assertThrows(CompletionException.class, failed::join).getCause().getClass());
+    assertEquals(Status.CONTRACT_REVERT_EXECUTED, succeeded.join());
+    assertEquals(0, poller.inFlight());
+  }
+
+  private static TransactionId transactionId(int validStart) {
+    return new TransactionId(AccountId.fromString("0.0.2"), Instant.ofEpochSecond(validStart));
+  }
+
+  private static class StubContractExecutor implements ContractExecutor {
+
+    private final Map<TransactionId, CompletableFuture<Status>> queries = new LinkedHashMap<>();
+
+    @Override
+    public CompletableFuture<TransactionId> submit(ContractExecuteTransaction transaction) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CompletableFuture<Status> receipt(TransactionId transactionId) {
+      var query = new CompletableFuture<Status>();
+      queries.put(transactionId, query);
+      return query;
+    }
+  }
+}
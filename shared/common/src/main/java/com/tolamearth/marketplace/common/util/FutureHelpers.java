@@ -14,30 +14,26 @@
  * limitations under the License.
  */
 
-package com.tolamearth.marketplace.offset.job;
+package com.tolamearth.marketplace.common.util;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-import com.tolamearth.marketplace.offset.ListingTransactionState;
-
-/**
- * Checks for listings that have expired and removes them from the database
- *
- * Each implementation should check at most one ListingTransactionState.
- *
- * @author Jesse Elliott
- */
-public interface ExpiryChecker {
+public class FutureHelpers {
 
   /**
-   * Runs check for listings
-   *
-   * @return the number of records deleted
+   * Waits for the future and rethrows the exception it failed with, instead of the
+   * CompletionException wrapping it
    */
-  int run();
+  public static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
 
-  /**
-   *
-   * {@return the ListingTransactionState that this will check}
-   */
-  ListingTransactionState getState();
 }